@@ -0,0 +1,267 @@
+package toberumono.wrf;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import toberumono.utils.files.RecursiveEraser;
+
+/**
+ * A content cache for expensive intermediate products (e.g. GRIB downloads and geogrid output) that can be shared by every {@link Simulation}
+ * that uses the same root working directory.<br>
+ * Each entry is a directory whose name is the hash of its key. Entries are built in a temporary directory and atomically renamed into place, so
+ * an entry that exists is always complete. Concurrent requests for the same entry are deduplicated: within a JVM, later requests wait for the
+ * first one, and across processes, a file lock ensures that each entry is built exactly once.<br>
+ * The modification time of an entry is updated whenever it is used, so {@link #expire(long, long)} can remove the least recently used entries.
+ * 
+ * @author Toberumono
+ */
+public class ArtifactCache {
+	private static final Map<Path, ArtifactCache> caches = new ConcurrentHashMap<>();
+	
+	private final Path root;
+	private final Map<String, CompletableFuture<Path>> building;
+	
+	/**
+	 * Builds the content of a cache entry.
+	 * 
+	 * @author Toberumono
+	 */
+	@FunctionalInterface
+	public static interface Producer {
+		/**
+		 * Writes the content of a cache entry into the given directory.
+		 * 
+		 * @param directory
+		 *            the (empty) directory into which the content should be written
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 * @throws InterruptedException
+		 *             if the thread is interrupted
+		 */
+		public void produce(Path directory) throws IOException, InterruptedException;
+	}
+	
+	private ArtifactCache(Path root) {
+		this.root = root;
+		building = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Retrieves the {@link ArtifactCache} stored in the given directory, creating it if necessary.
+	 * 
+	 * @param root
+	 *            the directory in which the cache entries are stored
+	 * @return the {@link ArtifactCache} stored in the given directory
+	 */
+	public static ArtifactCache forDirectory(Path root) {
+		return caches.computeIfAbsent(root.toAbsolutePath().normalize(), ArtifactCache::new);
+	}
+	
+	/**
+	 * @return the directory in which the cache entries are stored
+	 */
+	public Path getRoot() {
+		return root;
+	}
+	
+	/**
+	 * Retrieves the entry for the given key, building it with the given {@link Producer} if it does not exist.
+	 * 
+	 * @param key
+	 *            the key that identifies the content of the entry
+	 * @param producer
+	 *            the {@link Producer} that builds the entry if it does not exist
+	 * @return the {@link Path} to the entry's directory
+	 * @throws IOException
+	 *             if an I/O error occurs or the {@link Producer} fails
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while building or waiting for the entry
+	 */
+	public Path get(String key, Producer producer) throws IOException, InterruptedException {
+		String name = hash(key);
+		Path entry = root.resolve(name);
+		if (Files.isDirectory(entry))
+			return touch(entry);
+		CompletableFuture<Path> future = new CompletableFuture<>(), existing = building.putIfAbsent(name, future);
+		if (existing != null) {
+			try {
+				return existing.get();
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				if (e.getCause() instanceof InterruptedException) //The thread that was building the entry was interrupted, so we try again
+					return get(key, producer);
+				throw new IOException("Unable to build the cache entry for " + key, e.getCause());
+			}
+		}
+		try {
+			future.complete(build(entry, producer));
+			return entry;
+		}
+		catch (IOException | InterruptedException | RuntimeException e) {
+			future.completeExceptionally(e);
+			throw e;
+		}
+		finally {
+			building.remove(name);
+		}
+	}
+	
+	private Path build(Path entry, Producer producer) throws IOException, InterruptedException {
+		Files.createDirectories(root);
+		try (FileChannel channel = FileChannel.open(root.resolve(entry.getFileName() + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				FileLock lock = channel.lock()) {
+			if (Files.isDirectory(entry)) //Another process built the entry while we were waiting for the lock
+				return touch(entry);
+			Path partial = Files.createTempDirectory(root, entry.getFileName() + ".partial");
+			try {
+				producer.produce(partial);
+				Files.move(partial, entry, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (FileSystemException e) { //If the lock file was replaced while the entry was being expired, another process might have built it
+				if (!Files.isDirectory(entry))
+					throw e;
+			}
+			finally {
+				if (Files.exists(partial, LinkOption.NOFOLLOW_LINKS))
+					Files.walkFileTree(partial, new RecursiveEraser());
+			}
+		}
+		return entry;
+	}
+	
+	/**
+	 * Removes the least recently used entries until the cache satisfies the given limits. Entries that are being built are never removed. A limit
+	 * that is less than 1 is not enforced.<br>
+	 * Each removed entry is atomically renamed out of the way under its lock, so it is rebuilt if it is requested again. Files that were hard
+	 * linked out of an entry via {@link #linkInto(Path, Path)} remain valid.
+	 * 
+	 * @param maxBytes
+	 *            the maximum total size of the entries to keep in bytes
+	 * @param maxAge
+	 *            the maximum time since each entry was last used in milliseconds
+	 * @return the {@link Path Paths} to the renamed entries, least recently used first. These have not been deleted
+	 * @throws IOException
+	 *             if an I/O error occurs while listing or renaming the entries
+	 */
+	public List<Path> expire(long maxBytes, long maxAge) throws IOException {
+		List<Path> expired = new ArrayList<>();
+		if ((maxBytes < 1 && maxAge < 1) || !Files.isDirectory(root))
+			return expired;
+		Map<Path, Long> used = new HashMap<>(), sizes = new HashMap<>();
+		List<Path> entries = new ArrayList<>();
+		long totalBytes = 0, cutoff = System.currentTimeMillis() - maxAge;
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(root, Files::isDirectory)) {
+			for (Path child : children) {
+				String name = child.getFileName().toString();
+				if (name.contains(".partial") || name.contains(".expired-")) { //Left behind by a process that was killed while building or deleting an entry
+					if (maxAge > 0 && Files.getLastModifiedTime(child).toMillis() < cutoff)
+						expired.add(child);
+					continue;
+				}
+				if (name.indexOf('.') != -1 || building.containsKey(name))
+					continue;
+				used.put(child, Files.getLastModifiedTime(child).toMillis());
+				sizes.put(child, sizeOf(child));
+				totalBytes += sizes.get(child);
+				entries.add(child);
+			}
+		}
+		entries.sort(Comparator.comparingLong(used::get));
+		for (Path entry : entries) {
+			if (!((maxBytes > 0 && totalBytes > maxBytes) || (maxAge > 0 && used.get(entry) < cutoff)))
+				break;
+			Path lockFile = root.resolve(entry.getFileName() + ".lock");
+			try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+				Path renamed = root.resolve(entry.getFileName() + ".expired-" + System.nanoTime());
+				Files.move(entry, renamed, StandardCopyOption.ATOMIC_MOVE);
+				Files.deleteIfExists(lockFile);
+				expired.add(renamed);
+				totalBytes -= sizes.get(entry);
+			}
+			catch (NoSuchFileException e) {/* Another process expired it first */}
+		}
+		return expired;
+	}
+	
+	private static Path touch(Path entry) throws IOException {
+		Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		return entry;
+	}
+	
+	private static long sizeOf(Path directory) throws IOException {
+		long[] size = {0};
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				size[0] += attrs.size();
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return size[0];
+	}
+	
+	/**
+	 * Links every file in the given cache entry into the given directory. Files that already exist in the directory are left as they are.<br>
+	 * Hard links are used where possible so that the linked files remain valid if the cache entry is removed. Symbolic links are used otherwise.
+	 * 
+	 * @param entry
+	 *            the {@link Path} to a cache entry returned by {@link #get(String, Producer)}
+	 * @param directory
+	 *            the directory into which the files should be linked
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public static void linkInto(Path entry, Path directory) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(entry)) {
+			for (Path file : files) {
+				Path target = directory.resolve(file.getFileName().toString());
+				if (Files.exists(target, LinkOption.NOFOLLOW_LINKS))
+					continue;
+				try {
+					Files.createLink(target, file);
+				}
+				catch (FileSystemException | UnsupportedOperationException e) { //The cache is on a different file system
+					Files.createSymbolicLink(target, file);
+				}
+			}
+		}
+	}
+	
+	private static String hash(String key) {
+		try {
+			StringBuilder out = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)))
+				out.append(String.format("%02x", b));
+			return out.toString();
+		}
+		catch (NoSuchAlgorithmException e) { //Every Java implementation is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
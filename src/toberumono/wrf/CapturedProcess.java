@@ -0,0 +1,257 @@
+package toberumono.wrf;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs an executable directly (without a shell) and captures its output in the JVM.<br>
+ * The standard output and standard error streams are drained on dedicated threads so that the process never stalls on a full pipe buffer. Each
+ * line is added to a bounded ring buffer, which backs {@link #tail(int)} and {@link #search(Predicate)}, and is handed off through a bounded
+ * queue to a separate thread that appends it to the log file. If writing the log file falls behind, the draining threads wait for space in the
+ * queue, so the process is slowed down in the same way that it would be by a full pipe instead of its output accumulating in memory. This replaces
+ * piping the output through {@code tee}.
+ * 
+ * @author Toberumono
+ */
+public class CapturedProcess {
+	/**
+	 * The default number of lines kept in the ring buffer
+	 */
+	public static final int DEFAULT_BUFFER_LINES = 500;
+	private static final int PENDING_WRITE_LINES = 8192;
+	private static final String END_OF_OUTPUT = new String(); //Compared by identity, so this cannot be confused with an actual line
+	
+	private final List<String> command;
+	private final String name;
+	private final Process process;
+	private final long started;
+	private final String[] buffer;
+	private final BlockingQueue<String> pendingWrites;
+	private final Thread stdout, stderr, writer;
+	private final Logger logger;
+	private int head, size;
+	
+	/**
+	 * Starts the given command in the given directory and begins capturing its output.
+	 * 
+	 * @param directory
+	 *            the working directory of the process
+	 * @param log
+	 *            the {@link Path} to the log file into which the output should be written. Any existing content is replaced. If this is
+	 *            {@code null}, no log file is written
+	 * @param bufferLines
+	 *            the maximum number of lines to keep in memory
+	 * @param logger
+	 *            the {@link Logger} to which errors should be reported
+	 * @param environment
+	 *            additional environment variables for the process
+	 * @param command
+	 *            the command to run. The first element is the executable, which is resolved against {@code directory} if it is a relative
+	 *            path containing a separator and is looked up on the {@code PATH} otherwise
+	 * @throws IOException
+	 *             if the process could not be started or the log file could not be opened
+	 */
+	public CapturedProcess(Path directory, Path log, int bufferLines, Logger logger, Map<String, String> environment, String... command) throws IOException {
+		this.command = Arrays.asList(command);
+		name = command[0].substring(command[0].lastIndexOf('/') + 1);
+		this.logger = logger;
+		buffer = new String[Math.max(bufferLines, 1)];
+		head = size = 0;
+		pendingWrites = new ArrayBlockingQueue<>(PENDING_WRITE_LINES);
+		BufferedWriter out = log != null ? Files.newBufferedWriter(log, StandardCharsets.UTF_8) : null;
+		try {
+			ProcessBuilder pb = new ProcessBuilder(command).directory(directory.toFile());
+			pb.environment().putAll(environment);
+			process = pb.start();
+			started = System.nanoTime();
+		}
+		catch (IOException e) {
+			if (out != null)
+				out.close();
+			throw e;
+		}
+		stdout = startDrain(process.getInputStream(), "stdout");
+		stderr = startDrain(process.getErrorStream(), "stderr");
+		writer = new Thread(() -> writeLog(out), getName() + "-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	/**
+	 * Starts the given command in the given directory and begins capturing its output with a buffer of {@link #DEFAULT_BUFFER_LINES} lines.
+	 * 
+	 * @param directory
+	 *            the working directory of the process
+	 * @param log
+	 *            the {@link Path} to the log file into which the output should be written (relative paths are resolved against
+	 *            {@code directory})
+	 * @param logger
+	 *            the {@link Logger} to which errors should be reported
+	 * @param environment
+	 *            additional environment variables for the process
+	 * @param command
+	 *            the command to run
+	 * @return the started {@link CapturedProcess}
+	 * @throws IOException
+	 *             if the process could not be started or the log file could not be opened
+	 */
+	public static CapturedProcess start(Path directory, String log, Logger logger, Map<String, String> environment, String... command) throws IOException {
+		return new CapturedProcess(directory, log != null ? directory.resolve(log) : null, DEFAULT_BUFFER_LINES, logger, environment, command);
+	}
+	
+	private String getName() {
+		return name;
+	}
+	
+	private Thread startDrain(InputStream stream, String name) {
+		Thread thread = new Thread(() -> {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+				for (String line = reader.readLine(); line != null; line = reader.readLine())
+					append(line);
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "Unable to read the " + name + " of " + getName(), e);
+			}
+			catch (InterruptedException e) {/* We're shutting down */}
+		}, getName() + "-" + name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+	
+	private void append(String line) throws InterruptedException {
+		synchronized (pendingWrites) { //Keeps the log file in the same order as the buffer without making tail and search wait for space in the queue
+			synchronized (buffer) {
+				buffer[(head + size) % buffer.length] = line;
+				if (size < buffer.length)
+					size++;
+				else
+					head = (head + 1) % buffer.length;
+			}
+			pendingWrites.put(line);
+		}
+	}
+	
+	private void writeLog(BufferedWriter out) {
+		boolean writing = out != null;
+		try {
+			for (String line = pendingWrites.take(); line != END_OF_OUTPUT; line = pendingWrites.take()) {
+				if (!writing) //The queue is bounded, so we have to keep draining it even if we cannot write the log
+					continue;
+				try {
+					out.write(line);
+					out.newLine();
+					if (pendingWrites.isEmpty())
+						out.flush();
+				}
+				catch (IOException e) {
+					logger.log(Level.WARNING, "Unable to write the log for " + getName(), e);
+					writing = false;
+				}
+			}
+		}
+		catch (InterruptedException e) {/* We're shutting down */}
+		finally {
+			if (out != null) {
+				try {
+					out.close();
+				}
+				catch (IOException e) {
+					logger.log(Level.WARNING, "Unable to close the log for " + getName(), e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Waits for the process to exit and for all of its output to be captured and written to the log file.
+	 * 
+	 * @return the exit value of the process
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting. The process is destroyed if this happens
+	 */
+	public int waitFor() throws InterruptedException {
+		try {
+			int exit = process.waitFor();
+			stdout.join();
+			stderr.join();
+			pendingWrites.put(END_OF_OUTPUT);
+			writer.join();
+			return exit;
+		}
+		catch (InterruptedException e) {
+			process.destroy();
+			throw e;
+		}
+	}
+	
+	/**
+	 * @return the value of {@link System#nanoTime()} when the process was started
+	 */
+	public long getStartTime() {
+		return started;
+	}
+	
+	/**
+	 * @return {@code true} iff the process is still running
+	 */
+	public boolean isAlive() {
+		return process.isAlive();
+	}
+	
+	/**
+	 * @return the command that was used to start the process
+	 */
+	public List<String> getCommand() {
+		return command;
+	}
+	
+	/**
+	 * Returns up to the last {@code lines} lines of output that are still in the buffer, oldest first.
+	 * 
+	 * @param lines
+	 *            the maximum number of lines to return
+	 * @return up to the last {@code lines} lines of output
+	 */
+	public List<String> tail(int lines) {
+		synchronized (buffer) {
+			int count = Math.min(lines, size);
+			List<String> out = new ArrayList<>(count);
+			for (int i = size - count; i < size; i++)
+				out.add(buffer[(head + i) % buffer.length]);
+			return out;
+		}
+	}
+	
+	/**
+	 * Returns the lines of output that are still in the buffer and match the given {@link Predicate}, oldest first.
+	 * 
+	 * @param test
+	 *            the {@link Predicate} that the lines must match
+	 * @return the lines of output that are still in the buffer and match {@code test}
+	 */
+	public List<String> search(Predicate<String> test) {
+		synchronized (buffer) {
+			List<String> out = new ArrayList<>();
+			for (int i = 0; i < size; i++)
+				if (test.test(buffer[(head + i) % buffer.length]))
+					out.add(buffer[(head + i) % buffer.length]);
+			return out;
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package toberumono.wrf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map.Entry;
+
+import toberumono.json.JSONArray;
+import toberumono.json.JSONBoolean;
+import toberumono.json.JSONData;
+import toberumono.json.JSONNumber;
+import toberumono.json.JSONObject;
+import toberumono.json.JSONString;
+
+/**
+ * A compact binary snapshot of a fully upgraded and defaulted configuration that is stored next to the configuration file.<br>
+ * A snapshot is only loaded if the hash of the configuration file's contents and the version string (which should change whenever the upgrade or
+ * default logic changes) both match the ones with which the snapshot was saved, so loading a snapshot is equivalent to loading, upgrading, and
+ * applying defaults to the configuration file, but does not require parsing any JSON.
+ * 
+ * @author Toberumono
+ */
+public final class ConfigurationSnapshot {
+	private static final int MAGIC = 0x57524643; //"WRFC"
+	private static final byte FORMAT_VERSION = 1;
+	private static final byte OBJECT = 0, ARRAY = 1, STRING = 2, TRUE = 3, FALSE = 4, INT = 5, LONG = 6, DOUBLE = 7;
+	
+	private ConfigurationSnapshot() {/* This is a utility class */}
+	
+	/**
+	 * @param configuration
+	 *            the {@link Path} to a configuration file
+	 * @return the {@link Path} to the hidden file next to the configuration file in which its snapshot is stored
+	 */
+	public static Path getSnapshotPath(Path configuration) {
+		return configuration.resolveSibling("." + configuration.getFileName() + ".snapshot");
+	}
+	
+	/**
+	 * Loads the snapshot of the given configuration file.
+	 * 
+	 * @param configuration
+	 *            the {@link Path} to the configuration file
+	 * @param version
+	 *            the version string that the snapshot must have been saved with
+	 * @return the snapshotted configuration or {@code null} if there is no snapshot or it does not match the configuration file's current
+	 *         contents or {@code version}
+	 * @throws IOException
+	 *             if the configuration file could not be read
+	 */
+	public static JSONObject load(Path configuration, String version) throws IOException {
+		Path snapshot = getSnapshotPath(configuration);
+		if (!Files.exists(snapshot))
+			return null;
+		String key = makeKey(configuration, version);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+			if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION || !key.equals(in.readUTF()) || in.readByte() != OBJECT)
+				return null;
+			JSONObject out = readObject(in);
+			out.clearModified();
+			return out;
+		}
+		catch (IOException | RuntimeException e) { //A corrupted or truncated snapshot is treated as a miss
+			return null;
+		}
+	}
+	
+	/**
+	 * Saves a snapshot of the given configuration file. The snapshot is written to a temporary file and atomically moved into place, so concurrent
+	 * launches never see a partial snapshot.
+	 * 
+	 * @param configuration
+	 *            the {@link Path} to the configuration file. Its contents must be the source of {@code data}
+	 * @param version
+	 *            the version string with which the snapshot is saved
+	 * @param data
+	 *            the upgraded and defaulted configuration
+	 * @return {@code true} iff the snapshot was saved ({@code false} if {@code data} contains values that cannot be stored in a snapshot)
+	 * @throws IOException
+	 *             if the configuration file could not be read or the snapshot could not be written
+	 */
+	public static boolean save(Path configuration, String version, JSONObject data) throws IOException {
+		Path snapshot = getSnapshotPath(configuration);
+		String key = makeKey(configuration, version);
+		Path temp = Files.createTempFile(snapshot.toAbsolutePath().getParent(), snapshot.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeByte(FORMAT_VERSION);
+				out.writeUTF(key);
+				write(data, out);
+			}
+			catch (IllegalArgumentException e) {
+				return false;
+			}
+			Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	private static void write(JSONData<?> data, DataOutputStream out) throws IOException {
+		if (data instanceof JSONObject) {
+			out.writeByte(OBJECT);
+			out.writeInt(((JSONObject) data).size());
+			for (Entry<String, JSONData<?>> e : ((JSONObject) data).entrySet()) {
+				writeString(e.getKey(), out);
+				write(e.getValue(), out);
+			}
+		}
+		else if (data instanceof JSONArray) {
+			out.writeByte(ARRAY);
+			out.writeInt(((JSONArray) data).size());
+			for (JSONData<?> e : (JSONArray) data)
+				write(e, out);
+		}
+		else if (data instanceof JSONString && data.value() != null) {
+			out.writeByte(STRING);
+			writeString((String) data.value(), out);
+		}
+		else if (data instanceof JSONBoolean && data.value() != null)
+			out.writeByte((Boolean) data.value() ? TRUE : FALSE);
+		else if (data instanceof JSONNumber && data.value() instanceof Integer) {
+			out.writeByte(INT);
+			out.writeInt((Integer) data.value());
+		}
+		else if (data instanceof JSONNumber && data.value() instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) data.value());
+		}
+		else if (data instanceof JSONNumber && data.value() instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) data.value());
+		}
+		else //Anything else (e.g. null or big numbers) can't be restored exactly, so the configuration isn't snapshotted
+			throw new IllegalArgumentException("Cannot snapshot " + (data != null ? data.getClass().getSimpleName() : "null") + " values.");
+	}
+	
+	private static JSONData<?> read(byte type, DataInputStream in) throws IOException {
+		switch (type) {
+			case OBJECT:
+				return readObject(in);
+			case ARRAY:
+				JSONArray array = new JSONArray();
+				for (int i = in.readInt(); i > 0; i--)
+					array.add(read(in.readByte(), in));
+				return array;
+			case STRING:
+				return new JSONString(readString(in));
+			case TRUE:
+				return new JSONBoolean(true);
+			case FALSE:
+				return new JSONBoolean(false);
+			case INT:
+				return new JSONNumber<>(in.readInt());
+			case LONG:
+				return new JSONNumber<>(in.readLong());
+			case DOUBLE:
+				return new JSONNumber<>(in.readDouble());
+			default:
+				throw new IOException("Unknown value type in configuration snapshot: " + type);
+		}
+	}
+	
+	private static JSONObject readObject(DataInputStream in) throws IOException {
+		JSONObject out = new JSONObject();
+		for (int i = in.readInt(); i > 0; i--) {
+			String name = readString(in);
+			out.put(name, read(in.readByte(), in));
+		}
+		return out;
+	}
+	
+	private static void writeString(String value, DataOutputStream out) throws IOException { //writeUTF is limited to 65535 bytes
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private static String makeKey(Path configuration, String version) throws IOException {
+		try {
+			StringBuilder out = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(configuration)))
+				out.append(String.format("%02x", b));
+			return out.append('@').append(version).toString();
+		}
+		catch (NoSuchAlgorithmException e) { //Every Java implementation is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
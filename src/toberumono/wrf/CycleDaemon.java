@@ -0,0 +1,167 @@
+package toberumono.wrf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Calendar;
+import java.util.NavigableSet;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import toberumono.json.JSONObject;
+
+import static toberumono.wrf.SimulationConstants.*;
+
+/**
+ * Runs forecast cycles on a {@link CycleSchedule} in a single, long-running JVM.<br>
+ * The configuration file is parsed and upgraded once and is only reloaded when it changes on disk. Every cycle shares one
+ * {@link ResourceScheduler} as well as the thread pools, link templates, and {@link ArtifactCache artifact caches} that earlier cycles warmed
+ * up. Cycles are started on their own threads, so a cycle can begin downloading its GRIB files while the previous cycle's WRF run is still
+ * going. While an earlier cycle is in progress, a cycle's {@link Module Modules} are admitted as {@link Simulation#setOverlapping(java.util.function.BooleanSupplier)
+ * overlapping} requests, so they only use the cores that the earlier cycle is not waiting for and never the "overlap-reserved-cores" in
+ * "general". The schedule is read from the "schedule" field
+ * of "general", the time zone in which it is evaluated from "schedule-time-zone", and the maximum number of cycles in progress at once from
+ * "max-concurrent-cycles". Fire times that pass while the maximum number of cycles are in progress are skipped.
+ * 
+ * @author Toberumono
+ */
+public class CycleDaemon {
+	private final WRFRunner runner;
+	private final WRFRunnerCommandLineArguments args;
+	private final Path configurationFile;
+	private final Logger logger;
+	private final ExecutorService cycles;
+	private final NavigableSet<Long> active;
+	private JSONObject configuration;
+	private FileTime loaded;
+	private ResourceScheduler scheduler;
+	
+	/**
+	 * Constructs a new {@link CycleDaemon}.
+	 * 
+	 * @param runner
+	 *            the {@link WRFRunner} used to load the configuration and run each cycle
+	 * @param args
+	 *            the processed command line arguments
+	 */
+	public CycleDaemon(WRFRunner runner, WRFRunnerCommandLineArguments args) {
+		this.runner = runner;
+		this.args = args;
+		configurationFile = args.getConfigurationPath().toAbsolutePath().normalize();
+		logger = Logger.getLogger(SIMULATION_LOGGER_ROOT + ".CycleDaemon");
+		cycles = Executors.newCachedThreadPool(r -> new Thread(r, "WRFRunner-Cycle"));
+		active = new ConcurrentSkipListSet<>();
+		configuration = null;
+		loaded = null;
+		scheduler = null;
+	}
+	
+	/**
+	 * Returns the upgraded configuration, reloading it if the configuration file has been modified since it was last loaded.
+	 * 
+	 * @return the upgraded configuration
+	 * @throws IOException
+	 *             if an I/O error occurs while loading the configuration file
+	 */
+	public synchronized JSONObject getConfiguration() throws IOException {
+		FileTime modified = Files.getLastModifiedTime(configurationFile);
+		if (configuration == null || !modified.equals(loaded)) {
+			if (configuration != null)
+				logger.info("Reloading the configuration file located at: " + configurationFile);
+			configuration = runner.loadConfiguration(args);
+			loaded = Files.getLastModifiedTime(configurationFile); //Loading the configuration can write the upgraded version back to disk
+		}
+		return configuration;
+	}
+	
+	/**
+	 * Runs cycles until the thread is interrupted. Cycles that are in progress when the thread is interrupted are interrupted as well.
+	 * 
+	 * @throws IOException
+	 *             if the configuration file could not be loaded
+	 * @throws InterruptedException
+	 *             if the thread is interrupted
+	 */
+	public void run() throws IOException, InterruptedException {
+		JSONObject general = (JSONObject) getConfiguration().get("general");
+		if (!general.containsKey("schedule"))
+			throw new IllegalArgumentException("The \"schedule\" field in \"general\" must be set to run as a daemon.");
+		Semaphore slots = new Semaphore(Math.max(((Number) general.get("max-concurrent-cycles").value()).intValue(), 1));
+		Calendar last = Calendar.getInstance();
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				general = (JSONObject) getConfiguration().get("general");
+				TimeZone timeZone = general.containsKey("schedule-time-zone") ? TimeZone.getTimeZone(general.get("schedule-time-zone").value().toString()) : TimeZone.getDefault();
+				Calendar next = new CycleSchedule(general.get("schedule").value().toString(), timeZone).next(last);
+				last = next;
+				long delay = next.getTimeInMillis() - System.currentTimeMillis();
+				if (delay < -60000) { //We were waiting for a cycle slot for more than a minute past this fire time
+					logger.warning("Skipping the cycle scheduled for " + Simulation.makeWPSDateString(next) + " because too many cycles were in progress");
+					continue;
+				}
+				logger.info("Next cycle at " + Simulation.makeWPSDateString(next));
+				if (delay > 0)
+					Thread.sleep(delay);
+				slots.acquire();
+				try {
+					startCycle(next, slots);
+				}
+				catch (IOException | RuntimeException e) {
+					slots.release();
+					logger.log(Level.SEVERE, "Unable to start the cycle scheduled for " + Simulation.makeWPSDateString(next), e);
+				}
+			}
+		}
+		finally {
+			cycles.shutdownNow();
+		}
+	}
+	
+	private void startCycle(Calendar base, Semaphore slots) throws IOException {
+		Simulation sim = new Simulation(base, configurationFile.getParent(), getConfiguration().deepCopy());
+		synchronized (this) {
+			if (scheduler == null) //The first cycle's scheduler (as configured in general.resources) is shared by every subsequent cycle
+				scheduler = sim.getScheduler();
+		}
+		if (scheduler != null)
+			sim.setScheduler(scheduler);
+		long time = base.getTimeInMillis();
+		sim.setOverlapping(() -> !active.isEmpty() && active.first() < time); //Earlier cycles take priority
+		logger.info("Starting the cycle in " + sim.getWorkingPath());
+		active.add(time);
+		try {
+			submitCycle(sim, time, slots);
+		}
+		catch (RuntimeException e) {
+			active.remove(time);
+			throw e;
+		}
+	}
+	
+	private void submitCycle(Simulation sim, long time, Semaphore slots) {
+		cycles.submit(() -> {
+			try {
+				runner.runSimulation(sim);
+				logger.info("Completed the cycle in " + sim.getWorkingPath());
+			}
+			catch (IOException | RuntimeException e) {
+				logger.log(Level.SEVERE, "The cycle in " + sim.getWorkingPath() + " failed", e);
+			}
+			catch (InterruptedException e) {
+				logger.warning("The cycle in " + sim.getWorkingPath() + " was interrupted");
+			}
+			finally {
+				active.remove(time);
+				if (sim.getScheduler() != null) //Later cycles may no longer be overlapping
+					sim.getScheduler().reevaluate();
+				slots.release();
+			}
+		});
+	}
+}
@@ -0,0 +1,150 @@
+package toberumono.wrf;
+
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * A schedule of forecast cycles described by a cron-style expression.<br>
+ * The expression has five whitespace-separated fields: minute (0-59), hour (0-23), day of the month (1-31), month (1-12), and day of the week
+ * (0-7, where both 0 and 7 are Sunday). Each field is a comma-separated list of {@code *}, single values, or ranges ({@code a-b}), any of which
+ * can be followed by a step ({@code /n}). As in cron, if both the day of the month and the day of the week are restricted, a day matches if
+ * either of them does. For example, {@code "0 0,6,12,18 * * *"} fires at the start of every synoptic hour.
+ * 
+ * @author Toberumono
+ */
+public class CycleSchedule {
+	private static final int MAX_YEARS = 8; //Every valid expression fires within this many years (e.g. February 29th)
+	
+	private final String expression;
+	private final TimeZone timeZone;
+	private final BitSet minutes, hours, days, months, weekdays;
+	private final boolean daysRestricted, weekdaysRestricted;
+	
+	/**
+	 * Parses a new {@link CycleSchedule} from the given expression.
+	 * 
+	 * @param expression
+	 *            the cron-style expression
+	 * @param timeZone
+	 *            the {@link TimeZone} in which the expression is evaluated
+	 * @throws IllegalArgumentException
+	 *             if the expression is not valid
+	 */
+	public CycleSchedule(String expression, TimeZone timeZone) {
+		this.expression = expression.trim();
+		this.timeZone = timeZone;
+		String[] fields = this.expression.split("\\s+");
+		if (fields.length != 5)
+			throw new IllegalArgumentException("A cycle schedule must have exactly 5 fields: " + expression);
+		minutes = parseField(fields[0], 0, 59);
+		hours = parseField(fields[1], 0, 23);
+		days = parseField(fields[2], 1, 31);
+		months = parseField(fields[3], 1, 12);
+		weekdays = parseField(fields[4], 0, 7);
+		if (weekdays.get(7)) //Both 0 and 7 are Sunday
+			weekdays.set(0);
+		daysRestricted = !fields[2].equals("*");
+		weekdaysRestricted = !fields[4].equals("*");
+	}
+	
+	private static BitSet parseField(String field, int min, int max) {
+		BitSet out = new BitSet(max + 1);
+		for (String part : field.split(",")) {
+			int step = 1, slash = part.indexOf('/');
+			if (slash >= 0) {
+				step = parseValue(part.substring(slash + 1), 1, max, field);
+				part = part.substring(0, slash);
+			}
+			int start, end;
+			if (part.equals("*")) {
+				start = min;
+				end = max;
+			}
+			else if (part.indexOf('-') > 0) {
+				start = parseValue(part.substring(0, part.indexOf('-')), min, max, field);
+				end = parseValue(part.substring(part.indexOf('-') + 1), min, max, field);
+			}
+			else {
+				start = parseValue(part, min, max, field);
+				end = slash >= 0 ? max : start; //As in cron, "a/n" means every nth value starting at a
+			}
+			if (end < start)
+				throw new IllegalArgumentException("Invalid range in cycle schedule field: " + field);
+			for (int i = start; i <= end; i += step)
+				out.set(i);
+		}
+		return out;
+	}
+	
+	private static int parseValue(String value, int min, int max, String field) {
+		try {
+			int out = Integer.parseInt(value);
+			if (out < min || out > max)
+				throw new IllegalArgumentException("Value out of range in cycle schedule field: " + field);
+			return out;
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value in cycle schedule field: " + field, e);
+		}
+	}
+	
+	/**
+	 * Computes the first time after the given time at which the schedule fires.
+	 * 
+	 * @param after
+	 *            the time after which to search. This is not modified
+	 * @return the first time strictly after {@code after} at which the schedule fires (with seconds and milliseconds set to 0)
+	 * @throws IllegalArgumentException
+	 *             if the schedule never fires (e.g. it only matches February 30th)
+	 */
+	public Calendar next(Calendar after) {
+		Calendar next = Calendar.getInstance(timeZone);
+		next.setTimeInMillis(after.getTimeInMillis());
+		next.set(Calendar.SECOND, 0);
+		next.set(Calendar.MILLISECOND, 0);
+		next.add(Calendar.MINUTE, 1);
+		int limit = next.get(Calendar.YEAR) + MAX_YEARS;
+		while (next.get(Calendar.YEAR) <= limit) {
+			if (!months.get(next.get(Calendar.MONTH) + 1)) {
+				next.add(Calendar.MONTH, 1);
+				next.set(Calendar.DAY_OF_MONTH, 1);
+				next.set(Calendar.HOUR_OF_DAY, 0);
+				next.set(Calendar.MINUTE, 0);
+			}
+			else if (!matchesDay(next)) {
+				next.add(Calendar.DAY_OF_MONTH, 1);
+				next.set(Calendar.HOUR_OF_DAY, 0);
+				next.set(Calendar.MINUTE, 0);
+			}
+			else if (!hours.get(next.get(Calendar.HOUR_OF_DAY))) {
+				next.add(Calendar.HOUR_OF_DAY, 1);
+				next.set(Calendar.MINUTE, 0);
+			}
+			else if (!minutes.get(next.get(Calendar.MINUTE)))
+				next.add(Calendar.MINUTE, 1);
+			else
+				return next;
+		}
+		throw new IllegalArgumentException("The cycle schedule, " + expression + ", never fires.");
+	}
+	
+	private boolean matchesDay(Calendar time) {
+		boolean day = days.get(time.get(Calendar.DAY_OF_MONTH)), weekday = weekdays.get(time.get(Calendar.DAY_OF_WEEK) - 1);
+		if (daysRestricted && weekdaysRestricted)
+			return day || weekday;
+		return day && weekday;
+	}
+	
+	/**
+	 * @return the {@link TimeZone} in which the schedule is evaluated
+	 */
+	public TimeZone getTimeZone() {
+		return timeZone;
+	}
+	
+	@Override
+	public String toString() {
+		return expression;
+	}
+}
@@ -0,0 +1,128 @@
+package toberumono.wrf;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import toberumono.utils.files.RecursiveEraser;
+
+import static toberumono.wrf.SimulationConstants.*;
+
+/**
+ * A low-priority background queue for deleting large directory trees.<br>
+ * Deletion is split into two steps: the target is first renamed into a trash directory (a single metadata operation on the same file system),
+ * and the renamed tree is then erased lazily by a single minimum-priority thread. This means that callers only wait for the rename, and
+ * multi-GB {@link Module} directories can be erased while the next stage or cycle is running.<br>
+ * Anything left in the trash directory by a previous run is erased when the {@link DeletionQueue} for that directory is first requested.
+ * 
+ * @author Toberumono
+ */
+public class DeletionQueue {
+	private static final Map<Path, DeletionQueue> queues = new ConcurrentHashMap<>();
+	private static final ThreadPoolExecutor eraser;
+	
+	static {
+		eraser = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread thread = new Thread(r, "WRFRunner-DeletionQueue");
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread; //This is intentionally not a daemon thread so that queued deletions are finished before the JVM exits
+		});
+		eraser.allowCoreThreadTimeOut(true); //So that an idle queue does not keep the JVM alive
+	}
+	
+	private final Path trash;
+	private final Logger logger;
+	
+	private DeletionQueue(Path trash) {
+		this.trash = trash;
+		logger = Logger.getLogger(SIMULATION_LOGGER_ROOT + ".DeletionQueue");
+	}
+	
+	/**
+	 * Retrieves the {@link DeletionQueue} that uses the given trash directory, creating it if necessary. Newly-created {@link DeletionQueue
+	 * DeletionQueues} schedule the erasure of anything that was left in the trash directory.
+	 * 
+	 * @param trash
+	 *            the trash directory. This should be on the same file system as the {@link Path Paths} that will be deleted via the
+	 *            {@link DeletionQueue}
+	 * @return the {@link DeletionQueue} that uses the given trash directory
+	 */
+	public static DeletionQueue forDirectory(Path trash) {
+		return queues.computeIfAbsent(trash.toAbsolutePath().normalize(), p -> {
+			DeletionQueue queue = new DeletionQueue(p);
+			queue.purge();
+			return queue;
+		});
+	}
+	
+	/**
+	 * @return the trash directory used by the {@link DeletionQueue}
+	 */
+	public Path getTrashPath() {
+		return trash;
+	}
+	
+	/**
+	 * Moves the given {@link Path} into the trash directory and schedules its erasure.<br>
+	 * If the {@link Path} cannot be moved (e.g. because it is on a different file system), it is erased in place in the background instead.
+	 * 
+	 * @param path
+	 *            the {@link Path} to delete
+	 * @return a {@link CompletableFuture} that completes when the {@link Path} has been erased
+	 * @throws IOException
+	 *             if the trash directory could not be created
+	 */
+	public CompletableFuture<Void> delete(Path path) throws IOException {
+		if (!Files.exists(path))
+			return CompletableFuture.completedFuture(null);
+		Files.createDirectories(trash);
+		Path bin = Files.createTempDirectory(trash, path.getFileName().toString() + "-");
+		try {
+			Files.move(path, bin.resolve(path.getFileName().toString()), StandardCopyOption.ATOMIC_MOVE);
+			return erase(bin);
+		}
+		catch (IOException e) {
+			logger.log(Level.FINE, "Unable to move " + path + " into " + trash + ". It will be erased in place.", e);
+			Files.delete(bin);
+			return erase(path);
+		}
+	}
+	
+	/**
+	 * Schedules the erasure of everything in the trash directory.
+	 */
+	public void purge() {
+		if (!Files.isDirectory(trash))
+			return;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(trash)) {
+			for (Path p : stream)
+				erase(p);
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to list the contents of " + trash, e);
+		}
+	}
+	
+	private CompletableFuture<Void> erase(Path path) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				Files.walkFileTree(path, new RecursiveEraser());
+			}
+			catch (NoSuchFileException e) {/* Someone else already erased it */}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "Unable to erase " + path, e);
+			}
+		}, eraser);
+	}
+}
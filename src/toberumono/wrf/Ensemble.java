@@ -0,0 +1,161 @@
+package toberumono.wrf;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import toberumono.json.JSONBoolean;
+import toberumono.json.JSONData;
+import toberumono.json.JSONObject;
+
+import static toberumono.wrf.SimulationConstants.*;
+
+/**
+ * Runs a group of {@link Simulation Simulations} that are derived from a common configuration in a single JVM.<br>
+ * Each member's configuration is the base configuration with the member's overrides merged into it. All of the members share a
+ * {@link ResourceScheduler}, so their {@link Module Modules} are admitted against a single budget of cores, memory, and bandwidth instead of
+ * oversubscribing the machine, and they share the GRIB and geogrid {@link ArtifactCache artifact caches}, so identical downloads and geogrid
+ * runs are only performed once.
+ * 
+ * @author Toberumono
+ */
+public class Ensemble {
+	private final ResourceScheduler scheduler;
+	private final Calendar base;
+	private final List<Simulation> members;
+	private final Logger logger;
+	
+	/**
+	 * Constructs a new, empty {@link Ensemble}.
+	 * 
+	 * @param scheduler
+	 *            the {@link ResourceScheduler} shared by the members of the {@link Ensemble}
+	 */
+	public Ensemble(ResourceScheduler scheduler) {
+		this.scheduler = scheduler;
+		base = Calendar.getInstance();
+		members = new ArrayList<>();
+		logger = Logger.getLogger(SIMULATION_LOGGER_ROOT + ".Ensemble");
+	}
+	
+	/**
+	 * Adds a member to the {@link Ensemble}.<br>
+	 * The member's configuration enables the "grib-cache" and "geogrid-cache" fields in "general" unless {@code overrides} sets them. Every
+	 * member uses the same base time so that members without timing overrides cover the same period.
+	 * 
+	 * @param configuration
+	 *            the base configuration. This is not modified
+	 * @param overrides
+	 *            the fields that differ from the base configuration for this member
+	 * @param resolver
+	 *            the {@link Path} used to resolve relative paths
+	 * @return the new member
+	 * @throws IOException
+	 *             if an error occurs while constructing the member's working directory
+	 */
+	public Simulation addMember(JSONObject configuration, JSONObject overrides, Path resolver) throws IOException {
+		JSONObject merged = configuration.deepCopy();
+		JSONObject general = (JSONObject) merged.get("general");
+		general.put("grib-cache", new JSONBoolean(true));
+		general.put("geogrid-cache", new JSONBoolean(true));
+		merge(merged, overrides);
+		Simulation member = new Simulation((Calendar) base.clone(), resolver, merged);
+		member.setScheduler(scheduler);
+		synchronized (members) {
+			members.add(member);
+		}
+		return member;
+	}
+	
+	/**
+	 * Recursively merges the fields in {@code overrides} into {@code target}. Nested {@link JSONObject JSONObjects} are merged, and all other
+	 * values replace the corresponding values in {@code target}.
+	 * 
+	 * @param target
+	 *            the {@link JSONObject} into which the fields should be merged
+	 * @param overrides
+	 *            the fields to merge
+	 * @return {@code target}
+	 */
+	public static JSONObject merge(JSONObject target, JSONObject overrides) {
+		for (Map.Entry<String, JSONData<?>> e : overrides.entrySet()) {
+			if (e.getValue() instanceof JSONObject && target.get(e.getKey()) instanceof JSONObject)
+				merge((JSONObject) target.get(e.getKey()), (JSONObject) e.getValue());
+			else
+				target.put(e.getKey(), e.getValue() instanceof JSONObject ? ((JSONObject) e.getValue()).deepCopy() : e.getValue());
+		}
+		return target;
+	}
+	
+	/**
+	 * @return the members of the {@link Ensemble}
+	 */
+	public List<Simulation> getMembers() {
+		synchronized (members) {
+			return Collections.unmodifiableList(new ArrayList<>(members));
+		}
+	}
+	
+	/**
+	 * @return the {@link ResourceScheduler} shared by the members of the {@link Ensemble}
+	 */
+	public ResourceScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	/**
+	 * Runs every member of the {@link Ensemble} concurrently via {@link WRFRunner#runSimulation(Simulation, boolean)} and waits for all of them to
+	 * finish. A failed member does not stop the others. The retention policy is applied once all of the members have finished, so the members
+	 * cannot delete each other.
+	 * 
+	 * @param runner
+	 *            the {@link WRFRunner} used to run the members
+	 * @throws IOException
+	 *             if any of the members failed (the first failure is the cause)
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting for the members. The remaining members are interrupted as well
+	 */
+	public void run(WRFRunner runner) throws IOException, InterruptedException {
+		List<Simulation> members = getMembers();
+		if (members.size() == 0)
+			return;
+		ExecutorService pool = Executors.newFixedThreadPool(members.size()); //The members spend nearly all of their time waiting for the scheduler or their processes
+		try {
+			List<Future<Simulation>> running = new ArrayList<>();
+			for (Simulation member : members)
+				running.add(pool.submit(() -> {
+					runner.runSimulation(member, false);
+					return member;
+				}));
+			Throwable failure = null;
+			int failed = 0;
+			for (int i = 0; i < running.size(); i++) {
+				try {
+					running.get(i).get();
+				}
+				catch (ExecutionException e) {
+					logger.log(Level.SEVERE, "Ensemble member " + members.get(i).getWorkingPath() + " failed", e.getCause());
+					if (failure == null)
+						failure = e.getCause();
+					failed++;
+				}
+			}
+			runner.cleanUpOldSimulations(members);
+			if (failure != null)
+				throw new IOException(failed + " of " + members.size() + " ensemble members failed.", failure);
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package toberumono.wrf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
+
+/**
+ * A {@link RecursiveAction} that recreates a directory tree by applying a {@link LinkAction} to each file in it. Every subdirectory is handled by a
+ * forked {@link LinkTreeTask}, so large trees are linked in parallel when the task is run on a {@link ForkJoinPool}.<br>
+ * Symbolic links are not followed - they are passed to the {@link LinkAction} as files.
+ * 
+ * @author Toberumono
+ */
+public class LinkTreeTask extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+	
+	private final Path source, target;
+	private final Predicate<Path> fileFilter, directoryFilter;
+	private final LinkAction action;
+	
+	/**
+	 * The action performed on each file in the tree.
+	 * 
+	 * @author Toberumono
+	 */
+	@FunctionalInterface
+	public static interface LinkAction {
+		
+		/**
+		 * Recreates the given source file at the given target {@link Path}.
+		 * 
+		 * @param source
+		 *            the {@link Path} to the file in the source tree
+		 * @param target
+		 *            the {@link Path} at which the file should be recreated
+		 * @param attributes
+		 *            the {@link BasicFileAttributes} of {@code source} (read without following links)
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		public void link(Path source, Path target, BasicFileAttributes attributes) throws IOException;
+	}
+	
+	/**
+	 * Constructs a new {@link LinkTreeTask}.
+	 * 
+	 * @param source
+	 *            the root of the tree to recreate
+	 * @param target
+	 *            the directory in which the tree should be recreated (it is created if it does not exist)
+	 * @param fileFilter
+	 *            a {@link Predicate} that returns {@code true} for files that should be passed to {@code action}
+	 * @param directoryFilter
+	 *            a {@link Predicate} that returns {@code true} for subdirectories that should be descended into
+	 * @param action
+	 *            the {@link LinkAction} to apply to each file that passes {@code fileFilter}
+	 */
+	public LinkTreeTask(Path source, Path target, Predicate<Path> fileFilter, Predicate<Path> directoryFilter, LinkAction action) {
+		this.source = source;
+		this.target = target;
+		this.fileFilter = fileFilter;
+		this.directoryFilter = directoryFilter;
+		this.action = action;
+	}
+	
+	@Override
+	protected void compute() {
+		List<LinkTreeTask> subdirectories = new ArrayList<>();
+		try {
+			Files.createDirectories(target);
+			try (DirectoryStream<Path> children = Files.newDirectoryStream(source)) {
+				for (Path child : children) {
+					BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					Path dest = target.resolve(child.getFileName().toString());
+					if (attributes.isDirectory()) {
+						if (directoryFilter.test(child))
+							subdirectories.add(new LinkTreeTask(child, dest, fileFilter, directoryFilter, action));
+					}
+					else if (fileFilter.test(child)) {
+						action.link(child, dest, attributes);
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		invokeAll(subdirectories);
+	}
+	
+	/**
+	 * Recreates the tree rooted at {@code source} in {@code target} using a {@link LinkTreeTask} run on the given {@link ForkJoinPool}.
+	 * 
+	 * @param pool
+	 *            the {@link ForkJoinPool} on which to run the {@link LinkTreeTask}
+	 * @param source
+	 *            the root of the tree to recreate
+	 * @param target
+	 *            the directory in which the tree should be recreated (it is created if it does not exist)
+	 * @param fileFilter
+	 *            a {@link Predicate} that returns {@code true} for files that should be passed to {@code action}
+	 * @param directoryFilter
+	 *            a {@link Predicate} that returns {@code true} for subdirectories that should be descended into
+	 * @param action
+	 *            the {@link LinkAction} to apply to each file that passes {@code fileFilter}
+	 * @throws IOException
+	 *             if an I/O error occurs while recreating the tree
+	 */
+	public static void linkTree(ForkJoinPool pool, Path source, Path target, Predicate<Path> fileFilter, Predicate<Path> directoryFilter, LinkAction action) throws IOException {
+		try {
+			pool.invoke(new LinkTreeTask(source, target, fileFilter, directoryFilter, action));
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+}
@@ -0,0 +1,398 @@
+package toberumono.wrf;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import toberumono.json.JSONArray;
+import toberumono.json.JSONObject;
+import toberumono.json.JSONSystem;
+
+/**
+ * A registry of {@link Counter Counters}, {@link Timer Timers}, and {@link Histogram Histograms} that describe the performance of a
+ * {@link Simulation}.<br>
+ * Each metric belongs to a family that has a name, a help text, and a type, and is identified within its family by its labels (given as
+ * alternating names and values). Recording a value is lock-free, so metrics can be updated from any number of threads. The registry can be
+ * exported in the Prometheus text exposition format (e.g. for the node_exporter textfile collector) and as a JSON summary.
+ * 
+ * @author Toberumono
+ */
+public class MetricsRegistry {
+	/**
+	 * The default bucket boundaries (in seconds) for {@link Timer Timers}. They range from tens of milliseconds (e.g. writing a {@link Module
+	 * Module's} namelist) to half a day (e.g. running wrf.exe).
+	 */
+	public static final double[] DEFAULT_SECONDS_BUCKETS = {0.01, 0.1, 0.5, 1, 5, 15, 60, 300, 900, 3600, 10800, 43200};
+	
+	private final Map<String, Family> families;
+	
+	private static class Family {
+		private final String name, help, type;
+		private final double[] buckets;
+		private final Map<String, Metric> series;
+		
+		private Family(String name, String help, String type, double[] buckets) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+			this.buckets = buckets;
+			series = new ConcurrentSkipListMap<>();
+		}
+	}
+	
+	/**
+	 * The base class of every metric.
+	 * 
+	 * @author Toberumono
+	 */
+	public static abstract class Metric {
+		private final String[] labels;
+		
+		private Metric(String[] labels) {
+			this.labels = labels;
+		}
+		
+		/**
+		 * @return the metric's labels as alternating names and values
+		 */
+		public String[] getLabels() {
+			return labels.clone();
+		}
+	}
+	
+	/**
+	 * A value that only increases (e.g. bytes transferred or failures).
+	 * 
+	 * @author Toberumono
+	 */
+	public static class Counter extends Metric {
+		private final DoubleAdder value;
+		
+		private Counter(String[] labels) {
+			super(labels);
+			value = new DoubleAdder();
+		}
+		
+		/**
+		 * Increments the {@link Counter} by 1.
+		 */
+		public void increment() {
+			value.add(1);
+		}
+		
+		/**
+		 * Increments the {@link Counter} by the given amount.
+		 * 
+		 * @param amount
+		 *            the amount by which to increment the {@link Counter}
+		 * @throws IllegalArgumentException
+		 *             if {@code amount} is negative
+		 */
+		public void add(double amount) {
+			if (amount < 0)
+				throw new IllegalArgumentException("Counters cannot be decremented.");
+			value.add(amount);
+		}
+		
+		/**
+		 * @return the current value of the {@link Counter}
+		 */
+		public double get() {
+			return value.sum();
+		}
+	}
+	
+	/**
+	 * The distribution of a set of observations over fixed buckets, along with their count and sum.
+	 * 
+	 * @author Toberumono
+	 */
+	public static class Histogram extends Metric {
+		private final double[] buckets;
+		private final LongAdder[] counts;
+		private final LongAdder count;
+		private final DoubleAdder sum;
+		
+		private Histogram(String[] labels, double[] buckets) {
+			super(labels);
+			this.buckets = buckets;
+			counts = new LongAdder[buckets.length];
+			for (int i = 0; i < counts.length; i++)
+				counts[i] = new LongAdder();
+			count = new LongAdder();
+			sum = new DoubleAdder();
+		}
+		
+		/**
+		 * Records a single observation.
+		 * 
+		 * @param value
+		 *            the observed value
+		 */
+		public void observe(double value) {
+			int bucket = Arrays.binarySearch(buckets, value);
+			if (bucket < 0) //The first bucket whose upper bound is at least value
+				bucket = -bucket - 1;
+			if (bucket < counts.length)
+				counts[bucket].increment();
+			count.increment();
+			sum.add(value);
+		}
+		
+		/**
+		 * @return the number of observations
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+		
+		/**
+		 * @return the sum of the observations
+		 */
+		public double getSum() {
+			return sum.sum();
+		}
+		
+		/**
+		 * @return the upper bounds of the buckets (excluding the implicit infinite bucket)
+		 */
+		public double[] getBuckets() {
+			return buckets.clone();
+		}
+		
+		/**
+		 * @return the number of observations less than or equal to each of the {@link #getBuckets() upper bounds}
+		 */
+		public long[] getCumulativeCounts() {
+			long[] out = new long[counts.length];
+			long total = 0;
+			for (int i = 0; i < counts.length; i++)
+				out[i] = total += counts[i].sum();
+			return out;
+		}
+	}
+	
+	/**
+	 * A {@link Histogram} of durations in seconds.
+	 * 
+	 * @author Toberumono
+	 */
+	public static class Timer extends Histogram {
+		private Timer(String[] labels, double[] buckets) {
+			super(labels, buckets);
+		}
+		
+		/**
+		 * @return a start time to pass to {@link #stop(long)}
+		 */
+		public long start() {
+			return System.nanoTime();
+		}
+		
+		/**
+		 * Records the time elapsed since the given start time.
+		 * 
+		 * @param start
+		 *            a start time returned by {@link #start()}
+		 * @return the elapsed time in seconds
+		 */
+		public double stop(long start) {
+			double seconds = (System.nanoTime() - start) / 1e9;
+			observe(seconds);
+			return seconds;
+		}
+	}
+	
+	/**
+	 * Constructs a new, empty {@link MetricsRegistry}.
+	 */
+	public MetricsRegistry() {
+		families = new ConcurrentSkipListMap<>();
+	}
+	
+	/**
+	 * Retrieves the {@link Counter} with the given name and labels, creating it if necessary.
+	 * 
+	 * @param name
+	 *            the name of the {@link Counter Counter's} family (by convention, this ends in "_total")
+	 * @param help
+	 *            a description of the family (only used when the family is created)
+	 * @param labels
+	 *            the {@link Counter Counter's} labels as alternating names and values
+	 * @return the {@link Counter}
+	 * @throws IllegalArgumentException
+	 *             if a family with the same name but a different type exists or the labels are not paired
+	 */
+	public Counter counter(String name, String help, String... labels) {
+		return (Counter) get(name, help, "counter", null, labels);
+	}
+	
+	/**
+	 * Retrieves the {@link Timer} with the given name and labels, creating it with {@link #DEFAULT_SECONDS_BUCKETS} if necessary.
+	 * 
+	 * @param name
+	 *            the name of the {@link Timer Timer's} family (by convention, this ends in "_seconds")
+	 * @param help
+	 *            a description of the family (only used when the family is created)
+	 * @param labels
+	 *            the {@link Timer Timer's} labels as alternating names and values
+	 * @return the {@link Timer}
+	 * @throws IllegalArgumentException
+	 *             if a family with the same name but a different type exists or the labels are not paired
+	 */
+	public Timer timer(String name, String help, String... labels) {
+		return (Timer) get(name, help, "timer", DEFAULT_SECONDS_BUCKETS.clone(), labels);
+	}
+	
+	/**
+	 * Retrieves the {@link Histogram} with the given name and labels, creating it if necessary.
+	 * 
+	 * @param name
+	 *            the name of the {@link Histogram Histogram's} family
+	 * @param help
+	 *            a description of the family (only used when the family is created)
+	 * @param buckets
+	 *            the upper bounds of the buckets in ascending order (only used when the family is created)
+	 * @param labels
+	 *            the {@link Histogram Histogram's} labels as alternating names and values
+	 * @return the {@link Histogram}
+	 * @throws IllegalArgumentException
+	 *             if a family with the same name but a different type exists or the labels are not paired
+	 */
+	public Histogram histogram(String name, String help, double[] buckets, String... labels) {
+		double[] sorted = buckets.clone();
+		Arrays.sort(sorted);
+		return (Histogram) get(name, help, "histogram", sorted, labels);
+	}
+	
+	private Metric get(String name, String help, String type, double[] buckets, String[] labels) {
+		if (labels.length % 2 != 0)
+			throw new IllegalArgumentException("Labels must be given as pairs of names and values.");
+		Family family = families.computeIfAbsent(name, n -> new Family(n, help, type, buckets));
+		if (!family.type.equals(type))
+			throw new IllegalArgumentException(name + " is a " + family.type + ", not a " + type + ".");
+		String[] copy = labels.clone();
+		return family.series.computeIfAbsent(formatLabels(copy, null), k -> {
+			switch (family.type) {
+				case "counter":
+					return new Counter(copy);
+				case "timer":
+					return new Timer(copy, family.buckets);
+				default:
+					return new Histogram(copy, family.buckets);
+			}
+		});
+	}
+	
+	/**
+	 * Writes every metric to the given file in the Prometheus text exposition format. The file is written to a temporary file and atomically
+	 * moved into place so that collectors never read a partial file.
+	 * 
+	 * @param path
+	 *            the {@link Path} to the file
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void writePrometheus(Path path) throws IOException {
+		StringBuilder out = new StringBuilder();
+		for (Family family : families.values()) {
+			out.append("# HELP ").append(family.name).append(' ').append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+			out.append("# TYPE ").append(family.name).append(' ').append(family.type.equals("counter") ? "counter" : "histogram").append('\n');
+			for (Metric metric : family.series.values()) {
+				if (metric instanceof Counter) {
+					appendSample(out, family.name, formatLabels(metric.labels, null), ((Counter) metric).get());
+					continue;
+				}
+				Histogram histogram = (Histogram) metric;
+				long[] cumulative = histogram.getCumulativeCounts();
+				for (int i = 0; i < cumulative.length; i++)
+					appendSample(out, family.name + "_bucket", formatLabels(metric.labels, formatNumber(histogram.buckets[i])), cumulative[i]);
+				appendSample(out, family.name + "_bucket", formatLabels(metric.labels, "+Inf"), histogram.getCount());
+				appendSample(out, family.name + "_sum", formatLabels(metric.labels, null), histogram.getSum());
+				appendSample(out, family.name + "_count", formatLabels(metric.labels, null), histogram.getCount());
+			}
+		}
+		Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temp, out.toString().getBytes(StandardCharsets.UTF_8));
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	/**
+	 * Writes a summary of every metric to the given file as JSON. Each family is a field holding its type, help text, and an array of its
+	 * metrics. {@link Counter Counters} have a "value", and {@link Histogram Histograms} have a "count", a "sum", a "mean", and the cumulative
+	 * "buckets".
+	 * 
+	 * @param path
+	 *            the {@link Path} to the file
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void writeJSON(Path path) throws IOException {
+		JSONObject root = new JSONObject();
+		for (Family family : families.values()) {
+			JSONObject summary = new JSONObject();
+			summary.put("type", family.type);
+			summary.put("help", family.help);
+			JSONArray series = new JSONArray();
+			for (Metric metric : family.series.values()) {
+				JSONObject entry = new JSONObject(), labels = new JSONObject();
+				for (int i = 0; i < metric.labels.length; i += 2)
+					labels.put(metric.labels[i], metric.labels[i + 1]);
+				entry.put("labels", labels);
+				if (metric instanceof Counter)
+					entry.put("value", ((Counter) metric).get());
+				else {
+					Histogram histogram = (Histogram) metric;
+					entry.put("count", histogram.getCount());
+					entry.put("sum", histogram.getSum());
+					entry.put("mean", histogram.getCount() > 0 ? histogram.getSum() / histogram.getCount() : 0.0);
+					JSONObject buckets = new JSONObject();
+					long[] cumulative = histogram.getCumulativeCounts();
+					for (int i = 0; i < cumulative.length; i++)
+						buckets.put(formatNumber(histogram.buckets[i]), cumulative[i]);
+					buckets.put("+Inf", histogram.getCount());
+					entry.put("buckets", buckets);
+				}
+				series.add(entry);
+			}
+			summary.put("metrics", series);
+			root.put(family.name, summary);
+		}
+		JSONSystem.writeJSON(root, path);
+	}
+	
+	private static void appendSample(StringBuilder out, String name, String labels, double value) {
+		out.append(name);
+		if (labels.length() > 0)
+			out.append('{').append(labels).append('}');
+		out.append(' ').append(formatNumber(value)).append('\n');
+	}
+	
+	private static String formatLabels(String[] labels, String le) {
+		StringBuilder out = new StringBuilder();
+		for (int i = 0; i < labels.length; i += 2) {
+			if (out.length() > 0)
+				out.append(',');
+			out.append(labels[i]).append("=\"").append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+		}
+		if (le != null)
+			out.append(out.length() > 0 ? "," : "").append("le=\"").append(le).append('"');
+		return out.toString();
+	}
+	
+	private static String formatNumber(double value) {
+		return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+	}
+}
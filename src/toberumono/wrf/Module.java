@@ -1,14 +1,26 @@
 package toberumono.wrf;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 import toberumono.namelist.parser.Namelist;
-import toberumono.utils.files.BasicTransferActions;
-import toberumono.utils.files.TransferFileWalker;
+import toberumono.wrf.components.parallel.Parallel;
 import toberumono.wrf.scope.LoggedScopedComponent;
 import toberumono.wrf.scope.ModuleScopedMap;
 import toberumono.wrf.scope.NamedScopeValue;
@@ -24,12 +36,26 @@ import static toberumono.wrf.SimulationConstants.*;
  * @author Toberumono
  */
 public abstract class Module extends LoggedScopedComponent<Simulation> {
+	/**
+	 * The {@link #getIOClass() I/O class} of {@link Module Modules} that are not limited by I/O
+	 */
+	public static final String IO_NONE = "none";
+	/**
+	 * The {@link #getIOClass() I/O class} of {@link Module Modules} that are limited by the network
+	 */
+	public static final String IO_NETWORK = "network";
+	/**
+	 * The {@link #getIOClass() I/O class} of {@link Module Modules} that are limited by the disk
+	 */
+	public static final String IO_DISK = "disk";
+	
 	private final String name;
 	private final ScopedMap parameters, module;
 	private Timing timing;
 	private Path namelistPath;
 	private Namelist namelist;
 	private ScopedList dependencies;
+	private volatile CapturedProcess lastProcess;
 	
 	/**
 	 * Constructs a new {@link Module} defined by the given {@link ModuleScopedMap parameters} and initialized by the given {@link Simulation}.
@@ -47,6 +73,7 @@ public abstract class Module extends LoggedScopedComponent<Simulation> {
 		namelist = null;
 		timing = null;
 		dependencies = null;
+		lastProcess = null;
 		name = (String) parameters.get("name");
 		module = (ScopedMap) parameters.get("module");
 	}
@@ -109,13 +136,252 @@ public abstract class Module extends LoggedScopedComponent<Simulation> {
 	public abstract void execute() throws IOException, InterruptedException;
 	
 	/**
-	 * Cleans up the files that are no longer of use to the {@link Simulation}. This is run after {@link #execute()} returned.
+	 * Cleans up the files that are no longer of use to the {@link Simulation}. This is run after {@link #execute()} returned.<br>
+	 * Implementations should delete directories via {@link Simulation#erase(Path)} so that large deletions do not block downstream {@link Module
+	 * Modules}.
 	 * 
 	 * @throws IOException
 	 *             if an I/O error occurs while cleaning up files
 	 */
 	public abstract void cleanUp() throws IOException;
 	
+	/**
+	 * @return the "resources" subsection of the {@link Module Module's} description in the "module" section or {@code null} if it does not
+	 *         have one
+	 */
+	@NamedScopeValue("resources")
+	public ScopedMap getResources() {
+		return module.get("resources") instanceof ScopedMap ? (ScopedMap) module.get("resources") : null;
+	}
+	
+	/**
+	 * @return the number of cores that the {@link Module} occupies while {@link #execute() executing}. This is the "cores" field of
+	 *         {@link #getResources()} if it is set and {@link #getDefaultRequiredCores()} otherwise
+	 * @see ResourceScheduler
+	 */
+	@NamedScopeValue("required-cores")
+	public Integer getRequiredCores() {
+		return getResources() != null && getResources().containsKey("cores") ? evaluateToNumber(getResources().get("cores"), "resources.cores").intValue()
+				: getDefaultRequiredCores();
+	}
+	
+	/**
+	 * @return the amount of memory (in megabytes) that the {@link Module} needs while {@link #execute() executing}. This is the "memory" field
+	 *         of {@link #getResources()} if it is set and {@link #getDefaultRequiredMemory()} otherwise
+	 * @see ResourceScheduler
+	 */
+	@NamedScopeValue("required-memory")
+	public Long getRequiredMemory() {
+		return getResources() != null && getResources().containsKey("memory") ? evaluateToNumber(getResources().get("memory"), "resources.memory").longValue()
+				: getDefaultRequiredMemory();
+	}
+	
+	/**
+	 * @return the class of I/O that limits the {@link Module} while {@link #execute() executing}: {@link #IO_NETWORK}, {@link #IO_DISK}, or
+	 *         {@link #IO_NONE}. This is the "io" field of {@link #getResources()} if it is set and {@link #getDefaultIOClass()} otherwise
+	 * @see ResourceScheduler
+	 */
+	@NamedScopeValue("io-class")
+	public String getIOClass() {
+		String io = getResources() != null && getResources().containsKey("io") ? evaluateToType(getResources().get("io"), "resources.io", String.class).toLowerCase()
+				: getDefaultIOClass();
+		if (!io.equals(IO_NONE) && !io.equals(IO_NETWORK) && !io.equals(IO_DISK))
+			throw new IllegalArgumentException("The io field of " + getName() + "'s resources must be one of \"" + IO_NONE + "\", \"" + IO_NETWORK + "\", or \"" + IO_DISK + "\".");
+		return io;
+	}
+	
+	/**
+	 * @return the number of slots of the {@link #getIOClass() I/O class} that the {@link Module} occupies while {@link #execute() executing}.
+	 *         This is the "io-slots" field of {@link #getResources()} if it is set and {@link #getDefaultIOSlots()} otherwise
+	 */
+	@NamedScopeValue("io-slots")
+	public Integer getIOSlots() {
+		return getResources() != null && getResources().containsKey("io-slots") ? evaluateToNumber(getResources().get("io-slots"), "resources.io-slots").intValue()
+				: getDefaultIOSlots();
+	}
+	
+	/**
+	 * @return the number of concurrent network transfers that the {@link Module} performs while {@link #execute() executing}
+	 * @see #getIOClass()
+	 */
+	public int getRequiredBandwidth() {
+		return getIOClass().equals(IO_NETWORK) ? getIOSlots() : 0;
+	}
+	
+	/**
+	 * @return the number of disk-intensive slots that the {@link Module} occupies while {@link #execute() executing}
+	 * @see #getIOClass()
+	 */
+	public int getRequiredDisk() {
+		return getIOClass().equals(IO_DISK) ? getIOSlots() : 0;
+	}
+	
+	/**
+	 * @return the number of cores that the {@link Module} occupies if its description does not declare them (1 by default)
+	 */
+	protected int getDefaultRequiredCores() {
+		return 1;
+	}
+	
+	/**
+	 * @return the amount of memory (in megabytes) that the {@link Module} needs if its description does not declare it (0 by default)
+	 */
+	protected long getDefaultRequiredMemory() {
+		return 0;
+	}
+	
+	/**
+	 * @return the class of I/O that limits the {@link Module} if its description does not declare it ({@link #IO_NONE} by default)
+	 */
+	protected String getDefaultIOClass() {
+		return IO_NONE;
+	}
+	
+	/**
+	 * @return the number of slots of the {@link #getIOClass() I/O class} that the {@link Module} occupies if its description does not declare
+	 *         them (1 by default)
+	 */
+	protected int getDefaultIOSlots() {
+		return 1;
+	}
+	
+	/**
+	 * Starts the given command in the given directory via {@link CapturedProcess}.<br>
+	 * The started {@link CapturedProcess} is available through {@link #getLastProcess()} until another process is started.
+	 * 
+	 * @param directory
+	 *            the working directory of the process
+	 * @param log
+	 *            the path to the log file, relative to {@code directory}
+	 * @param command
+	 *            the command to run
+	 * @return the started {@link CapturedProcess}
+	 * @throws IOException
+	 *             if the process could not be started
+	 */
+	protected CapturedProcess startProcess(Path directory, String log, String... command) throws IOException {
+		CapturedProcess process = CapturedProcess.start(directory, log, getLogger(), Collections.emptyMap(), command);
+		lastProcess = process;
+		return process;
+	}
+	
+	/**
+	 * Starts the given executable in the given directory with the command and environment generated by the given {@link Parallel} instance.
+	 * 
+	 * @param directory
+	 *            the working directory of the process
+	 * @param log
+	 *            the path to the log file, relative to {@code directory}
+	 * @param parallel
+	 *            the {@link Parallel} instance that generates the command
+	 * @param executable
+	 *            the path to the executable (can be relative)
+	 * @param processes
+	 *            the number of processes to use
+	 * @return the started {@link CapturedProcess}
+	 * @throws IOException
+	 *             if the process could not be started
+	 * @see Parallel#prepare(Path, int)
+	 * @see Parallel#makeCommand(String, int)
+	 */
+	protected CapturedProcess startProcess(Path directory, String log, Parallel parallel, String executable, int processes) throws IOException {
+		parallel.prepare(directory, processes);
+		CapturedProcess process = CapturedProcess.start(directory, log, getLogger(), parallel.getEnvironment(), parallel.makeCommand(executable, processes));
+		lastProcess = process;
+		return process;
+	}
+	
+	/**
+	 * Waits for the given {@link CapturedProcess} to exit. If it exits with a non-zero value, the last lines of its output are logged.<br>
+	 * The run time of the process and whether it failed are recorded in the {@link Simulation Simulation's} {@link Simulation#getMetrics() metrics}
+	 * and {@link Simulation#getTrace() trace} under the name of its executable.
+	 * 
+	 * @param process
+	 *            the {@link CapturedProcess} to wait for
+	 * @return the exit value of the process
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	protected int waitForProcess(CapturedProcess process) throws InterruptedException {
+		int exit = process.waitFor();
+		String executable = getExecutableName(process.getCommand());
+		getSim().getMetrics().timer("wrf_runner_process_seconds", "Run time of external processes", "module", getName(), "executable", executable).stop(process.getStartTime());
+		getSim().getTrace().record(executable, "process", process.getStartTime(), "module", getName(), "command", String.join(" ", process.getCommand()), "exit", Integer.toString(exit));
+		if (exit != 0) {
+			getSim().getMetrics().counter("wrf_runner_process_failures_total", "External processes that exited with a non-zero value", "module", getName(), "executable", executable)
+					.increment();
+			getLogger().warning(process.getCommand() + " exited with " + exit + ". The last lines of its output were:" + System.lineSeparator()
+					+ String.join(System.lineSeparator(), process.tail(20)));
+		}
+		return exit;
+	}
+	
+	/**
+	 * @param command
+	 *            a command that was used to start a process
+	 * @return the file name of the first element of {@code command} that ends with ".exe" or ".csh" (so that launchers such as mpirun are
+	 *         skipped) or the file name of the first element if there is no such element
+	 */
+	private static String getExecutableName(List<String> command) {
+		for (String part : command)
+			if (part.endsWith(".exe") || part.endsWith(".csh"))
+				return part.substring(part.lastIndexOf('/') + 1);
+		return command.get(0).substring(command.get(0).lastIndexOf('/') + 1);
+	}
+	
+	/**
+	 * Runs the given command in the given directory via {@link CapturedProcess} and waits for it to exit.
+	 * 
+	 * @param directory
+	 *            the working directory of the process
+	 * @param log
+	 *            the path to the log file, relative to {@code directory}
+	 * @param command
+	 *            the command to run
+	 * @return the exit value of the process
+	 * @throws IOException
+	 *             if the process could not be started
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 * @see #startProcess(Path, String, String...)
+	 * @see #waitForProcess(CapturedProcess)
+	 */
+	protected int runProcess(Path directory, String log, String... command) throws IOException, InterruptedException {
+		return waitForProcess(startProcess(directory, log, command));
+	}
+	
+	/**
+	 * Runs the given executable in the given directory with the command and environment generated by the given {@link Parallel} instance and
+	 * waits for it to exit.
+	 * 
+	 * @param directory
+	 *            the working directory of the process
+	 * @param log
+	 *            the path to the log file, relative to {@code directory}
+	 * @param parallel
+	 *            the {@link Parallel} instance that generates the command
+	 * @param executable
+	 *            the path to the executable (can be relative)
+	 * @param processes
+	 *            the number of processes to use
+	 * @return the exit value of the process
+	 * @throws IOException
+	 *             if the process could not be started
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 * @see #startProcess(Path, String, Parallel, String, int)
+	 */
+	protected int runProcess(Path directory, String log, Parallel parallel, String executable, int processes) throws IOException, InterruptedException {
+		return waitForProcess(startProcess(directory, log, parallel, executable, processes));
+	}
+	
+	/**
+	 * @return the {@link CapturedProcess} most recently started by the {@link Module} or {@code null} if it has not started one
+	 */
+	public CapturedProcess getLastProcess() {
+		return lastProcess;
+	}
+	
 	/**
 	 * @return the {@link Path} to the {@link Module Module's} namelist file relative to the {@link Module Module's} root directory
 	 */
@@ -196,17 +462,157 @@ public abstract class Module extends LoggedScopedComponent<Simulation> {
 	
 	/**
 	 * Performs the operation used to link the working directories back to the source installation.<br>
-	 * This uses {@link BasicTransferActions#SYMLINK}.
+	 * If {@link Simulation#isUseLinkTemplates()} is {@code true}, this clones the {@link Module Module's} link template via
+	 * {@link Simulation#linkFromTemplate(Module, Path)}; otherwise, it links directly from the source installation via {@link #linkFromSource(Path)}.
 	 * 
 	 * @throws IOException
 	 *             if an error occured while creating the links.
 	 */
 	public void linkToWorkingDirectory() throws IOException {
-		Files.createDirectories(getSim().getActivePath(getName()));
-		if (getSim().getSourcePath(getName()) != null)
-			//We don't need anything from the src directories, so we exclude them.
-			Files.walkFileTree(getSim().getSourcePath(getName()), new TransferFileWalker(getSim().getActivePath(getName()), BasicTransferActions.SYMLINK,
-					p -> !filenameTest(p.getFileName().toString()), p -> !p.getFileName().toString().equals("src"), null, getLogger(), false));
+		if (getSim().getSourcePath(getName()) == null)
+			Files.createDirectories(getSim().getActivePath(getName()));
+		else if (getSim().isUseLinkTemplates())
+			getSim().linkFromTemplate(this, getSim().getActivePath(getName()));
+		else
+			linkFromSource(getSim().getActivePath(getName()));
+	}
+	
+	/**
+	 * Links the {@link Module Module's} source installation into the given directory.<br>
+	 * Subdirectories are linked in parallel on {@link Simulation#getLinkPool()} via {@link LinkTreeTask}.
+	 * 
+	 * @param target
+	 *            the directory into which the links should be placed
+	 * @throws IOException
+	 *             if an error occured while creating the links.
+	 */
+	protected void linkFromSource(Path target) throws IOException {
+		linkFromSource(getSim(), getSim().getSourcePath(getName()), target);
+	}
+	
+	/**
+	 * Links the given source installation into the given directory in the same way as {@link #linkFromSource(Path)}. This allows
+	 * {@link Simulation} to link {@link Module Modules} that it has not loaded.
+	 * 
+	 * @param sim
+	 *            the {@link Simulation} whose {@link Simulation#getLinkPool() link pool} should be used
+	 * @param source
+	 *            the {@link Path} to the source installation
+	 * @param target
+	 *            the directory into which the links should be placed
+	 * @throws IOException
+	 *             if an error occured while creating the links.
+	 */
+	static void linkFromSource(Simulation sim, Path source, Path target) throws IOException {
+		LinkTreeTask.linkTree(sim.getLinkPool(), source, target, p -> !filenameTest(p.getFileName().toString()), Module::isLinkedDirectory,
+				(src, dest, attrs) -> Files.createSymbolicLink(dest, src));
+	}
+	
+	/**
+	 * Computes a stamp of the {@link Module Module's} source installation from the modification times of its root directory and the top-level
+	 * directories that {@link #linkFromSource(Path)} descends into. Link templates only contain symbolic links, so files that are rebuilt in
+	 * place do not make them stale; adding or removing entries in those directories does, and that changes the stamp.<br>
+	 * Unlike {@link #hashSourceManifest()}, this does not walk the installation.
+	 * 
+	 * @return the stamp as a {@link String}
+	 * @throws IOException
+	 *             if an I/O error occurs while reading the attributes of the source installation
+	 */
+	public String getSourceStamp() throws IOException {
+		Path source = getSim().getSourcePath(getName());
+		List<String> stamp = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(source, p -> Files.isDirectory(p) && isLinkedDirectory(p))) {
+			for (Path dir : stream)
+				stamp.add(dir.getFileName() + "\t" + Files.getLastModifiedTime(dir).toMillis());
+		}
+		Collections.sort(stamp); //The order in which directories are listed is not guaranteed
+		return Files.getLastModifiedTime(source).toMillis() + "\t" + String.join("\t", stamp);
+	}
+	
+	/**
+	 * Computes a hash of the manifest of the {@link Module Module's} source installation. The manifest lists the relative path, size, and
+	 * modification time of every file in every directory that {@link #linkFromSource(Path)} descends into (including the targets of symbolic
+	 * links), so the hash changes whenever a file in the installation is added, removed, or rebuilt.
+	 * 
+	 * @return the hash of the manifest as a hexadecimal {@link String}
+	 * @throws IOException
+	 *             if an I/O error occurs while walking the source installation
+	 */
+	public String hashSourceManifest() throws IOException {
+		Path source = getSim().getSourcePath(getName());
+		List<String> manifest = new ArrayList<>();
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				return dir.equals(source) || isLinkedDirectory(dir) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+			}
+			
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if (attrs.isSymbolicLink() && Files.exists(file)) //We want rebuilt targets to change the manifest too
+					attrs = Files.readAttributes(file, BasicFileAttributes.class);
+				manifest.add(source.relativize(file) + "\t" + attrs.size() + "\t" + attrs.lastModifiedTime().toMillis());
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Collections.sort(manifest); //The order in which directories are listed is not guaranteed
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String entry : manifest)
+				digest.update((entry + "\n").getBytes(StandardCharsets.UTF_8));
+			StringBuilder out = new StringBuilder();
+			for (byte b : digest.digest())
+				out.append(String.format("%02x", b));
+			return out.toString();
+		}
+		catch (NoSuchAlgorithmException e) { //Every Java implementation is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * @param directory
+	 *            a subdirectory of a {@link Module Module's} source installation
+	 * @return {@code true} iff {@link #linkFromSource(Path)} should descend into {@code directory}
+	 */
+	protected static boolean isLinkedDirectory(Path directory) {
+		return !directory.getFileName().toString().equals("src"); //We don't need anything from the src directories, so we exclude them.
+	}
+	
+	/**
+	 * Recreates the given link template in the given directory.<br>
+	 * Each entry in the template is hard-linked into {@code target}, which costs a single metadata operation per entry and does not require
+	 * re-evaluating {@link #filenameTest(String)} or reading the source installation. If the file system does not support hard links, the links
+	 * in the template are copied instead. Subdirectories are cloned in parallel on {@link Simulation#getLinkPool()} via {@link LinkTreeTask}.
+	 * 
+	 * @param template
+	 *            the {@link Path} to the link template
+	 * @param target
+	 *            the directory into which the template should be cloned
+	 * @throws IOException
+	 *             if an error occured while creating the links.
+	 */
+	protected void cloneTemplate(Path template, Path target) throws IOException {
+		AtomicBoolean hardLinks = new AtomicBoolean(true);
+		LinkTreeTask.linkTree(getSim().getLinkPool(), template, target, p -> true, p -> true, (source, dest, attrs) -> {
+			if (hardLinks.get()) {
+				try {
+					Files.createLink(dest, source);
+					return;
+				}
+				catch (FileAlreadyExistsException e) {
+					throw e;
+				}
+				catch (UnsupportedOperationException | FileSystemException e) { //We only need to try this once
+					if (hardLinks.getAndSet(false))
+						getLogger().fine("Unable to hard link the template for " + getName() + ". Falling back to copying links.");
+				}
+			}
+			if (attrs.isSymbolicLink())
+				Files.createSymbolicLink(dest, Files.readSymbolicLink(source));
+			else
+				Files.copy(source, dest);
+		});
 	}
 	
 	/**
@@ -0,0 +1,25 @@
+package toberumono.wrf;
+
+import java.nio.file.Path;
+
+/**
+ * A listener that is notified each time a {@link Module} finishes writing an output file and has moved it into the {@link Simulation
+ * Simulation's} working directory.<br>
+ * {@link OutputListener OutputListeners} are registered with {@link Simulation#addOutputListener(OutputListener)} and are called on the thread
+ * that detected the file, so they should hand off any long-running work.
+ * 
+ * @author Toberumono
+ */
+@FunctionalInterface
+public interface OutputListener {
+	
+	/**
+	 * Called when an output file has been completed.
+	 * 
+	 * @param source
+	 *            the {@link Module} that produced the file
+	 * @param output
+	 *            the {@link Path} to the file in its final location
+	 */
+	public void outputCompleted(Module source, Path output);
+}
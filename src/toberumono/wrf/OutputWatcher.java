@@ -0,0 +1,198 @@
+package toberumono.wrf;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import toberumono.utils.files.TransferAction;
+
+/**
+ * Watches a directory for output files that are written one after another and transfers each one as soon as it is complete.<br>
+ * Each output file belongs to a stream (e.g. all of the wrfout files for a single domain), and a file is considered complete when the next file
+ * in its stream is created. The files that are still being written when the {@link OutputWatcher} is {@link #close() closed} are completed
+ * then.<br>
+ * Events are received through a {@link WatchService}. Because some file systems (e.g. NFS) do not generate events, the directory is also
+ * re-listed whenever no events have been received for {@link #RESCAN_INTERVAL} seconds.
+ * 
+ * @author Toberumono
+ */
+public class OutputWatcher implements AutoCloseable {
+	/**
+	 * The number of seconds without events after which the watched directory is re-listed
+	 */
+	public static final long RESCAN_INTERVAL = 10;
+	
+	private final Path directory, target;
+	private final Function<Path, String> stream;
+	private final TransferAction action;
+	private final BiConsumer<Path, Path> onComplete;
+	private final Logger logger;
+	private final Map<String, Path> pending;
+	private final Set<Path> seen;
+	private final WatchService watcher;
+	private final Thread thread;
+	private volatile boolean running;
+	
+	/**
+	 * Constructs and starts a new {@link OutputWatcher}.
+	 * 
+	 * @param directory
+	 *            the directory to watch
+	 * @param target
+	 *            the directory into which the completed files should be transferred
+	 * @param stream
+	 *            a {@link Function} that returns the name of the stream to which the given file belongs or {@code null} if the file is not an
+	 *            output file
+	 * @param action
+	 *            the {@link TransferAction} used to transfer each completed file into {@code target}
+	 * @param onComplete
+	 *            a {@link BiConsumer} that is called with the original and transferred {@link Path} of each completed file
+	 * @param logger
+	 *            the {@link Logger} to which errors should be reported
+	 * @throws IOException
+	 *             if the {@link WatchService} could not be created
+	 */
+	public OutputWatcher(Path directory, Path target, Function<Path, String> stream, TransferAction action, BiConsumer<Path, Path> onComplete, Logger logger)
+			throws IOException {
+		this.directory = directory;
+		this.target = target;
+		this.stream = stream;
+		this.action = action;
+		this.onComplete = onComplete;
+		this.logger = logger;
+		pending = new HashMap<>();
+		seen = new HashSet<>();
+		watcher = FileSystems.getDefault().newWatchService();
+		directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+		running = true;
+		thread = new Thread(this::watch, "OutputWatcher-" + directory.getFileName());
+		thread.setDaemon(true);
+		thread.start();
+		synchronized (this) {
+			rescan(); //Picks up anything that was created before the WatchService was registered
+		}
+	}
+	
+	private void watch() {
+		try {
+			while (running) {
+				WatchKey key = watcher.poll(RESCAN_INTERVAL, TimeUnit.SECONDS);
+				synchronized (this) {
+					if (!running)
+						break;
+					if (key == null) {
+						rescan();
+						continue;
+					}
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+							rescan();
+						else
+							created(directory.resolve((Path) event.context()));
+					}
+					key.reset();
+				}
+			}
+		}
+		catch (InterruptedException e) {/* We're shutting down */}
+	}
+	
+	private void rescan() {
+		List<Path> found = new ArrayList<>();
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+			for (Path child : children)
+				if (!seen.contains(child))
+					found.add(child);
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to list " + directory, e);
+		}
+		Collections.sort(found); //Output file names are timestamped, so this puts each stream in the order in which it was written
+		for (Path p : found)
+			created(p);
+	}
+	
+	private void created(Path file) {
+		String name = stream.apply(file);
+		if (name == null || !seen.add(file))
+			return;
+		Path previous = pending.put(name, file);
+		if (previous != null)
+			complete(previous);
+	}
+	
+	private void complete(Path file) {
+		try {
+			if (!Files.exists(file))
+				return;
+			onComplete.accept(file, action.transfer(file, target.resolve(directory.relativize(file).toString())));
+		}
+		catch (IOException | RuntimeException e) {
+			logger.log(Level.SEVERE, "Unable to transfer " + file + " into " + target, e);
+		}
+	}
+	
+	/**
+	 * Forgets every file that matches the given filter, so that files with the same names are treated as new output if they are created again
+	 * (e.g. when the process that writes the output files is restarted from an earlier point). Matching files that are waiting for the next file
+	 * in their stream are not completed.<br>
+	 * This should only be called while the process that is writing the output files is not running.
+	 * 
+	 * @param filter
+	 *            a {@link Predicate} that returns {@code true} for the files that should be forgotten
+	 */
+	public synchronized void forget(Predicate<Path> filter) {
+		seen.removeIf(filter);
+		pending.values().removeIf(filter);
+	}
+	
+	/**
+	 * Stops watching the directory and completes every file that has not yet been completed.<br>
+	 * This should be called once the process that is writing the output files has exited.
+	 * 
+	 * @throws IOException
+	 *             if the {@link WatchService} could not be closed
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting for the watcher thread to exit
+	 */
+	@Override
+	public void close() throws IOException, InterruptedException {
+		synchronized (this) {
+			running = false;
+		}
+		thread.interrupt();
+		thread.join();
+		try {
+			synchronized (this) {
+				rescan();
+				List<Path> remaining = new ArrayList<>(pending.values());
+				pending.clear();
+				Collections.sort(remaining);
+				for (Path p : remaining)
+					complete(p);
+			}
+		}
+		finally {
+			watcher.close();
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package toberumono.wrf;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import static toberumono.wrf.SimulationConstants.*;
+
+/**
+ * Admits work against a fixed budget of cores, memory, network bandwidth, and disk bandwidth.<br>
+ * Requests are admitted as soon as the resources they need are free, so small requests can fill in around large ones (which favors throughput).
+ * To keep a large request from waiting forever, no request may be admitted ahead of a waiting request that has already been passed over
+ * {@link #MAX_BYPASSES} times. Requests for more than the whole budget are reduced to the whole budget so that they can still run.<br>
+ * Requests can also be marked as overlapping (e.g. the {@link Module Modules} of a forecast cycle that started while the previous cycle is still
+ * running). Overlapping requests that need cores are never admitted while a non-overlapping request that needs cores is waiting, and together
+ * they may not hold more than the budget minus the {@link #getOverlapReservedCores() overlap reservation}.
+ * 
+ * @author Toberumono
+ */
+public class ResourceScheduler {
+	/**
+	 * The maximum number of times that a waiting request can be passed over by later requests
+	 */
+	public static final int MAX_BYPASSES = 8;
+	/**
+	 * The default number of concurrent network transfers
+	 */
+	public static final int DEFAULT_BANDWIDTH = 8;
+	/**
+	 * The default number of disk-intensive tasks that can run at once
+	 */
+	public static final int DEFAULT_DISK = 2;
+	
+	private final int cores, bandwidth, disk;
+	private final long memory;
+	private final List<Request> waiting;
+	private final Logger logger;
+	private int freeCores, freeBandwidth, freeDisk, overlapCores, overlapReservedCores;
+	private long freeMemory;
+	
+	private static class Request {
+		private final String name;
+		private final int cores, bandwidth, disk;
+		private final long memory;
+		private final BooleanSupplier overlapping;
+		private int bypasses;
+		private boolean overlap;
+		
+		private Request(String name, int cores, long memory, int bandwidth, int disk, BooleanSupplier overlapping) {
+			this.name = name;
+			this.cores = cores;
+			this.memory = memory;
+			this.bandwidth = bandwidth;
+			this.disk = disk;
+			this.overlapping = overlapping;
+			bypasses = 0;
+			overlap = false;
+		}
+	}
+	
+	/**
+	 * Holds resources that were admitted by a {@link ResourceScheduler}. The resources are returned when the {@link Reservation} is closed.
+	 * 
+	 * @author Toberumono
+	 */
+	public class Reservation implements AutoCloseable {
+		private final Request request;
+		private boolean released;
+		
+		private Reservation(Request request) {
+			this.request = request;
+			released = false;
+		}
+		
+		/**
+		 * @return the number of cores held by the {@link Reservation}
+		 */
+		public int getCores() {
+			return request.cores;
+		}
+		
+		/**
+		 * @return the amount of memory (in megabytes) held by the {@link Reservation}
+		 */
+		public long getMemory() {
+			return request.memory;
+		}
+		
+		/**
+		 * @return the number of concurrent network transfers held by the {@link Reservation}
+		 */
+		public int getBandwidth() {
+			return request.bandwidth;
+		}
+		
+		/**
+		 * @return the number of disk-intensive slots held by the {@link Reservation}
+		 */
+		public int getDisk() {
+			return request.disk;
+		}
+		
+		/**
+		 * Returns the held resources to the {@link ResourceScheduler}. Subsequent calls have no effect.
+		 */
+		@Override
+		public void close() {
+			release(this);
+		}
+	}
+	
+	/**
+	 * Constructs a new {@link ResourceScheduler} with the given budget.
+	 * 
+	 * @param cores
+	 *            the number of cores that can be in use at once
+	 * @param memory
+	 *            the amount of memory (in megabytes) that can be in use at once
+	 * @param bandwidth
+	 *            the number of network transfers that can be in progress at once
+	 * @param disk
+	 *            the number of disk-intensive tasks that can run at once
+	 */
+	public ResourceScheduler(int cores, long memory, int bandwidth, int disk) {
+		this.cores = freeCores = Math.max(cores, 1);
+		this.memory = freeMemory = Math.max(memory, 0);
+		this.bandwidth = freeBandwidth = Math.max(bandwidth, 1);
+		this.disk = freeDisk = Math.max(disk, 1);
+		overlapCores = overlapReservedCores = 0;
+		waiting = new LinkedList<>();
+		logger = Logger.getLogger(SIMULATION_LOGGER_ROOT + ".ResourceScheduler");
+	}
+	
+	/**
+	 * @return a {@link ResourceScheduler} whose budget is every core and all of the physical memory on the local machine,
+	 *         {@link #DEFAULT_BANDWIDTH} concurrent network transfers, and {@link #DEFAULT_DISK} concurrent disk-intensive tasks
+	 */
+	public static ResourceScheduler forLocalMachine() {
+		return new ResourceScheduler(Runtime.getRuntime().availableProcessors(), getPhysicalMemory(), DEFAULT_BANDWIDTH, DEFAULT_DISK);
+	}
+	
+	/**
+	 * @return the amount of physical memory on the local machine in megabytes or {@link Long#MAX_VALUE} if it cannot be determined
+	 */
+	@SuppressWarnings("deprecation")
+	public static long getPhysicalMemory() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean)
+			return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize() / (1024 * 1024);
+		return Long.MAX_VALUE;
+	}
+	
+	/**
+	 * Waits until the requested resources are free and then reserves them.<br>
+	 * If this is called from a {@link ForkJoinPool} (e.g. the pool that runs {@link Module Modules}), the wait is treated as a managed block so that
+	 * the pool can start other tasks in the meantime.
+	 * 
+	 * @param name
+	 *            a name for the request (used in log messages)
+	 * @param cores
+	 *            the number of cores needed
+	 * @param memory
+	 *            the amount of memory (in megabytes) needed
+	 * @param bandwidth
+	 *            the number of concurrent network transfers needed
+	 * @param disk
+	 *            the number of disk-intensive slots needed
+	 * @return a {@link Reservation} holding the resources. This must be closed when the resources are no longer needed
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	public Reservation reserve(String name, int cores, long memory, int bandwidth, int disk) throws InterruptedException {
+		return reserve(name, cores, memory, bandwidth, disk, () -> false);
+	}
+	
+	/**
+	 * Waits until the requested resources are free and then reserves them. While {@code overlapping} returns {@code true}, the request is
+	 * subject to the restrictions on overlapping requests. Whoever controls the result of {@code overlapping} must call {@link #reevaluate()}
+	 * when it changes.
+	 * 
+	 * @param name
+	 *            a name for the request (used in log messages)
+	 * @param cores
+	 *            the number of cores needed
+	 * @param memory
+	 *            the amount of memory (in megabytes) needed
+	 * @param bandwidth
+	 *            the number of concurrent network transfers needed
+	 * @param disk
+	 *            the number of disk-intensive slots needed
+	 * @param overlapping
+	 *            a {@link BooleanSupplier} that returns {@code true} while the request should be treated as overlapping
+	 * @return a {@link Reservation} holding the resources. This must be closed when the resources are no longer needed
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	public Reservation reserve(String name, int cores, long memory, int bandwidth, int disk, BooleanSupplier overlapping) throws InterruptedException {
+		Request request = new Request(name, clamp(cores, this.cores), Math.min(Math.max(memory, 0), this.memory), clamp(bandwidth, this.bandwidth), clamp(disk, this.disk),
+				overlapping);
+		if (!ForkJoinTask.inForkJoinPool())
+			return acquire(request);
+		Reservation[] out = new Reservation[1];
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+			@Override
+			public boolean block() throws InterruptedException {
+				out[0] = acquire(request);
+				return true;
+			}
+			
+			@Override
+			public boolean isReleasable() {
+				return out[0] != null;
+			}
+		});
+		return out[0];
+	}
+	
+	private synchronized Reservation acquire(Request request) throws InterruptedException {
+		waiting.add(request);
+		try {
+			if (!isAdmissible(request)) {
+				logger.fine(request.name + " is waiting for " + request.cores + " cores, " + request.memory + "MB, " + request.bandwidth + " transfers, and " + request.disk + " disk slots");
+				do {
+					wait();
+				} while (!isAdmissible(request));
+			}
+		}
+		catch (InterruptedException e) {
+			waiting.remove(request);
+			notifyAll(); //Removing the request may allow another request to be admitted
+			throw e;
+		}
+		for (Iterator<Request> iter = waiting.iterator(); iter.hasNext();) {
+			Request ahead = iter.next();
+			if (ahead == request) {
+				iter.remove();
+				break;
+			}
+			ahead.bypasses++;
+		}
+		freeCores -= request.cores;
+		freeMemory -= request.memory;
+		freeBandwidth -= request.bandwidth;
+		freeDisk -= request.disk;
+		if (request.overlap = request.overlapping.getAsBoolean()) //The cores count against the overlap limit until they are released
+			overlapCores += request.cores;
+		logger.fine("Admitted " + request.name + (request.overlap ? " as overlapping" : ""));
+		return new Reservation(request);
+	}
+	
+	private boolean isAdmissible(Request request) {
+		if (request.cores > freeCores || request.memory > freeMemory || request.bandwidth > freeBandwidth || request.disk > freeDisk)
+			return false;
+		if (request.cores > 0 && request.overlapping.getAsBoolean()) {
+			if (overlapCores + request.cores > cores - overlapReservedCores)
+				return false;
+			for (Request other : waiting)
+				if (other.cores > 0 && !other.overlapping.getAsBoolean())
+					return false;
+		}
+		for (Request ahead : waiting) {
+			if (ahead == request)
+				return true;
+			if (ahead.bypasses >= MAX_BYPASSES)
+				return false;
+		}
+		return true;
+	}
+	
+	private synchronized void release(Reservation reservation) {
+		if (reservation.released)
+			return;
+		reservation.released = true;
+		freeCores += reservation.request.cores;
+		freeMemory += reservation.request.memory;
+		freeBandwidth += reservation.request.bandwidth;
+		freeDisk += reservation.request.disk;
+		if (reservation.request.overlap)
+			overlapCores -= reservation.request.cores;
+		logger.fine("Released " + reservation.request.name);
+		notifyAll();
+	}
+	
+	/**
+	 * Re-checks every waiting request. This must be called whenever the result of an overlapping request's {@link BooleanSupplier} changes.
+	 */
+	public synchronized void reevaluate() {
+		notifyAll();
+	}
+	
+	/**
+	 * @return the number of cores that overlapping requests cannot use (0 by default)
+	 */
+	public synchronized int getOverlapReservedCores() {
+		return overlapReservedCores;
+	}
+	
+	/**
+	 * Sets the number of cores that overlapping requests cannot use. This keeps the overlapping work from slowing down the work that it
+	 * overlaps (e.g. the previous cycle's WRF run).
+	 * 
+	 * @param overlapReservedCores
+	 *            the number of cores that overlapping requests cannot use
+	 */
+	public synchronized void setOverlapReservedCores(int overlapReservedCores) {
+		this.overlapReservedCores = Math.max(overlapReservedCores, 0);
+		notifyAll();
+	}
+	
+	private static int clamp(int requested, int budget) {
+		return Math.min(Math.max(requested, 0), budget);
+	}
+	
+	/**
+	 * @return the number of cores that can be in use at once
+	 */
+	public int getCores() {
+		return cores;
+	}
+	
+	/**
+	 * @return the amount of memory (in megabytes) that can be in use at once
+	 */
+	public long getMemory() {
+		return memory;
+	}
+	
+	/**
+	 * @return the number of network transfers that can be in progress at once
+	 */
+	public int getBandwidth() {
+		return bandwidth;
+	}
+	
+	/**
+	 * @return the number of disk-intensive tasks that can run at once
+	 */
+	public int getDisk() {
+		return disk;
+	}
+	
+	/**
+	 * @return the number of cores that are not currently reserved
+	 */
+	public synchronized int getFreeCores() {
+		return freeCores;
+	}
+}
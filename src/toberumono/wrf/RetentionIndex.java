@@ -0,0 +1,283 @@
+package toberumono.wrf;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import toberumono.json.JSONArray;
+import toberumono.json.JSONData;
+import toberumono.json.JSONNumber;
+import toberumono.json.JSONObject;
+import toberumono.json.JSONString;
+import toberumono.json.JSONSystem;
+
+/**
+ * A persistent index of the runs in a root working directory.<br>
+ * Each run is recorded once, when it finishes, with its timestamp, size on disk, and status, so every run in the root working directory does not
+ * need to be re-statted each time a {@link Simulation} finishes. Before a retention policy is evaluated, the index is reconciled with a listing of
+ * the root working directory if the root working directory has been modified since the index was last saved: runs whose directories are gone are
+ * dropped, and runs that are missing from the index (e.g. because their runner was killed before it could record them) are added if their
+ * {@link SimulationJournal journals} record that they finished. Runs without a finished record (including those that are still running in other
+ * processes and those from versions that did not write journals) are never added, so they are never expired. Their names are stored in the index
+ * so that their journals are only read once; a run that is still running records itself when it finishes.<br>
+ * The index is stored in {@value #INDEX_FILE_NAME} in the root working directory.
+ * 
+ * @author Toberumono
+ */
+public class RetentionIndex {
+	/**
+	 * The name of the file in which the index is stored
+	 */
+	public static final String INDEX_FILE_NAME = ".retention.json";
+	private static final Map<Path, Object> locks = new ConcurrentHashMap<>();
+	
+	private final Path root, index;
+	private final Map<String, Run> runs;
+	private final Set<String> unfinished;
+	private long rootModified;
+	
+	/**
+	 * A single entry in a {@link RetentionIndex}.
+	 * 
+	 * @author Toberumono
+	 */
+	public static class Run {
+		private final String name, status;
+		private final long timestamp, bytes;
+		
+		/**
+		 * Constructs a new {@link Run}.
+		 * 
+		 * @param name
+		 *            the name of the run's directory
+		 * @param timestamp
+		 *            the time at which the run finished in milliseconds since the epoch
+		 * @param bytes
+		 *            the size of the run's directory in bytes
+		 * @param status
+		 *            the status with which the run finished
+		 */
+		public Run(String name, long timestamp, long bytes, String status) {
+			this.name = name;
+			this.timestamp = timestamp;
+			this.bytes = bytes;
+			this.status = status;
+		}
+		
+		/**
+		 * @return the name of the run's directory
+		 */
+		public String getName() {
+			return name;
+		}
+		
+		/**
+		 * @return the time at which the run finished in milliseconds since the epoch
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+		
+		/**
+		 * @return the size of the run's directory in bytes
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+		
+		/**
+		 * @return the status with which the run finished
+		 */
+		public String getStatus() {
+			return status;
+		}
+	}
+	
+	private RetentionIndex(Path root) {
+		this.root = root;
+		index = root.resolve(INDEX_FILE_NAME);
+		runs = new LinkedHashMap<>();
+		unfinished = new HashSet<>();
+		rootModified = -1;
+	}
+	
+	/**
+	 * Records the given run in the {@link RetentionIndex} for the given root working directory and removes the runs that violate the given
+	 * retention policy from it. The run that is being recorded is never removed.<br>
+	 * The oldest runs are removed first. A limit that is less than 1 is not enforced.
+	 * 
+	 * @param root
+	 *            the root working directory
+	 * @param run
+	 *            the {@link Path} to the run's directory
+	 * @param status
+	 *            the status with which the run finished
+	 * @param maxCount
+	 *            the maximum number of runs to keep
+	 * @param maxBytes
+	 *            the maximum total size of the runs to keep in bytes
+	 * @param maxAge
+	 *            the maximum age of the runs to keep in milliseconds
+	 * @return the {@link Path Paths} to the directories of the removed runs, oldest first. These have not been deleted
+	 * @throws IOException
+	 *             if an I/O error occurs while reading or writing the index
+	 */
+	public static List<Path> recordAndExpire(Path root, Path run, String status, int maxCount, long maxBytes, long maxAge) throws IOException {
+		return recordAndExpire(root, Collections.singletonMap(run, status), maxCount, maxBytes, maxAge);
+	}
+	
+	/**
+	 * Records the given runs (e.g. the members of an {@link Ensemble}) in the {@link RetentionIndex} for the given root working directory and
+	 * removes the runs that violate the given retention policy from it. The runs that are being recorded are never removed.<br>
+	 * The oldest runs are removed first. A limit that is less than 1 is not enforced.
+	 * 
+	 * @param root
+	 *            the root working directory
+	 * @param runs
+	 *            a {@link Map} of the {@link Path Paths} to the runs' directories to the statuses with which they finished
+	 * @param maxCount
+	 *            the maximum number of runs to keep
+	 * @param maxBytes
+	 *            the maximum total size of the runs to keep in bytes
+	 * @param maxAge
+	 *            the maximum age of the runs to keep in milliseconds
+	 * @return the {@link Path Paths} to the directories of the removed runs, oldest first. These have not been deleted
+	 * @throws IOException
+	 *             if an I/O error occurs while reading or writing the index
+	 */
+	public static List<Path> recordAndExpire(Path root, Map<Path, String> runs, int maxCount, long maxBytes, long maxAge) throws IOException {
+		root = root.toAbsolutePath().normalize();
+		synchronized (locks.computeIfAbsent(root, p -> new Object())) { //File locks are held by the JVM, so threads still have to be excluded separately
+			try (FileChannel channel = FileChannel.open(root.resolve(INDEX_FILE_NAME + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+					FileLock lock = channel.lock()) {
+				RetentionIndex ri = load(root);
+				Set<String> keep = new HashSet<>();
+				for (Map.Entry<Path, String> run : runs.entrySet()) {
+					String name = run.getKey().getFileName().toString();
+					ri.runs.remove(name); //Re-recording a run moves it to the end
+					ri.unfinished.remove(name);
+					ri.runs.put(name, new Run(name, System.currentTimeMillis(), sizeOf(run.getKey()), run.getValue()));
+					keep.add(name);
+				}
+				List<Path> expired = ri.expire(keep, maxCount, maxBytes, maxAge);
+				ri.save();
+				return expired;
+			}
+		}
+	}
+	
+	private static RetentionIndex load(Path root) throws IOException {
+		RetentionIndex ri = new RetentionIndex(root);
+		if (Files.exists(ri.index)) {
+			JSONObject stored = (JSONObject) JSONSystem.loadJSON(ri.index), runs = stored;
+			if (stored.containsKey("runs")) { //Indices written before the modification time was stored only contain the runs, so they are always reconciled
+				runs = (JSONObject) stored.get("runs");
+				ri.rootModified = ((Number) stored.get("root-modified").value()).longValue();
+				for (JSONData<?> name : (JSONArray) stored.get("unfinished"))
+					ri.unfinished.add((String) name.value());
+			}
+			for (Map.Entry<String, JSONData<?>> e : runs.entrySet()) {
+				JSONObject run = (JSONObject) e.getValue();
+				ri.runs.put(e.getKey(), new Run(e.getKey(), ((Number) run.get("timestamp").value()).longValue(), ((Number) run.get("bytes").value()).longValue(),
+						(String) run.get("status").value()));
+			}
+		}
+		long modified = Files.getLastModifiedTime(root).toMillis(); //Read before the listing so that a change made during it is seen by the next reconciliation
+		if (modified != ri.rootModified) {
+			ri.reconcile();
+			ri.rootModified = modified;
+		}
+		return ri;
+	}
+	
+	private void reconcile() throws IOException {
+		Set<String> present = new HashSet<>();
+		List<Run> found = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) { //Only the names are needed for the runs that we already know about, so nothing is statted here
+			for (Path p : stream) {
+				String name = p.getFileName().toString();
+				if (name.startsWith("."))
+					continue;
+				present.add(name);
+				if (runs.containsKey(name) || unfinished.contains(name))
+					continue;
+				if (Files.exists(p.resolve(SimulationJournal.JOURNAL_FILE_NAME))) { //This also excludes anything that is not a directory
+					SimulationJournal journal = new SimulationJournal(p);
+					if (journal.getFinishedStatus() != null) {
+						found.add(new Run(name, journal.getFinishedTime(), sizeOf(p), journal.getFinishedStatus()));
+						continue;
+					}
+				}
+				unfinished.add(name);
+			}
+		}
+		runs.keySet().retainAll(present);
+		unfinished.retainAll(present);
+		found.sort(Comparator.comparingLong(Run::getTimestamp));
+		for (Run run : found)
+			runs.put(run.getName(), run);
+	}
+	
+	private List<Path> expire(Set<String> keep, int maxCount, long maxBytes, long maxAge) {
+		List<Run> ordered = new ArrayList<>(runs.values());
+		ordered.sort(Comparator.comparingLong(Run::getTimestamp));
+		long totalBytes = ordered.stream().mapToLong(Run::getBytes).sum(), cutoff = System.currentTimeMillis() - maxAge;
+		List<Path> expired = new ArrayList<>();
+		for (Run run : ordered) {
+			if (keep.contains(run.getName()))
+				continue;
+			if (!((maxCount > 0 && runs.size() > maxCount) || (maxBytes > 0 && totalBytes > maxBytes) || (maxAge > 0 && run.getTimestamp() < cutoff)))
+				break;
+			runs.remove(run.getName());
+			totalBytes -= run.getBytes();
+			expired.add(root.resolve(run.getName()));
+		}
+		return expired;
+	}
+	
+	private void save() throws IOException {
+		JSONObject stored = new JSONObject(), entries = new JSONObject();
+		for (Run run : runs.values()) {
+			JSONObject entry = new JSONObject();
+			entry.put("timestamp", new JSONNumber<>(run.getTimestamp()));
+			entry.put("bytes", new JSONNumber<>(run.getBytes()));
+			entry.put("status", new JSONString(run.getStatus()));
+			entries.put(run.getName(), entry);
+		}
+		stored.put("root-modified", new JSONNumber<>(rootModified));
+		stored.put("unfinished", new JSONArray(unfinished.stream().sorted().map(JSONString::new).collect(Collectors.toList())));
+		stored.put("runs", entries);
+		JSONSystem.writeJSON(stored, index);
+	}
+	
+	private static long sizeOf(Path directory) throws IOException {
+		if (!Files.exists(directory))
+			return 0;
+		long[] size = {0};
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				size[0] += attrs.size();
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return size[0];
+	}
+}
@@ -5,12 +5,17 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -20,22 +25,29 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
-import java.util.function.Predicate;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import toberumono.json.JSONBoolean;
 import toberumono.json.JSONData;
 import toberumono.json.JSONObject;
 import toberumono.json.JSONString;
+import toberumono.json.JSONSystem;
 import toberumono.namelist.parser.Namelist;
 import toberumono.namelist.parser.NamelistNumber;
+import toberumono.utils.files.RecursiveEraser;
 import toberumono.utils.files.TransferFileWalker;
 import toberumono.wrf.scope.InvalidVariableAccessException;
 import toberumono.wrf.scope.ModuleScopedMap;
@@ -56,18 +68,98 @@ import static toberumono.wrf.SimulationConstants.*;
  */
 public class Simulation extends ScopedComponent<Scope> {
 	private static final ExecutorService pool = Executors.newWorkStealingPool();
+	private static final Map<Path, TemplateLock> templateLocks = new ConcurrentHashMap<>();
+	private static volatile ForkJoinPool linkPool = null;
+	private static final int MAX_SUFFIX_COUNTERS = 64;
+	private static final Map<Path, AtomicInteger> nextSuffixes = Collections.synchronizedMap(new LinkedHashMap<Path, AtomicInteger>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Entry<Path, AtomicInteger> eldest) {
+			return size() > MAX_SUFFIX_COUNTERS; //Keeps a long-running process from holding a counter for every timestamp that it has used
+		}
+	});
 	
 	private final Logger logger;
 	private final JSONObject configuration;
 	private final ScopedMap general, timing;
-	private final Path working, resolver;
+	private final Path working, workingRoot, templates, resolver;
 	private final Timing globalTiming;
-	private final Map<String, Module> modules;
-	private final Set<Module> disabledModules;
+	private final Map<String, ModuleHandle> modules;
+	private final List<OutputListener> outputListeners;
+	private final SimulationJournal journal;
+	private final MetricsRegistry metrics;
+	private final SimulationTrace trace;
 	private final ScopedMap source, active;
-	private Integer doms;
+	private Integer doms, linkParallelism;
 	private final NamelistNumber interval_seconds;
-	private Boolean serialModuleExecution;
+	private Boolean serialModuleExecution, useLinkTemplates, verifyLinkTemplates, backgroundCleanup, gribCache, geogridCache, resourceScheduling;
+	private volatile ResourceScheduler scheduler;
+	private volatile BooleanSupplier overlapping;
+	
+	/**
+	 * A parsed {@link Module} description. The {@link Module} itself is not loaded until it is first needed.
+	 * 
+	 * @author Toberumono
+	 */
+	private class ModuleHandle {
+		private final ScopedMap description;
+		private final JSONObject parameters;
+		private volatile Boolean enabled;
+		private volatile Module module;
+		private volatile boolean failed;
+		
+		private ModuleHandle(ScopedMap description, JSONObject parameters) {
+			this.description = description;
+			this.parameters = parameters;
+			enabled = null;
+			module = null;
+			failed = false;
+		}
+		
+		/**
+		 * @return {@code false} iff the {@link Module Module's} description sets "execute" to {@code false}
+		 */
+		public boolean isEnabled() {
+			if (enabled != null) //First one is to avoid unnecessary use of synchronization
+				return enabled;
+			synchronized (this) {
+				if (enabled == null)
+					enabled = !description.containsKey("execute") || (Boolean) description.get("execute");
+			}
+			return enabled;
+		}
+		
+		/**
+		 * @return {@code true} iff the {@link Module} has been loaded
+		 */
+		public boolean isLoaded() {
+			return module != null;
+		}
+		
+		/**
+		 * @return the {@link Module} (which is loaded on the first call) or {@code null} if it could not be loaded
+		 */
+		public Module get() {
+			if (module != null || failed) //First one is to avoid unnecessary use of synchronization
+				return module;
+			synchronized (this) {
+				if (module != null || failed)
+					return module;
+				try {
+					ModuleScopedMap moduleParameters = ModuleScopedMap.buildFromJSON(parameters);
+					@SuppressWarnings("unchecked") Class<? extends Module> clazz = (Class<? extends Module>) Class.forName(description.get("class").toString());
+					Constructor<? extends Module> constructor = clazz.getConstructor(ModuleScopedMap.class, Simulation.class);
+					module = constructor.newInstance(moduleParameters, Simulation.this);
+				}
+				catch (ClassNotFoundException | NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException
+						| InvocationTargetException e) {
+					// TODO Deal with failures when loading modules
+					failed = true;
+					e.printStackTrace();
+				}
+			}
+			return module;
+		}
+	}
 	
 	/**
 	 * Constructs a new {@link Simulation}.
@@ -82,6 +174,26 @@ public class Simulation extends ScopedComponent<Scope> {
 	 *             if an error occurs while constructing the working directory
 	 */
 	public Simulation(Calendar base, Path resolver, JSONObject configuration) throws IOException {
+		this(base, resolver, configuration, null);
+	}
+	
+	/**
+	 * Constructs a new {@link Simulation} in the given working directory.<br>
+	 * If the working directory already holds a {@link SimulationJournal journal}, the {@link Simulation} continues from the state that it
+	 * records. Otherwise, a copy of the configuration is written to the working directory and the journal is started.
+	 * 
+	 * @param base
+	 *            the time at which the {@link Simulation} was started
+	 * @param resolver
+	 *            the {@link Path} used to resolve relative paths
+	 * @param configuration
+	 *            a {@link JSONObject} holding the configuration for the {@link Simulation}
+	 * @param working
+	 *            the {@link Path} to an existing working directory or {@code null} if a new one should be constructed
+	 * @throws IOException
+	 *             if an error occurs while constructing the working directory or reading or writing the journal
+	 */
+	public Simulation(Calendar base, Path resolver, JSONObject configuration, Path working) throws IOException {
 		super(ModuleScopedMap.buildFromJSON(configuration), null);
 		getParameters().setParent(this); //We have to assign parent after calling super because of the "this" component
 		this.resolver = resolver;
@@ -92,18 +204,36 @@ public class Simulation extends ScopedComponent<Scope> {
 		logger.setLevel(Level.parse(general.get("logging-level").toString().toUpperCase()));
 		source = new ScopedMap(this);
 		active = new ScopedMap(this);
-		disabledModules = new HashSet<>();
+		outputListeners = new CopyOnWriteArrayList<>();
 		modules = Collections.unmodifiableMap(parseModules((JSONObject) configuration.get("module"), (JSONObject) configuration.get("path")));
 		globalTiming = ((Boolean) getGeneral().get("use-computed-times")) ? new ComputedTiming((ScopedMap) getTimingMap().get("global"), base, this)
 				: new NamelistTiming(getModule("wrf").getNamelist().get("time_control"), this);
-		working = constructWorkingDirectory(getResolver().resolve(getGeneral().get("working-directory").toString()), (Boolean) getGeneral().get("always-suffix"));
+		workingRoot = getResolver().resolve(getGeneral().get("working-directory").toString());
+		templates = workingRoot.resolve(".templates");
+		this.working = working != null ? working : constructWorkingDirectory(workingRoot, (Boolean) getGeneral().get("always-suffix"));
+		journal = new SimulationJournal(getWorkingPath());
+		metrics = new MetricsRegistry();
+		trace = new SimulationTrace();
+		if (!journal.hasBegun()) {
+			JSONSystem.writeJSON(configuration, journal.getConfigurationPath());
+			journal.begin(base, resolver);
+		}
 		for (String name : this.modules.keySet())
 			active.put(name, ((JSONObject) configuration.get("path")).containsKey(name) ? getWorkingPath().resolve(((Path) source.get(name)).getFileName()) : getWorkingPath().resolve(name));
-		ScopedMap timestep = this.modules.containsKey("grib") && !disabledModules.contains(modules.get("grib"))
+		ScopedMap timestep = this.modules.containsKey("grib") && modules.get("grib").isEnabled()
 				? ScopedMap.buildFromJSON((JSONObject) ((JSONObject) configuration.get("grib")).get("timestep")) : null;
 		interval_seconds = timestep != null ? new NamelistNumber(calcIntervalSeconds(timestep)) : null;
 		doms = null;
 		serialModuleExecution = null;
+		useLinkTemplates = null;
+		verifyLinkTemplates = null;
+		backgroundCleanup = null;
+		gribCache = null;
+		geogridCache = null;
+		scheduler = null;
+		overlapping = () -> false;
+		resourceScheduling = null;
+		linkParallelism = null;
 	}
 	
 	/**
@@ -165,6 +295,28 @@ public class Simulation extends ScopedComponent<Scope> {
 		return resolver;
 	}
 	
+	/**
+	 * Retrieves the absolute {@link Path} to the given {@link Module Module's} link template directory.<br>
+	 * The link template of a {@link Module} is a prebuilt copy of the links that {@link Module#linkToWorkingDirectory()} would otherwise create from
+	 * the {@link Module Module's} source directory. It is shared by every {@link Simulation} that uses the same root working directory.
+	 * 
+	 * @param module
+	 *            the name of the {@link Module}
+	 * @return absolute {@link Path} to the named {@link Module Module's} link template directory
+	 * @see #linkFromTemplate(Module, Path)
+	 */
+	public Path getTemplatePath(String module) {
+		return templates.resolve(module);
+	}
+	
+	/**
+	 * @return an absolute {@link Path} to the root (non-timestamped) working directory
+	 */
+	@NamedScopeValue(value = "working-root", asString = true)
+	public Path getWorkingRoot() {
+		return workingRoot;
+	}
+	
 	/**
 	 * @return an absolute {@link Path} to the timestamped working directory
 	 */
@@ -179,7 +331,8 @@ public class Simulation extends ScopedComponent<Scope> {
 	 * @return the {@link Module} corresponding to the given {@code name} or {@code null}
 	 */
 	public Module getModule(String name) {
-		return modules.get(name);
+		ModuleHandle handle = modules.get(name);
+		return handle != null ? handle.get() : null;
 	}
 	
 	/**
@@ -190,7 +343,7 @@ public class Simulation extends ScopedComponent<Scope> {
 	@NamedScopeValue("doms")
 	public Integer getDoms() throws IOException {
 		if (doms == null)
-			doms = ((Number) modules.get("wrf").getNamelist().get("domains").get("max_dom").get(0).value()).intValue();
+			doms = ((Number) getModule("wrf").getNamelist().get("domains").get("max_dom").get(0).value()).intValue();
 		return doms;
 	}
 	
@@ -219,9 +372,458 @@ public class Simulation extends ScopedComponent<Scope> {
 		return serialModuleExecution;
 	}
 	
+	/**
+	 * @return {@code true} if {@link Module Modules} should be linked into their active directories by cloning their link templates
+	 * @see #linkFromTemplate(Module, Path)
+	 */
+	@NamedScopeValue("use-link-templates")
+	public Boolean isUseLinkTemplates() {
+		if (useLinkTemplates == null)
+			useLinkTemplates = getGeneral().containsKey("use-link-templates") ? ((Boolean) getGeneral().get("use-link-templates")) : true;
+		return useLinkTemplates;
+	}
+	
+	/**
+	 * @return {@code true} if link templates should be checked against the {@link Module#hashSourceManifest() hash of their source installation's
+	 *         manifest} before they are cloned instead of only against {@link Module#getSourceStamp() the stamp of their source installation}
+	 * @see #linkFromTemplate(Module, Path)
+	 */
+	@NamedScopeValue("verify-link-templates")
+	public Boolean isVerifyLinkTemplates() {
+		if (verifyLinkTemplates == null)
+			verifyLinkTemplates = getGeneral().containsKey("verify-link-templates") ? ((Boolean) getGeneral().get("verify-link-templates")) : false;
+		return verifyLinkTemplates;
+	}
+	
+	/**
+	 * @return {@code true} iff files and directories that are no longer needed should be deleted via the {@link #getDeletionQueue() deletion
+	 *         queue} instead of inline
+	 */
+	@NamedScopeValue("background-cleanup")
+	public Boolean isBackgroundCleanup() {
+		if (backgroundCleanup != null)
+			return backgroundCleanup;
+		synchronized (this) {
+			if (backgroundCleanup == null)
+				backgroundCleanup = getGeneral().containsKey("background-cleanup") ? (Boolean) getGeneral().get("background-cleanup") : true;
+		}
+		return backgroundCleanup;
+	}
+	
+	/**
+	 * @return the {@link DeletionQueue} for the {@link Simulation Simulation's} root working directory
+	 */
+	public DeletionQueue getDeletionQueue() {
+		return DeletionQueue.forDirectory(getWorkingRoot().resolve(".trash"));
+	}
+	
+	/**
+	 * Deletes the given {@link Path} and everything in it.<br>
+	 * If {@link #isBackgroundCleanup()} is {@code true}, the {@link Path} is moved out of the way and erased in the background via the
+	 * {@link #getDeletionQueue() deletion queue}. Otherwise, it is erased before this method returns.
+	 * 
+	 * @param path
+	 *            the {@link Path} to delete
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void erase(Path path) throws IOException {
+		if (isBackgroundCleanup())
+			getDeletionQueue().delete(path);
+		else
+			Files.walkFileTree(path, new RecursiveEraser());
+	}
+	
+	/**
+	 * @return {@code true} iff downloaded GRIB files should be stored in and reused from the {@link #getArtifactCache(String) artifact cache}
+	 */
+	@NamedScopeValue("grib-cache")
+	public Boolean isGRIBCache() {
+		if (gribCache != null)
+			return gribCache;
+		synchronized (this) {
+			if (gribCache == null)
+				gribCache = getGeneral().containsKey("grib-cache") ? (Boolean) getGeneral().get("grib-cache") : false;
+		}
+		return gribCache;
+	}
+	
+	/**
+	 * @return {@code true} iff geogrid output should be stored in and reused from the {@link #getArtifactCache(String) artifact cache}
+	 */
+	@NamedScopeValue("geogrid-cache")
+	public Boolean isGeogridCache() {
+		if (geogridCache != null)
+			return geogridCache;
+		synchronized (this) {
+			if (geogridCache == null)
+				geogridCache = getGeneral().containsKey("geogrid-cache") ? (Boolean) getGeneral().get("geogrid-cache") : false;
+		}
+		return geogridCache;
+	}
+	
+	/**
+	 * Retrieves the named {@link ArtifactCache} for the {@link Simulation Simulation's} root working directory. The cache is shared by every
+	 * {@link Simulation} that uses the same root working directory.
+	 * 
+	 * @param name
+	 *            the name of the cache (e.g. "grib" or "geogrid")
+	 * @return the named {@link ArtifactCache}
+	 */
+	public ArtifactCache getArtifactCache(String name) {
+		return ArtifactCache.forDirectory(getWorkingRoot().resolve(".cache").resolve(name));
+	}
+	
+	/**
+	 * @return {@code true} iff the {@link Simulation Simulation's} {@link Module Modules} should only be executed once the resources that they
+	 *         declare are free (defaults to {@code true})
+	 * @see #getScheduler()
+	 */
+	@NamedScopeValue("resource-scheduling")
+	public Boolean isResourceScheduling() {
+		if (resourceScheduling != null)
+			return resourceScheduling;
+		synchronized (this) {
+			if (resourceScheduling == null)
+				resourceScheduling = getGeneral().containsKey("resource-scheduling") ? (Boolean) getGeneral().get("resource-scheduling") : true;
+		}
+		return resourceScheduling;
+	}
+	
+	/**
+	 * Retrieves the {@link ResourceScheduler} that admits the {@link Simulation Simulation's} {@link Module Modules} for execution.<br>
+	 * Unless one was set via {@link #setScheduler(ResourceScheduler)}, a {@link ResourceScheduler} is created from the "cores", "memory" (in
+	 * megabytes), "bandwidth", and "disk" fields of the "resources" subsection of "general", with omitted fields defaulting to the values from
+	 * {@link ResourceScheduler#forLocalMachine()}. Its {@link ResourceScheduler#setOverlapReservedCores(int) overlap reservation} is set from the
+	 * "overlap-reserved-cores" field of "general".
+	 * 
+	 * @return the {@link ResourceScheduler} that admits the {@link Simulation Simulation's} {@link Module Modules} for execution or {@code null}
+	 *         if {@link #isResourceScheduling()} is {@code false} and no {@link ResourceScheduler} was set
+	 */
+	public ResourceScheduler getScheduler() {
+		if (scheduler != null || !isResourceScheduling())
+			return scheduler;
+		synchronized (this) {
+			if (scheduler == null) {
+				ResourceScheduler local = ResourceScheduler.forLocalMachine();
+				ScopedMap resources = getGeneral().get("resources") instanceof ScopedMap ? (ScopedMap) getGeneral().get("resources") : new ScopedMap(general);
+				scheduler = new ResourceScheduler(resources.containsKey("cores") ? ((Number) resources.get("cores")).intValue() : local.getCores(),
+						resources.containsKey("memory") ? ((Number) resources.get("memory")).longValue() : local.getMemory(),
+						resources.containsKey("bandwidth") ? ((Number) resources.get("bandwidth")).intValue() : local.getBandwidth(),
+						resources.containsKey("disk") ? ((Number) resources.get("disk")).intValue() : local.getDisk());
+				scheduler.setOverlapReservedCores(getGeneral().containsKey("overlap-reserved-cores") ? ((Number) getGeneral().get("overlap-reserved-cores")).intValue() : 0);
+			}
+		}
+		return scheduler;
+	}
+	
+	/**
+	 * Sets the {@link ResourceScheduler} that admits the {@link Simulation Simulation's} {@link Module Modules} for execution. Sharing a
+	 * {@link ResourceScheduler} between {@link Simulation Simulations} keeps them within a common budget.
+	 * 
+	 * @param scheduler
+	 *            the {@link ResourceScheduler}
+	 */
+	public void setScheduler(ResourceScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+	
+	/**
+	 * @return {@code true} iff the {@link Simulation} is currently overlapping another {@link Simulation} that should take priority over it
+	 * @see #setOverlapping(BooleanSupplier)
+	 */
+	public boolean isOverlapping() {
+		return overlapping.getAsBoolean();
+	}
+	
+	/**
+	 * Sets the test used to determine whether the {@link Simulation} is overlapping another {@link Simulation} (e.g. the previous forecast cycle).
+	 * While it is, its {@link Module Modules} are admitted as overlapping requests by the {@link #getScheduler() scheduler}, which means that
+	 * they cannot take cores from the {@link Simulation} that they overlap.
+	 * 
+	 * @param overlapping
+	 *            a {@link BooleanSupplier} that returns {@code true} while the {@link Simulation} is overlapping another {@link Simulation}
+	 * @see ResourceScheduler#reevaluate()
+	 */
+	public void setOverlapping(BooleanSupplier overlapping) {
+		this.overlapping = overlapping;
+	}
+	
+	/**
+	 * @return the {@link SimulationJournal} that records the {@link Simulation Simulation's} progress
+	 */
+	public SimulationJournal getJournal() {
+		return journal;
+	}
+	
+	/**
+	 * @return the {@link MetricsRegistry} that records the performance of the {@link Simulation Simulation's} stages
+	 */
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Writes the {@link Simulation Simulation's} {@link #getMetrics() metrics} into its working directory as "metrics.prom" (in the Prometheus text
+	 * exposition format) and "metrics.json".
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurs while writing either file
+	 */
+	public void writeMetrics() throws IOException {
+		metrics.writePrometheus(getWorkingPath().resolve("metrics.prom"));
+		metrics.writeJSON(getWorkingPath().resolve("metrics.json"));
+	}
+	
+	/**
+	 * @return the {@link SimulationTrace} that records the timeline of the {@link Simulation Simulation's} stages
+	 */
+	public SimulationTrace getTrace() {
+		return trace;
+	}
+	
+	/**
+	 * Writes the {@link Simulation Simulation's} {@link #getTrace() timeline} into its working directory as "trace.json" (in the Chrome
+	 * trace-event format).
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurs while writing the file
+	 */
+	public void writeTrace() throws IOException {
+		trace.write(getWorkingPath().resolve("trace.json"));
+	}
+	
+	/**
+	 * Registers an {@link OutputListener} that will be notified whenever one of the {@link Simulation Simulation's} {@link Module Modules}
+	 * completes an output file.
+	 * 
+	 * @param listener
+	 *            the {@link OutputListener} to add
+	 */
+	public void addOutputListener(OutputListener listener) {
+		outputListeners.add(listener);
+	}
+	
+	/**
+	 * Removes a previously registered {@link OutputListener}.
+	 * 
+	 * @param listener
+	 *            the {@link OutputListener} to remove
+	 * @return {@code true} iff the {@link OutputListener} was registered
+	 */
+	public boolean removeOutputListener(OutputListener listener) {
+		return outputListeners.remove(listener);
+	}
+	
+	/**
+	 * Notifies every registered {@link OutputListener} that the given {@link Module} completed the given output file. Exceptions thrown by the
+	 * {@link OutputListener OutputListeners} are logged and do not prevent the remaining {@link OutputListener OutputListeners} from being
+	 * notified.
+	 * 
+	 * @param source
+	 *            the {@link Module} that produced the file
+	 * @param output
+	 *            the {@link Path} to the file in its final location
+	 */
+	public void fireOutputCompleted(Module source, Path output) {
+		logger.fine(source.getName() + " completed " + output);
+		metrics.counter("wrf_runner_output_files_total", "Output files moved into the working directory", "module", source.getName()).increment();
+		try {
+			journal.output(source, output);
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to record " + output + " in the journal", e);
+		}
+		for (OutputListener listener : outputListeners) {
+			try {
+				listener.outputCompleted(source, output);
+			}
+			catch (RuntimeException e) {
+				logger.log(Level.WARNING, "An OutputListener failed while handling " + output, e);
+			}
+		}
+	}
+	
+	/**
+	 * @return the maximum number of threads used to link {@link Module Modules} into their active directories. Values less than 1 in the
+	 *         "link-parallelism" field of "general" (and the default) are treated as the number of available processors.
+	 */
+	@NamedScopeValue("link-parallelism")
+	public Integer getLinkParallelism() {
+		if (linkParallelism == null) {
+			int parallelism = getGeneral().containsKey("link-parallelism") ? ((Number) getGeneral().get("link-parallelism")).intValue() : 0;
+			linkParallelism = parallelism < 1 ? Runtime.getRuntime().availableProcessors() : parallelism;
+		}
+		return linkParallelism;
+	}
+	
+	/**
+	 * @return the {@link ForkJoinPool} used to link {@link Module Modules} into their active directories. Every {@link Simulation} in the process
+	 *         shares a single pool so that its threads are reused across cycles and ensemble members. The pool is created with the
+	 *         {@link #getLinkParallelism() link parallelism} of the first {@link Simulation} that uses it, and its idle threads exit on their own
+	 * @see #getLinkParallelism()
+	 */
+	public ForkJoinPool getLinkPool() {
+		if (linkPool != null) //First one is to avoid unnecessary use of synchronization
+			return linkPool;
+		synchronized (Simulation.class) {
+			if (linkPool == null)
+				linkPool = new ForkJoinPool(getLinkParallelism());
+		}
+		return linkPool;
+	}
+	
+	/**
+	 * Clones the link template for the given {@link Module} into the given directory via {@link Module#cloneTemplate(Path, Path)}, building the
+	 * template via {@link Module#linkFromSource(Path)} first if it does not exist or does not match the {@link Module Module's} source
+	 * installation.<br>
+	 * A template is rebuilt when its source directory changes or {@link Module#getSourceStamp() the stamp of its source installation} changes,
+	 * which only requires reading the attributes of the installation's top-level directories. The {@link Module#hashSourceManifest() hash of the
+	 * installation's manifest} is computed when the template is built and is only re-computed and compared when "verify-link-templates" is
+	 * {@code true}, which catches changes in deeper directories at the cost of walking the whole installation. Deleting the template directory
+	 * forces a rebuild. The template is built under an exclusive lock and cloned under a shared lock, so concurrent {@link Simulation Simulations}
+	 * (including those in other processes) build each template exactly once and never clone a template while it is being rebuilt.
+	 * 
+	 * @param module
+	 *            the {@link Module} whose link template should be cloned
+	 * @param target
+	 *            the directory into which the template should be cloned
+	 * @throws IOException
+	 *             if an I/O error occurs while building or cloning the template
+	 */
+	public void linkFromTemplate(Module module, Path target) throws IOException {
+		Path source = getSourcePath(module.getName()), template = getTemplatePath(module.getName()), marker = templates.resolve(module.getName() + ".source");
+		String stamp = source.toString() + System.lineSeparator() + module.getSourceStamp() + System.lineSeparator(), hash = isVerifyLinkTemplates() ? module.hashSourceManifest() : null;
+		Files.createDirectories(templates);
+		TemplateLock lock = templateLocks.computeIfAbsent(template.toAbsolutePath().normalize(), p -> new TemplateLock(templates.resolve(module.getName() + ".lock")));
+		while (true) {
+			lock.lockShared();
+			try {
+				if (isTemplateCurrent(template, marker, stamp, hash)) {
+					module.cloneTemplate(template, target);
+					return;
+				}
+			}
+			finally {
+				lock.unlockShared();
+			}
+			lock.lockExclusive();
+			try {
+				if (!isTemplateCurrent(template, marker, stamp, hash)) { //Another Simulation might have rebuilt it while we were waiting
+					logger.info("Building the link template for " + module.getName() + " in " + template.toString());
+					Files.deleteIfExists(marker);
+					if (Files.exists(template, LinkOption.NOFOLLOW_LINKS))
+						Files.walkFileTree(template, new RecursiveEraser());
+					module.linkFromSource(template);
+					Files.write(marker, (stamp + (hash != null ? hash : module.hashSourceManifest())).getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			finally {
+				lock.unlockExclusive();
+			}
+		}
+	}
+	
+	private static boolean isTemplateCurrent(Path template, Path marker, String stamp, String hash) throws IOException {
+		if (!Files.isDirectory(template) || !Files.exists(marker))
+			return false;
+		String stored = new String(Files.readAllBytes(marker), StandardCharsets.UTF_8);
+		return stored.startsWith(stamp) && (hash == null || stored.substring(stamp.length()).equals(hash));
+	}
+	
+	/**
+	 * A readers-writer lock on a link template that excludes both the threads in this process and other processes.<br>
+	 * A {@link FileLock} is held on behalf of the whole process, and the JVM does not allow overlapping {@link FileLock FileLocks} on the same file,
+	 * so the shared {@link FileLock} is acquired by the first reader in the process and released by the last one.
+	 * 
+	 * @author Toberumono
+	 */
+	private static class TemplateLock {
+		private final Path file;
+		private final ReentrantReadWriteLock local;
+		private FileChannel channel;
+		private FileLock shared;
+		private int readers;
+		
+		private TemplateLock(Path file) {
+			this.file = file;
+			local = new ReentrantReadWriteLock();
+			channel = null;
+			shared = null;
+			readers = 0;
+		}
+		
+		public void lockShared() throws IOException {
+			local.readLock().lock();
+			synchronized (this) {
+				if (readers == 0) {
+					try {
+						channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+						shared = channel.lock(0, Long.MAX_VALUE, true);
+					}
+					catch (IOException | RuntimeException e) {
+						if (channel != null)
+							channel.close();
+						channel = null;
+						local.readLock().unlock();
+						throw e;
+					}
+				}
+				readers++;
+			}
+		}
+		
+		public void unlockShared() throws IOException {
+			try {
+				synchronized (this) {
+					if (--readers == 0) {
+						try {
+							shared.release();
+						}
+						finally {
+							channel.close();
+							channel = null;
+							shared = null;
+						}
+					}
+				}
+			}
+			finally {
+				local.readLock().unlock();
+			}
+		}
+		
+		public void lockExclusive() throws IOException {
+			local.writeLock().lock();
+			try {
+				channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				channel.lock();
+			}
+			catch (IOException | RuntimeException e) {
+				if (channel != null)
+					channel.close();
+				channel = null;
+				local.writeLock().unlock();
+				throw e;
+			}
+		}
+		
+		public void unlockExclusive() throws IOException {
+			try {
+				channel.close(); //Closing the channel releases its lock
+			}
+			finally {
+				channel = null;
+				local.writeLock().unlock();
+			}
+		}
+	}
+	
 	/**
 	 * Constructs the {@link Simulation Simulation's} timestamped working directory based on the {@link Path} specified in the "working-directory"
-	 * field of "general".
+	 * field of "general".<br>
+	 * Names are claimed with atomic directory creation, so any number of {@link Simulation Simulations} (in this process or others) can construct
+	 * their working directories concurrently without scanning the root working directory.
 	 * 
 	 * @param workingRoot
 	 *            the {@link Path} to the root (non-timestamped) working directory
@@ -233,86 +835,148 @@ public class Simulation extends ScopedComponent<Scope> {
 	 *             if an I/O error occured
 	 */
 	public Path constructWorkingDirectory(Path workingRoot, boolean always_suffix) throws IOException {
-		Path active = Files.createDirectories(workingRoot).resolve("active"), root;
-		try (FileChannel channel = FileChannel.open(active, StandardOpenOption.CREATE, StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
-			String name = makeWPSDateString(getTiming().getStart()).replaceAll(":", "_"); //Having colons in the path messes up WRF, so... Underscores.
-			try (Stream<Path> children = Files.list(workingRoot)) {
-				int count = children.filter(p -> p.getFileName().toString().startsWith(name)).toArray().length;
-				root = Files.createDirectories(workingRoot.resolve(always_suffix || count > 0 ? name + "+" + (count + 1) : name));
+		Files.createDirectories(workingRoot);
+		String name = makeWPSDateString(getTiming().getStart()).replaceAll(":", "_"); //Having colons in the path messes up WRF, so... Underscores.
+		if (!always_suffix) {
+			try {
+				return Files.createDirectory(workingRoot.resolve(name));
 			}
+			catch (FileAlreadyExistsException e) {/* Fall through to the suffixed names */}
+		}
+		//Files.createDirectory is atomic, so this is safe across processes without a lock. The counter just lets concurrent allocations skip suffixes that we know are taken.
+		Path key = workingRoot.toAbsolutePath().normalize().resolve(name);
+		AtomicInteger suffix = nextSuffixes.computeIfAbsent(key, k -> new AtomicInteger(always_suffix ? 1 : 2));
+		while (true) { //The counter is kept after we return so that later members of an ensemble with the same start time do not re-probe the taken suffixes
+			try {
+				return Files.createDirectory(workingRoot.resolve(name + "+" + suffix.getAndIncrement()));
+			}
+			catch (FileAlreadyExistsException e) {/* Another Simulation took this name, so we try the next one */}
 		}
-		return root;
 	}
 	
 	/**
 	 * Links the {@link Simulation Simulation's} {@link Module Modules} into their respective active directories as per the logic in
-	 * {@link Module#linkToWorkingDirectory()}.
+	 * {@link Module#linkToWorkingDirectory()}.<br>
+	 * The {@link Module Modules} are linked concurrently on the {@link #getLinkPool() link pool}. {@link Module Modules} that the
+	 * {@link #getJournal() journal} records as linked or completed are skipped, and the active directories of any other {@link Module Modules}
+	 * are erased before they are linked so that partially linked directories from an interrupted run are rebuilt. Disabled {@link Module Modules}
+	 * that have not been loaded are linked directly from their source directories without loading them.
 	 * 
 	 * @throws IOException
 	 *             if an I/O error occurs while linking the {@link Module Modules}
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting for the {@link Module Modules} to be linked
 	 */
-	public void linkModules() throws IOException {
-		for (Module module : modules.values())
-			module.linkToWorkingDirectory();
+	public void linkModules() throws IOException, InterruptedException {
+		List<ForkJoinTask<Module>> linking = new ArrayList<>();
+		for (String name : modules.keySet()) {
+			if (journal.isLinked(name) || journal.isCompleted(name))
+				continue;
+			ModuleHandle handle = modules.get(name);
+			Module module = handle.isEnabled() || handle.isLoaded() ? handle.get() : null;
+			if (module == null && handle.isEnabled()) //The Module could not be loaded
+				continue;
+			linking.add(getLinkPool().submit(() -> {
+				MetricsRegistry.Timer timer = metrics.timer("wrf_runner_link_seconds", "Time spent linking modules into the working directory", "module", name);
+				long start = timer.start();
+				try {
+					Path directory = getActivePath(name);
+					if (Files.exists(directory, LinkOption.NOFOLLOW_LINKS))
+						Files.walkFileTree(directory, new RecursiveEraser());
+					if (module != null)
+						module.linkToWorkingDirectory();
+					else if (getSourcePath(name) != null)
+						Module.linkFromSource(this, getSourcePath(name), directory);
+					else
+						Files.createDirectories(directory);
+				}
+				catch (IOException | RuntimeException e) {
+					metrics.counter("wrf_runner_link_failures_total", "Modules that could not be linked into the working directory", "module", name).increment();
+					throw e;
+				}
+				finally {
+					timer.stop(start);
+					trace.record("link " + name, "link", start, "module", name);
+				}
+				journal.linked(name);
+				return module;
+			}));
+		}
+		for (ForkJoinTask<Module> task : linking) {
+			try {
+				task.get();
+			}
+			catch (ExecutionException e) {
+				for (ForkJoinTask<Module> cancelling : linking)
+					cancelling.cancel(true);
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				throw new IOException("Unable to link the modules into the working directory.", e.getCause());
+			}
+		}
 	}
 	
 	/**
 	 * Updates the {@link Simulation Simulation's} {@link Module Modules'} {@link Namelist} files and writes to the result to each {@link Module
-	 * Module's} active directory as per the logic in {@link Module#updateNamelist()} and {@link Module#writeNamelist()}.
+	 * Module's} active directory as per the logic in {@link Module#updateNamelist()} and {@link Module#writeNamelist()}. {@link Module Modules}
+	 * that the {@link #getJournal() journal} records as completed and disabled {@link Module Modules} that have not been loaded are skipped.
 	 * 
 	 * @throws IOException
 	 *             if an I/O error occurs
 	 */
 	public void updateNamelists() throws IOException {
-		for (Module module : modules.values()) {
+		for (String name : modules.keySet()) {
+			ModuleHandle handle = modules.get(name);
+			Module module = journal.isCompleted(name) || !(handle.isEnabled() || handle.isLoaded()) ? null : handle.get();
+			if (module == null)
+				continue;
+			MetricsRegistry.Timer update = metrics.timer("wrf_runner_namelist_seconds", "Time spent updating and writing namelists", "module", name, "operation", "update"),
+					write = metrics.timer("wrf_runner_namelist_seconds", "Time spent updating and writing namelists", "module", name, "operation", "write");
+			long start = update.start();
 			module.updateNamelist();
+			update.stop(start);
+			trace.record("update namelist " + name, "namelist", start, "module", name);
+			start = write.start();
 			module.writeNamelist();
+			write.stop(start);
+			trace.record("write namelist " + name, "namelist", start, "module", name);
 		}
 	}
 	
-	private Map<String, Module> parseModules(JSONObject modules, JSONObject paths) {
-		Map<String, Module> out = new LinkedHashMap<>();
+	private Map<String, ModuleHandle> parseModules(JSONObject modules, JSONObject paths) {
+		Map<String, JSONObject> condensed = condenseSubsections(modules.keySet(), configuration, "configuration", Integer.MAX_VALUE);
+		Map<String, ModuleHandle> out = new LinkedHashMap<>();
 		for (String name : modules.keySet()) {
-			try {
-				if (paths.containsKey(name))
-					source.put(name, getResolver().resolve(paths.get(name).value().toString()));
-				out.put(name, loadModule(name, modules));
-			}
-			catch (ClassNotFoundException | NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-				// TODO Deal with failures when loading modules
-				e.printStackTrace();
-			}
+			if (paths.containsKey(name))
+				source.put(name, getResolver().resolve(paths.get(name).value().toString()));
+			JSONObject parameters = condensed.get(name);
+			if (!parameters.containsKey(TIMING_FIELD_NAME))
+				parameters.put(TIMING_FIELD_NAME, makeGenericInheriter());
+			parameters.put("name", new JSONString(name));
+			out.put(name, new ModuleHandle(ScopedMap.buildFromJSON((JSONObject) modules.get(name), this), parameters)); //We use this so that computed fields can be accessed here
 		}
 		return out;
 	}
 	
-	private Module loadModule(String name, JSONObject modules)
-			throws InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException, ClassNotFoundException {
-		ScopedMap description = ScopedMap.buildFromJSON((JSONObject) modules.get(name), this); //We use this so that computed fields can be accessed here
-		JSONObject parameters = condenseSubsections(name::equals, configuration, "configuration", Integer.MAX_VALUE);
-		if (!parameters.containsKey(TIMING_FIELD_NAME))
-			parameters.put(TIMING_FIELD_NAME, makeGenericInheriter());
-		parameters.put("name", new JSONString(name));
-		ModuleScopedMap moduleParameters = ModuleScopedMap.buildFromJSON(parameters);
-		@SuppressWarnings("unchecked") Class<? extends Module> clazz = (Class<? extends Module>) Class.forName(description.get("class").toString());
-		Constructor<? extends Module> constructor = clazz.getConstructor(ModuleScopedMap.class, Simulation.class);
-		Module m = constructor.newInstance(moduleParameters, this);
-		if (description.containsKey("execute") && !((Boolean) description.get("execute")))
-			disabledModules.add(m);
-		return m;
-	}
-	
 	/**
-	 * Executes the {@link Module Modules} loaded in the {@link Simulation}
+	 * Executes the {@link Module Modules} loaded in the {@link Simulation}.<br>
+	 * If a {@link Module} fails, the failure is recorded in the {@link #getJournal() journal} and propagated, so the {@link Module} is executed
+	 * again if the {@link Simulation} is resumed.
 	 * 
 	 * @throws IOException
-	 *             if an I/O error occurs
+	 *             if an I/O error occurs or a {@link Module} fails
 	 * @throws InterruptedException
 	 *             if any of the {@link Module} processes are interrupted
 	 */
 	public void executeModules() throws IOException, InterruptedException {
-		List<Module> remaining = modules.values().stream().filter(mod -> !disabledModules.contains(mod)).collect(Collectors.toList());
 		Set<Module> completed = new HashSet<>();
+		List<Module> remaining = new ArrayList<>();
+		for (Entry<String, ModuleHandle> e : modules.entrySet()) { //Disabled Modules are only loaded if something else needs them
+			boolean isCompleted = journal.isCompleted(e.getKey());
+			Module module = isCompleted || e.getValue().isEnabled() ? e.getValue().get() : null;
+			if (module != null)
+				(isCompleted ? completed : remaining).add(module);
+		}
 		while (remaining.size() > 0) {
 			List<Module> runnable = new ArrayList<>();
 			for (Iterator<Module> iter = remaining.iterator(); iter.hasNext();) {
@@ -337,7 +1001,9 @@ public class Simulation extends ScopedComponent<Scope> {
 					catch (ExecutionException e) {
 						if (e.getCause() instanceof IOException)
 							throw (IOException) e.getCause();
-						e.printStackTrace();
+						if (e.getCause() instanceof InterruptedException)
+							throw (InterruptedException) e.getCause();
+						throw new IOException("Unable to execute the modules.", e.getCause());
 					}
 				}
 			}
@@ -345,7 +1011,9 @@ public class Simulation extends ScopedComponent<Scope> {
 	}
 	
 	/**
-	 * Executes a single {@link Module} and handles keep-logs and cleanup.
+	 * Executes a single {@link Module} and handles keep-logs and cleanup.<br>
+	 * If the {@link Simulation} has a {@link #getScheduler() scheduler}, the {@link Module} does not start until its
+	 * {@link Module#getRequiredCores() resources} have been reserved, and they are released as soon as {@link Module#execute()} returns.
 	 * 
 	 * @param module
 	 *            the {@link Module} to execute
@@ -356,12 +1024,46 @@ public class Simulation extends ScopedComponent<Scope> {
 	 *             if the process is interrupted
 	 */
 	protected Module executeModule(Module module) throws IOException, InterruptedException {
-		module.execute();
+		ResourceScheduler scheduler = getScheduler();
+		MetricsRegistry.Timer waiting = metrics.timer("wrf_runner_module_wait_seconds", "Time spent waiting for resource reservations", "module", module.getName()),
+				executing = metrics.timer("wrf_runner_module_seconds", "Time spent executing modules", "module", module.getName());
+		long start = waiting.start();
+		try (ResourceScheduler.Reservation reservation = scheduler != null
+				? scheduler.reserve(module.getName() + " in " + getWorkingPath().getFileName(), module.getRequiredCores(), module.getRequiredMemory(), module.getRequiredBandwidth(),
+						module.getRequiredDisk(), this::isOverlapping)
+				: null) {
+			waiting.stop(start);
+			trace.record("wait " + module.getName(), "wait", start, "module", module.getName());
+			journal.started(module);
+			start = executing.start();
+			try {
+				module.execute();
+			}
+			catch (IOException | InterruptedException | RuntimeException e) {
+				metrics.counter("wrf_runner_module_failures_total", "Modules whose execution failed", "module", module.getName()).increment();
+				try {
+					journal.failed(module, e);
+				}
+				catch (IOException j) {
+					e.addSuppressed(j);
+				}
+				throw e;
+			}
+			finally {
+				executing.stop(start);
+				trace.record("execute " + module.getName(), "execute", start, "module", module.getName());
+			}
+		}
 		if ((Boolean) general.get("keep-logs"))
-			Files.walkFileTree(getActivePath(module.getName()),
-					new TransferFileWalker(getWorkingPath(), Files::move, p -> p.getFileName().toString().toLowerCase().endsWith(".log"), p -> true, null, null, true));
+			try (SimulationTrace.Span span = trace.begin("keep logs " + module.getName(), "cleanup", "module", module.getName())) {
+				Files.walkFileTree(getActivePath(module.getName()),
+						new TransferFileWalker(getWorkingPath(), Files::move, p -> p.getFileName().toString().toLowerCase().endsWith(".log"), p -> true, null, null, true));
+			}
 		if ((Boolean) general.get("cleanup"))
-			module.cleanUp();
+			try (SimulationTrace.Span span = trace.begin("clean up " + module.getName(), "cleanup", "module", module.getName())) {
+				module.cleanUp();
+			}
+		journal.completed(module);
 		return module;
 	}
 	
@@ -396,7 +1098,7 @@ public class Simulation extends ScopedComponent<Scope> {
 	
 	@Override
 	public boolean hasValueByName(String name) {
-		if (getModule(name) != null)
+		if (modules.containsKey(name))
 			return true;
 		switch (name) {
 			case "sim":
@@ -427,20 +1129,32 @@ public class Simulation extends ScopedComponent<Scope> {
 		}
 	}
 	
-	private static JSONObject condenseSubsections(Predicate<String> lookingFor, JSONObject root, String rootName, int maxDepth) {
-		JSONObject out = condenseSubsections(new JSONObject(), lookingFor, root, rootName, maxDepth - 1);
-		out.clearModified();
+	/**
+	 * Collects the subsections for every name in {@code lookingFor} in a single pass over {@code root}. For each name, the result maps the name of
+	 * every {@link JSONObject} that contains the name as a key to the corresponding value. The search does not descend into a name's own
+	 * subsections while looking for that name, but continues to look for the other names within them.
+	 */
+	private static Map<String, JSONObject> condenseSubsections(Collection<String> lookingFor, JSONObject root, String rootName, int maxDepth) {
+		Map<String, JSONObject> out = new HashMap<>();
+		for (String name : lookingFor)
+			out.put(name, new JSONObject());
+		condenseSubsections(out, new HashSet<>(lookingFor), root, rootName, maxDepth - 1);
+		for (JSONObject condensed : out.values())
+			condensed.clearModified();
 		return out;
 	}
 	
-	private static JSONObject condenseSubsections(JSONObject condensed, Predicate<String> lookingFor, JSONObject container, String containerName, int remainingDepth) {
+	private static void condenseSubsections(Map<String, JSONObject> condensed, Set<String> lookingFor, JSONObject container, String containerName, int remainingDepth) {
 		for (Entry<String, JSONData<?>> e : container.entrySet()) {
-			if (lookingFor.test(e.getKey()))
-				condensed.put(containerName, e.getValue());
-			else if (remainingDepth > 0 && e.getValue() instanceof JSONObject)
-				condenseSubsections(condensed, lookingFor, (JSONObject) e.getValue(), e.getKey(), remainingDepth - 1);
+			Set<String> remaining = lookingFor;
+			if (lookingFor.contains(e.getKey())) {
+				condensed.get(e.getKey()).put(containerName, e.getValue());
+				remaining = new HashSet<>(lookingFor);
+				remaining.remove(e.getKey());
+			}
+			if (remainingDepth > 0 && remaining.size() > 0 && e.getValue() instanceof JSONObject)
+				condenseSubsections(condensed, remaining, (JSONObject) e.getValue(), e.getKey(), remainingDepth - 1);
 		}
-		return condensed;
 	}
 	
 	/**
@@ -457,4 +1171,23 @@ public class Simulation extends ScopedComponent<Scope> {
 	public static Simulation initSimulation(JSONObject configuration, Path resolver) throws IOException {
 		return new Simulation(Calendar.getInstance(), resolver, configuration);
 	}
+	
+	/**
+	 * Resumes the {@link Simulation} in the given working directory from its {@link SimulationJournal journal}.<br>
+	 * The {@link Simulation} is reconstructed from the copy of the configuration, the base time, and the resolver that were recorded when it
+	 * began. {@link Module Modules} that had already completed are not linked or executed again.
+	 * 
+	 * @param working
+	 *            the {@link Path} to the working directory of the {@link Simulation}
+	 * @return the resumed {@link Simulation}
+	 * @throws IOException
+	 *             if the journal or the copy of the configuration could not be read or the configuration does not match the journal
+	 */
+	public static Simulation resumeSimulation(Path working) throws IOException {
+		working = working.toAbsolutePath().normalize();
+		SimulationJournal journal = new SimulationJournal(working);
+		if (!journal.hasBegun())
+			throw new IOException(working + " does not contain a simulation journal.");
+		return new Simulation(journal.getBase(), journal.getResolver(), (JSONObject) JSONSystem.loadJSON(journal.verifyConfiguration()), working);
+	}
 }
@@ -0,0 +1,326 @@
+package toberumono.wrf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A durable, append-only record of a {@link Simulation Simulation's} progress that is stored in its working directory.<br>
+ * Each record is a single tab-separated line that is forced to disk before {@link #record(String, String...)} returns. The journal records
+ * when the {@link Simulation} began (with its base time, resolver, and a hash of its configuration) and when each {@link Module} was linked,
+ * started, and completed or failed, every output file reported via {@link Simulation#fireOutputCompleted(Module, Path)}, and when the
+ * {@link Simulation} finished. This allows a {@link Simulation} whose runner was killed or one of whose {@link Module Modules} failed to be
+ * resumed with {@link Simulation#resumeSimulation(Path)} without repeating the {@link Module Modules} that had already completed.
+ * 
+ * @author Toberumono
+ */
+public class SimulationJournal {
+	/**
+	 * The name of the journal file in the working directory
+	 */
+	public static final String JOURNAL_FILE_NAME = "journal.log";
+	/**
+	 * The name of the copy of the configuration that is stored in the working directory
+	 */
+	public static final String CONFIGURATION_FILE_NAME = "configuration.json";
+	private static final String BEGIN = "begin", LINKED = "linked", STARTED = "started", COMPLETED = "completed", FAILED = "failed", OUTPUT = "output",
+			FINISHED = "finished";
+	
+	private final Path journal;
+	private final Set<String> linked, completed;
+	private Long base, finishedAt;
+	private Path resolver;
+	private String configurationHash, finishedStatus;
+	
+	/**
+	 * Opens the journal in the given working directory, reading any records that are already in it.
+	 * 
+	 * @param working
+	 *            the {@link Simulation Simulation's} working directory
+	 * @throws IOException
+	 *             if the existing journal could not be read
+	 */
+	public SimulationJournal(Path working) throws IOException {
+		journal = working.resolve(JOURNAL_FILE_NAME);
+		linked = new HashSet<>();
+		completed = new HashSet<>();
+		base = null;
+		resolver = null;
+		configurationHash = null;
+		finishedAt = null;
+		finishedStatus = null;
+		if (!Files.exists(journal))
+			return;
+		for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+			String[] fields = line.split("\t");
+			if (fields.length < 2) //A partially-written final record
+				continue;
+			switch (fields[1]) {
+				case BEGIN:
+					if (fields.length >= 5) {
+						base = Long.parseLong(fields[2]);
+						resolver = Paths.get(fields[3]);
+						configurationHash = fields[4];
+					}
+					break;
+				case LINKED:
+					linked.add(fields[2]);
+					break;
+				case COMPLETED:
+					completed.add(fields[2]);
+					break;
+				case FINISHED: //If a Simulation was resumed, the last record wins
+					if (fields.length >= 3) {
+						finishedAt = Long.parseLong(fields[0]);
+						finishedStatus = fields[2];
+					}
+					break;
+			}
+		}
+	}
+	
+	/**
+	 * Appends a record to the journal and forces it to disk.
+	 * 
+	 * @param event
+	 *            the name of the event
+	 * @param fields
+	 *            the fields of the event. These must not contain tabs or line breaks
+	 * @throws IOException
+	 *             if the record could not be written
+	 */
+	public synchronized void record(String event, String... fields) throws IOException {
+		StringBuilder line = new StringBuilder().append(System.currentTimeMillis()).append('\t').append(event);
+		for (String field : fields)
+			line.append('\t').append(field);
+		line.append('\n');
+		try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			ByteBuffer buffer = ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(false);
+		}
+	}
+	
+	/**
+	 * Records the start of a new {@link Simulation}. The {@link Simulation Simulation's} configuration must already have been written to
+	 * {@value #CONFIGURATION_FILE_NAME} in the working directory.
+	 * 
+	 * @param base
+	 *            the time at which the {@link Simulation} was started
+	 * @param resolver
+	 *            the {@link Path} used to resolve relative paths
+	 * @throws IOException
+	 *             if the configuration could not be read or the record could not be written
+	 */
+	public synchronized void begin(Calendar base, Path resolver) throws IOException {
+		this.base = base.getTimeInMillis();
+		this.resolver = resolver;
+		configurationHash = hash(Files.readAllBytes(getConfigurationPath()));
+		record(BEGIN, this.base.toString(), resolver.toString(), configurationHash);
+	}
+	
+	/**
+	 * Records that the given {@link Module} has been linked into its active directory.
+	 * 
+	 * @param module
+	 *            the {@link Module}
+	 * @throws IOException
+	 *             if the record could not be written
+	 */
+	public void linked(Module module) throws IOException {
+		linked(module.getName());
+	}
+	
+	/**
+	 * Records that the named {@link Module} has been linked into its active directory. This is used for {@link Module Modules} that are linked
+	 * without being loaded.
+	 * 
+	 * @param module
+	 *            the name of the {@link Module}
+	 * @throws IOException
+	 *             if the record could not be written
+	 */
+	public synchronized void linked(String module) throws IOException {
+		record(LINKED, module);
+		linked.add(module);
+	}
+	
+	/**
+	 * Records that the given {@link Module} has started executing.
+	 * 
+	 * @param module
+	 *            the {@link Module}
+	 * @throws IOException
+	 *             if the record could not be written
+	 */
+	public void started(Module module) throws IOException {
+		record(STARTED, module.getName());
+	}
+	
+	/**
+	 * Records that the given {@link Module} has completed (including cleanup).
+	 * 
+	 * @param module
+	 *            the {@link Module}
+	 * @throws IOException
+	 *             if the record could not be written
+	 */
+	public synchronized void completed(Module module) throws IOException {
+		record(COMPLETED, module.getName());
+		completed.add(module.getName());
+	}
+	
+	/**
+	 * Records that the given {@link Module} failed. A failed {@link Module} is not considered completed, so it is executed again when the
+	 * {@link Simulation} is resumed.
+	 * 
+	 * @param module
+	 *            the {@link Module}
+	 * @param cause
+	 *            the {@link Throwable} that caused the failure
+	 * @throws IOException
+	 *             if the record could not be written
+	 */
+	public void failed(Module module, Throwable cause) throws IOException {
+		String message = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getName();
+		record(FAILED, module.getName(), message.replaceAll("[\\t\\r\\n]+", " "));
+	}
+	
+	/**
+	 * Records that the given {@link Module} completed the given output file.
+	 * 
+	 * @param module
+	 *            the {@link Module}
+	 * @param output
+	 *            the {@link Path} to the output file
+	 * @throws IOException
+	 *             if the record could not be written
+	 */
+	public void output(Module module, Path output) throws IOException {
+		record(OUTPUT, module.getName(), output.toString());
+	}
+	
+	/**
+	 * Records that the {@link Simulation} has finished. This is written once the runner is done with the {@link Simulation}, whether or not it
+	 * succeeded, so a journal without a finished record belongs to a {@link Simulation} that is still running or whose runner was killed.
+	 * 
+	 * @param status
+	 *            the status with which the {@link Simulation} finished (e.g. "completed" or "failed")
+	 * @throws IOException
+	 *             if the record could not be written
+	 */
+	public synchronized void finished(String status) throws IOException {
+		record(FINISHED, status);
+		finishedAt = System.currentTimeMillis();
+		finishedStatus = status;
+	}
+	
+	/**
+	 * @return the status with which the {@link Simulation} most recently finished or {@code null} if the journal does not record that it finished
+	 */
+	public synchronized String getFinishedStatus() {
+		return finishedStatus;
+	}
+	
+	/**
+	 * @return the time at which the {@link Simulation} most recently finished in milliseconds since the epoch or {@code null} if the journal does
+	 *         not record that it finished
+	 */
+	public synchronized Long getFinishedTime() {
+		return finishedAt;
+	}
+	
+	/**
+	 * @param module
+	 *            the name of a {@link Module}
+	 * @return {@code true} iff the journal records that the {@link Module} was linked into its active directory
+	 */
+	public synchronized boolean isLinked(String module) {
+		return linked.contains(module);
+	}
+	
+	/**
+	 * @param module
+	 *            the name of a {@link Module}
+	 * @return {@code true} iff the journal records that the {@link Module} completed
+	 */
+	public synchronized boolean isCompleted(String module) {
+		return completed.contains(module);
+	}
+	
+	/**
+	 * @return the names of the {@link Module Modules} that the journal records as completed
+	 */
+	public synchronized Set<String> getCompleted() {
+		return Collections.unmodifiableSet(new HashSet<>(completed));
+	}
+	
+	/**
+	 * @return {@code true} iff the journal contains a begin record
+	 */
+	public synchronized boolean hasBegun() {
+		return base != null;
+	}
+	
+	/**
+	 * @return the base time of the {@link Simulation} as recorded in the journal or {@code null} if it has not begun
+	 */
+	public synchronized Calendar getBase() {
+		if (base == null)
+			return null;
+		Calendar out = Calendar.getInstance();
+		out.setTimeInMillis(base);
+		return out;
+	}
+	
+	/**
+	 * @return the resolver of the {@link Simulation} as recorded in the journal or {@code null} if it has not begun
+	 */
+	public synchronized Path getResolver() {
+		return resolver;
+	}
+	
+	/**
+	 * @return the {@link Path} to the copy of the configuration in the working directory
+	 */
+	public Path getConfigurationPath() {
+		return journal.resolveSibling(CONFIGURATION_FILE_NAME);
+	}
+	
+	/**
+	 * Verifies that the copy of the configuration in the working directory has the hash that was recorded when the {@link Simulation} began.
+	 * 
+	 * @return the {@link Path} to the copy of the configuration
+	 * @throws IOException
+	 *             if the copy could not be read or does not match the recorded hash
+	 */
+	public synchronized Path verifyConfiguration() throws IOException {
+		if (configurationHash == null || !configurationHash.equals(hash(Files.readAllBytes(getConfigurationPath()))))
+			throw new IOException("The configuration in " + journal.getParent() + " does not match the one recorded in its journal.");
+		return getConfigurationPath();
+	}
+	
+	private static String hash(byte[] bytes) {
+		try {
+			StringBuilder out = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes))
+				out.append(String.format("%02x", b));
+			return out.toString();
+		}
+		catch (NoSuchAlgorithmException e) { //Every Java implementation is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
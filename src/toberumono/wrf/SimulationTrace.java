@@ -0,0 +1,154 @@
+package toberumono.wrf;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import toberumono.json.JSONArray;
+import toberumono.json.JSONObject;
+import toberumono.json.JSONSystem;
+
+/**
+ * Records the timeline of a {@link Simulation} as spans (e.g. linking a {@link Module}, downloading a GRIB file, or running an executable) and
+ * writes it in the Chrome trace-event format, which can be opened in chrome://tracing or <a href="https://ui.perfetto.dev">Perfetto</a>.<br>
+ * Each span is shown on the row of the thread that recorded it, so concurrent work appears on parallel rows and idle time appears as gaps.
+ * Recording a span is lock-free.
+ * 
+ * @author Toberumono
+ */
+public class SimulationTrace {
+	private final long origin;
+	private final Queue<Event> events;
+	private final Map<Long, String> threads;
+	
+	private static class Event {
+		private final String name, category;
+		private final String[] args;
+		private final long start, end, thread;
+		
+		private Event(String name, String category, String[] args, long start, long end, long thread) {
+			this.name = name;
+			this.category = category;
+			this.args = args;
+			this.start = start;
+			this.end = end;
+			this.thread = thread;
+		}
+	}
+	
+	/**
+	 * A span that is in progress. The span is recorded when it is closed.
+	 * 
+	 * @author Toberumono
+	 */
+	public class Span implements AutoCloseable {
+		private final String name, category;
+		private final String[] args;
+		private final long start;
+		private boolean closed;
+		
+		private Span(String name, String category, String[] args) {
+			this.name = name;
+			this.category = category;
+			this.args = args;
+			start = System.nanoTime();
+			closed = false;
+		}
+		
+		/**
+		 * Records the span as ending now. Subsequent calls have no effect.
+		 */
+		@Override
+		public void close() {
+			if (closed)
+				return;
+			closed = true;
+			record(name, category, start, args);
+		}
+	}
+	
+	/**
+	 * Constructs a new, empty {@link SimulationTrace} whose timeline starts now.
+	 */
+	public SimulationTrace() {
+		origin = System.nanoTime();
+		events = new ConcurrentLinkedQueue<>();
+		threads = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Starts a span on the current thread. This is intended for use in try-with-resources blocks.
+	 * 
+	 * @param name
+	 *            the name of the span
+	 * @param category
+	 *            the category of the span (e.g. "link" or "process")
+	 * @param args
+	 *            additional information about the span as alternating names and values
+	 * @return the {@link Span}. It is recorded when it is closed
+	 */
+	public Span begin(String name, String category, String... args) {
+		return new Span(name, category, args);
+	}
+	
+	/**
+	 * Records a span on the current thread that started at the given time and ends now.
+	 * 
+	 * @param name
+	 *            the name of the span
+	 * @param category
+	 *            the category of the span (e.g. "link" or "process")
+	 * @param start
+	 *            the value of {@link System#nanoTime()} when the span started
+	 * @param args
+	 *            additional information about the span as alternating names and values
+	 */
+	public void record(String name, String category, long start, String... args) {
+		Thread current = Thread.currentThread();
+		threads.putIfAbsent(current.getId(), current.getName());
+		events.add(new Event(name, category, args, start, System.nanoTime(), current.getId()));
+	}
+	
+	/**
+	 * Writes every recorded span to the given file in the Chrome trace-event format.
+	 * 
+	 * @param path
+	 *            the {@link Path} to the file
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void write(Path path) throws IOException {
+		JSONArray traceEvents = new JSONArray();
+		for (Map.Entry<Long, String> thread : threads.entrySet()) { //Metadata events give each row the name of its thread
+			JSONObject event = new JSONObject(), args = new JSONObject();
+			event.put("name", "thread_name");
+			event.put("ph", "M");
+			event.put("pid", 1);
+			event.put("tid", thread.getKey());
+			args.put("name", thread.getValue());
+			event.put("args", args);
+			traceEvents.add(event);
+		}
+		for (Event e : events) {
+			JSONObject event = new JSONObject(), args = new JSONObject();
+			event.put("name", e.name);
+			event.put("cat", e.category);
+			event.put("ph", "X"); //Complete events have both a start time and a duration
+			event.put("ts", (e.start - origin) / 1000.0); //Trace-event times are in microseconds
+			event.put("dur", (e.end - e.start) / 1000.0);
+			event.put("pid", 1);
+			event.put("tid", e.thread);
+			for (int i = 0; i + 1 < e.args.length; i += 2)
+				args.put(e.args[i], e.args[i + 1]);
+			event.put("args", args);
+			traceEvents.add(event);
+		}
+		JSONObject root = new JSONObject();
+		root.put("traceEvents", traceEvents);
+		root.put("displayTimeUnit", "ms");
+		JSONSystem.writeJSON(root, path);
+	}
+}
@@ -1,11 +1,17 @@
 package toberumono.wrf;
 
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
+import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
@@ -21,11 +27,9 @@ import toberumono.json.JSONObject;
 import toberumono.json.JSONString;
 import toberumono.json.JSONSystem;
 import toberumono.namelist.parser.Namelist;
-import toberumono.structures.SortingMethods;
-import toberumono.structures.collections.lists.SortedList;
 import toberumono.structures.tuples.Pair;
-import toberumono.utils.files.RecursiveEraser;
 import toberumono.wrf.components.parallel.DisabledParallel;
+import toberumono.wrf.components.parallel.HybridParallel;
 import toberumono.wrf.components.parallel.Parallel;
 import toberumono.wrf.components.parallel.StandardParallel;
 import toberumono.wrf.timing.ComputedTiming;
@@ -77,7 +81,9 @@ public class WRFRunner {
 	 * All that is needed to run this "script".
 	 * 
 	 * @param args
-	 *            the arguments to the script. This must have a length of 1, and contain a valid path to a configuration file.
+	 *            the arguments to the script. This must have a length of 1, and contain a valid path to a configuration file. Alternatively,
+	 *            {@code --resume <working directory>} resumes a {@link Simulation} that was interrupted, and {@code --ensemble <ensemble file>}
+	 *            runs an {@link Ensemble}. {@code --daemon} runs cycles on the schedule in the configuration file via a {@link CycleDaemon}.
 	 * @throws IOException
 	 *             if an I/O error occurs
 	 * @throws InterruptedException
@@ -87,12 +93,18 @@ public class WRFRunner {
 		initFactories();
 		WRFRunnerCommandLineArguments arguments = new WRFRunnerCommandLineArguments(args);
 		WRFRunner runner = new WRFRunner();
-		runner.runSimulation(runner.createSimulation(arguments));
+		if (arguments.isDaemon())
+			new CycleDaemon(runner, arguments).run();
+		else if (arguments.getEnsemblePath() != null)
+			runner.createEnsemble(arguments).run(runner);
+		else
+			runner.runSimulation(arguments.getResumePath() != null ? Simulation.resumeSimulation(arguments.getResumePath()) : runner.createSimulation(arguments));
 	}
 	
 	/**
 	 * Initializes the {@link WRFRunnerComponentFactory WRFRunnerComponentFactories} for {@link Offset}, {@link Round}, {@link Duration},
-	 * {@link Clear}, {@link Timing}, and {@link Parallel}.
+	 * {@link Clear}, {@link Timing}, and {@link Parallel}, and then registers the components from every {@link WRFRunnerComponentProvider} on the
+	 * classpath.
 	 */
 	public static void initFactories() {
 		WRFRunnerComponentFactory<Offset> offsetFactory = WRFRunnerComponentFactory.createFactory(Offset.class, "standard", DisabledOffset::new);
@@ -113,6 +125,8 @@ public class WRFRunner {
 		timingFactory.addComponentConstructor("computed", ComputedTiming::new);
 		WRFRunnerComponentFactory<Parallel> parallelFactory = WRFRunnerComponentFactory.createFactory(Parallel.class, "standard", DisabledParallel::new);
 		parallelFactory.addComponentConstructor("standard", StandardParallel::new);
+		parallelFactory.addComponentConstructor("hybrid", HybridParallel::new);
+		WRFRunnerComponentFactory.loadProviders(WRFRunner.class.getClassLoader());
 	}
 	
 	/**
@@ -157,14 +171,33 @@ public class WRFRunner {
 	 *             if an I/O error occurs
 	 */
 	public Simulation createSimulation(WRFRunnerCommandLineArguments args) throws IOException {
-		JSONObject configuration = (JSONObject) JSONSystem.loadJSON(args.getConfigurationPath());
+		return createSimulation(loadConfiguration(args), args.getConfigurationPath());
+	}
+	
+	/**
+	 * Loads the configuration file given by the {@link WRFRunnerCommandLineArguments arguments}, upgrades it, and applies the default values.<br>
+	 * Unless the upgrade is interactive, the result is loaded from the configuration file's {@link ConfigurationSnapshot} if it is still valid, and
+	 * a new snapshot is saved otherwise. Failing to save the snapshot is logged and does not prevent the configuration from being loaded.
+	 * 
+	 * @param args
+	 *            the processed command line arguments
+	 * @return the upgraded configuration
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public JSONObject loadConfiguration(WRFRunnerCommandLineArguments args) throws IOException {
+		if (!args.isPerformInteractiveUpgrade()) {
+			JSONObject snapshot = ConfigurationSnapshot.load(args.getConfigurationPath(), getConfigurationVersion());
+			if (snapshot != null)
+				return snapshot;
+		}
 		Pair<JSONObject, Collection<UpgradeWarning>> upgradeResult;
 		if (args.isPerformInteractiveUpgrade())
 			try (Scanner input = new Scanner(System.in)) {
-				upgradeResult = getUpgrader().performUpgrade(configuration, () -> input.nextLine(), System.out::print);
+				upgradeResult = getUpgrader().performUpgrade((JSONObject) JSONSystem.loadJSON(args.getConfigurationPath()), () -> input.nextLine(), System.out::print);
 			}
 		else
-			upgradeResult = getUpgrader().performUpgrade(configuration);
+			upgradeResult = getUpgrader().performUpgrade((JSONObject) JSONSystem.loadJSON(args.getConfigurationPath()));
 		
 		if (upgradeResult.getY().size() > 0) {
 			for (UpgradeWarning warning : upgradeResult.getY())
@@ -179,13 +212,75 @@ public class WRFRunner {
 						"\nRun the program with the '--interactive-upgrade' command-line argument to be walked through the potential problems.");
 			}
 		}
-		configuration = applyDefaults(depluralize(upgradeResult.getX(), false));
+		JSONObject configuration = applyDefaults(depluralize(upgradeResult.getX(), false));
 		if ((!args.ignoreUpgradeProblems() || upgradeResult.getY().size() == 0) && !args.cacheUpdates() && configuration.isModified()) {
 			getLog().info("Updating the configuration file located at: " + args.getConfigurationPath());
 			JSONSystem.writeJSON(configuration, args.getConfigurationPath());
 			getLog().info("Updates completed.");
 		}
-		return createSimulation(configuration, args.getConfigurationPath());
+		if (!args.isPerformInteractiveUpgrade() && upgradeResult.getY().size() == 0) {
+			try {
+				if (!ConfigurationSnapshot.save(args.getConfigurationPath(), getConfigurationVersion(), configuration))
+					getLog().fine("The configuration file located at " + args.getConfigurationPath() + " contains values that cannot be stored in a snapshot.");
+			}
+			catch (IOException e) { //The snapshot is only an optimization, so not being able to save it (e.g. in a read-only directory) is just a miss
+				getLog().fine("Unable to save a snapshot of the configuration file located at " + args.getConfigurationPath() + ": " + e);
+			}
+		}
+		return configuration;
+	}
+	
+	/**
+	 * The version string with which {@link ConfigurationSnapshot ConfigurationSnapshots} are saved. It combines the latest upgrade version, the
+	 * runner's implementation version, and the modification time of the runner's code so that snapshots are invalidated whenever the upgrade or
+	 * default logic could have changed.
+	 * 
+	 * @return the version string with which {@link ConfigurationSnapshot ConfigurationSnapshots} are saved
+	 */
+	protected String getConfigurationVersion() {
+		StringBuilder out = new StringBuilder().append(getUpgrader().getLatestVersion()).append('/').append(WRFRunner.class.getPackage().getImplementationVersion());
+		try {
+			out.append('/').append(Files.getLastModifiedTime(Paths.get(getClass().getProtectionDomain().getCodeSource().getLocation().toURI())).toMillis());
+		}
+		catch (IOException | URISyntaxException | RuntimeException e) {/* The code's location isn't always available, so we fall back on the versions */}
+		return out.toString();
+	}
+	
+	/**
+	 * Constructs an {@link Ensemble} from the ensemble file given by the {@link WRFRunnerCommandLineArguments arguments}.<br>
+	 * The ensemble file holds the path to the base configuration file in "configuration" (relative to the ensemble file, defaulting to
+	 * "configuration.json"), the overrides for each member in "members", and optionally the shared budget in "resources" as "cores", "memory"
+	 * (in megabytes), "bandwidth" (concurrent downloads), and "disk" (concurrent disk-intensive {@link Module Modules}). Omitted budget fields default to the values from
+	 * {@link ResourceScheduler#forLocalMachine()}.
+	 * 
+	 * @param args
+	 *            the processed command line arguments
+	 * @return a new {@link Ensemble} based on the given arguments
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public Ensemble createEnsemble(WRFRunnerCommandLineArguments args) throws IOException {
+		Path ensembleFile = args.getEnsemblePath().toAbsolutePath().normalize();
+		JSONObject description = (JSONObject) JSONSystem.loadJSON(ensembleFile);
+		Path configurationFile = ensembleFile.resolveSibling(description.containsKey("configuration") ? description.get("configuration").value().toString() : "configuration.json");
+		JSONObject configuration = loadConfiguration(
+				new WRFRunnerCommandLineArguments(configurationFile, args.cacheUpdates(), args.ignoreUpgradeProblems(), args.isPerformInteractiveUpgrade()));
+		ResourceScheduler scheduler = ResourceScheduler.forLocalMachine();
+		if (description.get("resources") instanceof JSONObject) {
+			JSONObject resources = (JSONObject) description.get("resources");
+			scheduler = new ResourceScheduler(resources.containsKey("cores") ? ((Number) resources.get("cores").value()).intValue() : scheduler.getCores(),
+					resources.containsKey("memory") ? ((Number) resources.get("memory").value()).longValue() : scheduler.getMemory(),
+					resources.containsKey("bandwidth") ? ((Number) resources.get("bandwidth").value()).intValue() : scheduler.getBandwidth(),
+					resources.containsKey("disk") ? ((Number) resources.get("disk").value()).intValue() : scheduler.getDisk());
+		}
+		if (!(description.get("members") instanceof JSONArray))
+			throw new IllegalArgumentException("The ensemble file, " + ensembleFile + ", must contain a \"members\" array.");
+		Ensemble ensemble = new Ensemble(scheduler);
+		for (JSONData<?> member : (JSONArray) description.get("members"))
+			ensemble.addMember(configuration, (JSONObject) member, configurationFile.getParent());
+		getLog().info("Created an ensemble of " + ensemble.getMembers().size() + " members with " + scheduler.getCores() + " cores, " + scheduler.getMemory() + "MB, and "
+				+ scheduler.getBandwidth() + " concurrent downloads");
+		return ensemble;
 	}
 	
 	/**
@@ -218,7 +313,8 @@ public class WRFRunner {
 	
 	/**
 	 * Executes the steps needed to run wget, WPS, and then WRF. This method automatically calculates the appropriate start and end times of the
-	 * simulation from the configuration and {@link Namelist} files, and downloads the boundary data accordingly.
+	 * simulation from the configuration and {@link Namelist} files, and downloads the boundary data accordingly.<br>
+	 * Once the {@link Simulation} finishes, the retention policy is applied via {@link #cleanUpOldSimulations(Collection)}.
 	 * 
 	 * @param sim
 	 *            the {@link Simulation} to run
@@ -228,29 +324,115 @@ public class WRFRunner {
 	 *             if one of the processes gets interrupted
 	 */
 	public void runSimulation(Simulation sim) throws IOException, InterruptedException {
+		runSimulation(sim, true);
+	}
+	
+	/**
+	 * Executes the steps needed to run wget, WPS, and then WRF. This method automatically calculates the appropriate start and end times of the
+	 * simulation from the configuration and {@link Namelist} files, and downloads the boundary data accordingly.
+	 * 
+	 * @param sim
+	 *            the {@link Simulation} to run
+	 * @param cleanUp
+	 *            whether the retention policy should be applied via {@link #cleanUpOldSimulations(Collection)} once the {@link Simulation}
+	 *            finishes. This should be {@code false} if the caller applies it to a group of {@link Simulation Simulations} (e.g. the members of
+	 *            an {@link Ensemble}) so that they cannot delete each other
+	 * @throws IOException
+	 *             if the {@link Namelist} files could not be read
+	 * @throws InterruptedException
+	 *             if one of the processes gets interrupted
+	 */
+	public void runSimulation(Simulation sim, boolean cleanUp) throws IOException, InterruptedException {
 		sim.linkModules();
 		sim.updateNamelists();
-		sim.executeModules();
-		cleanUpOldSimulations(sim);
+		boolean completed = false;
+		try {
+			sim.executeModules();
+			completed = true;
+		}
+		finally {
+			try {
+				sim.getJournal().finished(completed ? "completed" : "failed");
+			}
+			catch (IOException e) {
+				log.log(Level.WARNING, "Unable to record that " + sim.getWorkingPath() + " finished in its journal", e);
+			}
+			if (cleanUp)
+				try (SimulationTrace.Span span = sim.getTrace().begin("retention", "cleanup")) {
+					cleanUpOldSimulations(Collections.singletonList(sim));
+				}
+			try {
+				sim.writeMetrics();
+			}
+			catch (IOException e) {
+				log.log(Level.WARNING, "Unable to write the metrics for " + sim.getWorkingPath(), e);
+			}
+			try {
+				sim.writeTrace();
+			}
+			catch (IOException e) {
+				log.log(Level.WARNING, "Unable to write the trace for " + sim.getWorkingPath(), e);
+			}
+		}
 	}
 	
-	private void cleanUpOldSimulations(Simulation sim) {
-		try (DirectoryStream<Path> stream = Files.newDirectoryStream(sim.getWorkingPath())) {
+	/**
+	 * Records the given {@link Simulation Simulations} in the {@link RetentionIndex} for their root working directories and deletes the runs that
+	 * fall outside of the retention policy given by the "max-kept-outputs", "max-kept-bytes", and "max-kept-days" fields in "general". Only runs
+	 * whose {@link SimulationJournal journals} record that they finished are counted, so runs that are still in progress and runs from before
+	 * journals were written are never deleted, and the given {@link Simulation Simulations} are never deleted. Then, the least recently used
+	 * entries in the GRIB and geogrid {@link ArtifactCache artifact caches} are removed until each cache satisfies the "max-cached-bytes" and
+	 * "max-cached-days" fields in "general". The deletions are performed in parallel via {@link Simulation#erase(Path)}.<br>
+	 * The policies are taken from the first of the given {@link Simulation Simulations} that uses each root working directory.
+	 * 
+	 * @param sims
+	 *            the {@link Simulation Simulations} that just finished
+	 */
+	protected void cleanUpOldSimulations(Collection<Simulation> sims) {
+		Map<Path, List<Simulation>> roots = new LinkedHashMap<>();
+		for (Simulation sim : sims)
+			roots.computeIfAbsent(sim.getWorkingRoot().toAbsolutePath().normalize(), r -> new ArrayList<>()).add(sim);
+		for (List<Simulation> group : roots.values()) {
+			Simulation sim = group.get(0);
 			int maxOutputs = ((Number) sim.getGeneral().get("max-kept-outputs")).intValue();
-			if (maxOutputs < 1)
-				return;
-			SortedList<Path> sl = new SortedList<>(SortingMethods.PATH_MODIFIED_TIME_ASCENDING);
-			for (Path p : stream)
-				if (Files.isDirectory(p))
-					sl.add(p);
-			while (sl.size() > maxOutputs)
-				Files.walkFileTree(sl.remove(0), new RecursiveEraser());
-		}
-		catch (IOException e) {
-			log.log(Level.SEVERE, "Unable to clean up old simulation data.", e);
+			long maxBytes = ((Number) sim.getGeneral().get("max-kept-bytes")).longValue();
+			long maxAge = (long) (((Number) sim.getGeneral().get("max-kept-days")).doubleValue() * 24 * 60 * 60 * 1000);
+			if (maxOutputs > 0 || maxBytes > 0 || maxAge > 0) {
+				Map<Path, String> runs = new LinkedHashMap<>();
+				for (Simulation member : group)
+					runs.put(member.getWorkingPath(), member.getJournal().getFinishedStatus() != null ? member.getJournal().getFinishedStatus() : "failed");
+				try {
+					erase(sim, RetentionIndex.recordAndExpire(sim.getWorkingRoot(), runs, maxOutputs, maxBytes, maxAge));
+				}
+				catch (IOException e) {
+					log.log(Level.SEVERE, "Unable to clean up old simulation data.", e);
+				}
+			}
+			//Resumed Simulations might have been configured before these fields existed
+			long maxCachedBytes = sim.getGeneral().containsKey("max-cached-bytes") ? ((Number) sim.getGeneral().get("max-cached-bytes")).longValue() : 0;
+			long maxCachedAge = (long) ((sim.getGeneral().containsKey("max-cached-days") ? ((Number) sim.getGeneral().get("max-cached-days")).doubleValue() : 7) * 24 * 60 * 60 * 1000);
+			for (String cache : new String[]{"grib", "geogrid"}) {
+				try {
+					erase(sim, sim.getArtifactCache(cache).expire(maxCachedBytes, maxCachedAge));
+				}
+				catch (IOException e) {
+					log.log(Level.SEVERE, "Unable to clean up the " + cache + " cache.", e);
+				}
+			}
 		}
 	}
 	
+	private void erase(Simulation sim, List<Path> paths) {
+		paths.parallelStream().forEach(p -> {
+			try {
+				sim.erase(p);
+			}
+			catch (IOException e) {
+				log.log(Level.SEVERE, "Unable to delete " + p, e);
+			}
+		});
+	}
+	
 	protected void initConfigurationUpgradeActions(ConfigurationUpgrader upgrader) {
 		upgrader.addUpgradeAction("1.3.0", root -> {
 			if (root.containsKey("paths")) {
@@ -515,9 +697,20 @@ public class WRFRunner {
 		applyDefault(general, "keep-logs", false);
 		applyDefault(general, "always-suffix", false);
 		applyDefault(general, "max-kept-outputs", 15);
+		applyDefault(general, "max-kept-bytes", 0);
+		applyDefault(general, "max-kept-days", 0);
+		applyDefault(general, "max-cached-bytes", 0);
+		applyDefault(general, "max-cached-days", 7);
 		applyDefault(general, "logging-level", "info");
 		applyDefault(general, "force-serial-module-execution", false);
 		applyDefault(general, "use-computed-times", true);
+		applyDefault(general, "use-link-templates", true);
+		applyDefault(general, "verify-link-templates", false);
+		applyDefault(general, "link-parallelism", 0);
+		applyDefault(general, "background-cleanup", true);
+		applyDefault(general, "resource-scheduling", true);
+		applyDefault(general, "max-concurrent-cycles", 2);
+		applyDefault(general, "overlap-reserved-cores", 0);
 		return configuration;
 	}
 	
@@ -9,8 +9,8 @@ import java.nio.file.Paths;
  * @author Toberumono
  */
 public class WRFRunnerCommandLineArguments {
-	private final Path configurationPath;
-	private final boolean cacheUpdates, ignoreUpgradeProblems, performInteractiveUpgrade;
+	private final Path configurationPath, resumePath, ensemblePath;
+	private final boolean cacheUpdates, ignoreUpgradeProblems, performInteractiveUpgrade, daemon;
 	
 	/**
 	 * Constructs a new {@link WRFRunnerCommandLineArguments} container from the given command-line arguments.
@@ -19,9 +19,10 @@ public class WRFRunnerCommandLineArguments {
 	 *            the command-line arguments
 	 */
 	public WRFRunnerCommandLineArguments(String[] args) {
-		Path configurationPath = Paths.get("configuration.json");
-		boolean cacheUpdates = false, ignoreUpgradeProblems = false, performInteractiveUpgrade = false;
-		for (String arg : args) {
+		Path configurationPath = Paths.get("configuration.json"), resumePath = null, ensemblePath = null;
+		boolean cacheUpdates = false, ignoreUpgradeProblems = false, performInteractiveUpgrade = false, daemon = false;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
 			switch (arg) {
 				case "--no-upgrade-writing":
 					cacheUpdates = true;
@@ -32,6 +33,19 @@ public class WRFRunnerCommandLineArguments {
 				case "--interactive-upgrade":
 					performInteractiveUpgrade = true;
 					break;
+				case "--daemon":
+					daemon = true;
+					break;
+				case "--resume":
+					if (++i >= args.length)
+						throw new IllegalArgumentException("--resume requires the path to a working directory.");
+					resumePath = Paths.get(args[i]);
+					break;
+				case "--ensemble":
+					if (++i >= args.length)
+						throw new IllegalArgumentException("--ensemble requires the path to an ensemble file.");
+					ensemblePath = Paths.get(args[i]);
+					break;
 				default:
 					configurationPath = Paths.get(arg);
 			}
@@ -40,6 +54,9 @@ public class WRFRunnerCommandLineArguments {
 		this.cacheUpdates = cacheUpdates;
 		this.ignoreUpgradeProblems = ignoreUpgradeProblems;
 		this.performInteractiveUpgrade = performInteractiveUpgrade;
+		this.resumePath = resumePath;
+		this.ensemblePath = ensemblePath;
+		this.daemon = daemon;
 	}
 	
 	/**
@@ -59,6 +76,9 @@ public class WRFRunnerCommandLineArguments {
 		this.cacheUpdates = cacheUpdates;
 		this.ignoreUpgradeProblems = ignoreUpgradeProblems;
 		this.performInteractiveUpgrade = performInteractiveUpgrade;
+		this.resumePath = null;
+		this.ensemblePath = null;
+		this.daemon = false;
 	}
 	
 	/**
@@ -88,4 +108,29 @@ public class WRFRunnerCommandLineArguments {
 	public boolean isPerformInteractiveUpgrade() {
 		return performInteractiveUpgrade;
 	}
+	
+	/**
+	 * @return the {@link Path} to the working directory of the {@link Simulation} that should be resumed or {@code null} if a new
+	 *         {@link Simulation} should be started
+	 * @see Simulation#resumeSimulation(Path)
+	 */
+	public Path getResumePath() {
+		return resumePath;
+	}
+	
+	/**
+	 * @return the {@link Path} to the ensemble file or {@code null} if a single {@link Simulation} should be run
+	 * @see WRFRunner#createEnsemble(WRFRunnerCommandLineArguments)
+	 */
+	public Path getEnsemblePath() {
+		return ensemblePath;
+	}
+	
+	/**
+	 * @return whether the {@link WRFRunner} should run cycles on a schedule via a {@link CycleDaemon} instead of running a single
+	 *         {@link Simulation}
+	 */
+	public boolean isDaemon() {
+		return daemon;
+	}
 }
@@ -1,7 +1,9 @@
 package toberumono.wrf;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.ServiceLoader;
 import java.util.function.BiFunction;
 
 import toberumono.wrf.scope.Scope;
@@ -13,21 +15,25 @@ import toberumono.wrf.scope.ScopedMap;
  * A factory class that implements the methods needed to construct any implementation of {@link ScopedComponent} that uses the standard (arguments,
  * parent) constructor.<br>
  * Factories are not constructed directly - they are accessed through {@link #getFactory(Class)} and
- * {@link #createFactory(Class, String, BiFunction)}.
+ * {@link #createFactory(Class, String, BiFunction)}.<br>
+ * The registry is copy-on-write: registration (which normally only happens at startup) replaces immutable maps, so looking up factories and
+ * constructing components never requires a lock. Additional components can be registered by {@link WRFRunnerComponentProvider
+ * WRFRunnerComponentProviders} via {@link #loadProviders(ClassLoader)}.
  * 
  * @author Toberumono
  * @param <T>
  *            the type of {@link ScopedComponent} being produced (although it technically can be anything)
  */
 public class WRFRunnerComponentFactory<T> {
-	private static final Map<Class<?>, WRFRunnerComponentFactory<?>> factories = new HashMap<>();
-	private final Map<String, BiFunction<ScopedMap, Scope, T>> components;
-	private String defaultComponentType;
-	private BiFunction<ScopedMap, Scope, T> disabledComponentConstructor;
+	private static final Object registrationLock = new Object();
+	private static volatile Map<Class<?>, WRFRunnerComponentFactory<?>> factories = Collections.emptyMap();
+	private volatile Map<String, BiFunction<ScopedMap, Scope, T>> components;
+	private volatile String defaultComponentType;
+	private volatile BiFunction<ScopedMap, Scope, T> disabledComponentConstructor;
 	private final Class<T> rootType;
 	
 	private WRFRunnerComponentFactory(Class<T> rootType, String defaultComponentType, BiFunction<ScopedMap, Scope, T> disabledComponentConstructor) {
-		components = new HashMap<>();
+		components = Collections.emptyMap();
 		this.rootType = rootType;
 		this.defaultComponentType = defaultComponentType;
 		this.disabledComponentConstructor = disabledComponentConstructor;
@@ -45,12 +51,10 @@ public class WRFRunnerComponentFactory<T> {
 	 *             if a {@link WRFRunnerComponentFactory} for the given {@link Class} does not exist
 	 */
 	public static <T> WRFRunnerComponentFactory<T> getFactory(Class<T> clazz) {
-		synchronized (factories) {
-			if (!factories.containsKey(clazz))
-				throw new NoSuchFactoryException("The factory for " + clazz.getName() + " does not exist.");
-			@SuppressWarnings("unchecked") WRFRunnerComponentFactory<T> factory = (WRFRunnerComponentFactory<T>) factories.get(clazz);
-			return factory;
-		}
+		@SuppressWarnings("unchecked") WRFRunnerComponentFactory<T> factory = (WRFRunnerComponentFactory<T>) factories.get(clazz);
+		if (factory == null)
+			throw new NoSuchFactoryException("The factory for " + clazz.getName() + " does not exist.");
+		return factory;
 	}
 	
 	/**
@@ -70,7 +74,7 @@ public class WRFRunnerComponentFactory<T> {
 	 * @return an instance of {@link WRFRunnerComponentFactory} that produces components that are subclasses of {@code clazz}
 	 */
 	public static <T> WRFRunnerComponentFactory<T> createFactory(Class<T> clazz, String defaultComponentType, BiFunction<ScopedMap, Scope, T> disabledComponentConstructor) {
-		synchronized (factories) {
+		synchronized (registrationLock) {
 			if (factories.containsKey(clazz)) {
 				@SuppressWarnings("unchecked") WRFRunnerComponentFactory<T> factory = (WRFRunnerComponentFactory<T>) factories.get(clazz);
 				if (defaultComponentType != null)
@@ -80,7 +84,9 @@ public class WRFRunnerComponentFactory<T> {
 				return factory;
 			}
 			WRFRunnerComponentFactory<T> factory = new WRFRunnerComponentFactory<>(clazz, defaultComponentType, disabledComponentConstructor);
-			factories.put(clazz, factory);
+			Map<Class<?>, WRFRunnerComponentFactory<?>> updated = new HashMap<>(factories);
+			updated.put(clazz, factory);
+			factories = Collections.unmodifiableMap(updated);
 			return factory;
 		}
 	}
@@ -116,8 +122,10 @@ public class WRFRunnerComponentFactory<T> {
 	 *            equivalent to {@code T::new}.
 	 */
 	public void addComponentConstructor(String type, BiFunction<ScopedMap, Scope, T> constructor) {
-		synchronized (components) {
-			components.put(type, constructor);
+		synchronized (registrationLock) {
+			Map<String, BiFunction<ScopedMap, Scope, T>> updated = new HashMap<>(components);
+			updated.put(type, constructor);
+			components = Collections.unmodifiableMap(updated);
 		}
 	}
 	
@@ -196,26 +204,28 @@ public class WRFRunnerComponentFactory<T> {
 	 * @see #generateComponent(Class, String, ScopedMap, Scope)
 	 */
 	public T generateComponent(String type, ScopedMap parameters, Scope parent) {
-		synchronized (components) {
-			if (type != null && type.equals("disabled"))
-				return getDisabledComponentInstance(parameters, parent);
-			if (parameters == null)
+		if (type != null && type.equals("disabled"))
+			return getDisabledComponentInstance(parameters, parent);
+		if (parameters == null)
+			return implicitInheritance(parent);
+		if (parameters.get("enabled") instanceof Boolean && !((Boolean) parameters.get("enabled")))
+			return getDisabledComponentInstance(parameters, parent);
+		Object inherit = parameters.get("inherit");
+		if (inherit != null) {
+			if (inherit instanceof String) //Then this is an explicit inheritance
+				inherit = ScopedFormulaProcessor.process((String) inherit, parameters, null);
+			if (inherit instanceof Boolean && (Boolean) inherit)
 				return implicitInheritance(parent);
-			if (parameters.get("enabled") instanceof Boolean && !((Boolean) parameters.get("enabled")))
-				return getDisabledComponentInstance(parameters, parent);
-			Object inherit = parameters.get("inherit");
-			if (inherit != null) {
-				if (inherit instanceof String) //Then this is an explicit inheritance
-					inherit = ScopedFormulaProcessor.process((String) inherit, parameters, null);
-				if (inherit instanceof Boolean && (Boolean) inherit)
-					return implicitInheritance(parent);
-				if (inherit instanceof ScopedMap) //Then this is scope-based inheritance
-					return generateComponent((ScopedMap) inherit, parent);
-				if (rootType.isInstance(inherit))
-					return rootType.cast(inherit);
-			}
-			return components.get(type != null ? type : defaultComponentType).apply(parameters, parent);
+			if (inherit instanceof ScopedMap) //Then this is scope-based inheritance
+				return generateComponent((ScopedMap) inherit, parent);
+			if (rootType.isInstance(inherit))
+				return rootType.cast(inherit);
 		}
+		String name = type != null ? type : defaultComponentType;
+		BiFunction<ScopedMap, Scope, T> constructor = components.get(name);
+		if (constructor == null)
+			throw new IllegalArgumentException(name + " is not a registered type of " + rootType.getSimpleName() + ".");
+		return constructor.apply(parameters, parent);
 	}
 	
 	private T implicitInheritance(Scope parent) {
@@ -258,9 +268,7 @@ public class WRFRunnerComponentFactory<T> {
 	 * @see #setDefaultComponentType(Class, String)
 	 */
 	public void setDefaultComponentType(String type) {
-		synchronized (components) {
-			defaultComponentType = type;
-		}
+		defaultComponentType = type;
 	}
 	
 	/**
@@ -288,9 +296,7 @@ public class WRFRunnerComponentFactory<T> {
 	 * @see #setDisabledComponentConstructor(BiFunction)
 	 */
 	public void setDisabledComponentConstructor(BiFunction<ScopedMap, Scope, T> disabledComponentConstructor) {
-		synchronized (components) {
-			this.disabledComponentConstructor = disabledComponentConstructor;
-		}
+		this.disabledComponentConstructor = disabledComponentConstructor;
 	}
 	
 	/**
@@ -326,8 +332,25 @@ public class WRFRunnerComponentFactory<T> {
 	 * @see #getDisabledComponentInstance(Class, ScopedMap, Scope)
 	 */
 	public T getDisabledComponentInstance(ScopedMap parameters, Scope parent) {
-		synchronized (components) {
-			return disabledComponentConstructor.apply(parameters, parent);
+		return disabledComponentConstructor.apply(parameters, parent);
+	}
+	
+	/**
+	 * Registers the components of every {@link WRFRunnerComponentProvider} that is visible to the given {@link ClassLoader} via
+	 * {@link ServiceLoader}. Providers are listed in {@code META-INF/services/toberumono.wrf.WRFRunnerComponentProvider} files in the usual manner.
+	 * 
+	 * @param loader
+	 *            the {@link ClassLoader} used to find the providers ({@code null} for the system {@link ClassLoader})
+	 * @return the number of providers that were loaded
+	 * @throws java.util.ServiceConfigurationError
+	 *             if a provider could not be loaded
+	 */
+	public static int loadProviders(ClassLoader loader) {
+		int count = 0;
+		for (WRFRunnerComponentProvider provider : ServiceLoader.load(WRFRunnerComponentProvider.class, loader)) {
+			provider.registerComponents();
+			count++;
 		}
+		return count;
 	}
 }
@@ -0,0 +1,24 @@
+package toberumono.wrf;
+
+import java.util.ServiceLoader;
+
+/**
+ * A service interface that allows plugins to register additional components with {@link WRFRunnerComponentFactory} without modifying
+ * {@link WRFRunner#initFactories()}.<br>
+ * Implementations must have a public no-argument constructor and be listed in a
+ * {@code META-INF/services/toberumono.wrf.WRFRunnerComponentProvider} file so that they can be found by {@link ServiceLoader}. They are loaded
+ * after the built-in components have been registered, so they can add new types to existing factories, replace existing types, or create
+ * factories for entirely new component types.
+ * 
+ * @author Toberumono
+ * @see WRFRunnerComponentFactory#loadProviders(ClassLoader)
+ */
+@FunctionalInterface
+public interface WRFRunnerComponentProvider {
+	
+	/**
+	 * Registers the provider's components via {@link WRFRunnerComponentFactory#createFactory(Class, String, java.util.function.BiFunction)} and
+	 * {@link WRFRunnerComponentFactory#addComponentConstructor(Class, String, java.util.function.BiFunction)}.
+	 */
+	public void registerComponents();
+}
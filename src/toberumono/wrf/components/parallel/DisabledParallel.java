@@ -33,7 +33,7 @@ public class DisabledParallel extends AbstractParallel {
 	}
 	
 	@Override
-	public String[] makeCommand(String executablePath, String logPath) {
-		return Parallel.makeSerialCommand(executablePath, logPath);
+	public String[] makeCommand(String executablePath) {
+		return Parallel.makeSerialCommand(executablePath);
 	}
 }
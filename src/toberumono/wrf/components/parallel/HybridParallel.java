@@ -0,0 +1,193 @@
+package toberumono.wrf.components.parallel;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import toberumono.wrf.scope.NamedScopeValue;
+import toberumono.wrf.scope.Scope;
+import toberumono.wrf.scope.ScopedMap;
+
+/**
+ * An implementation of {@link Parallel} for hybrid (dm+sm) builds of WRF, which run multiple OpenMP threads in each MPI rank.<br>
+ * In addition to the fields supported by {@link StandardParallel} (where "processors" is the number of MPI ranks), this supports
+ * "threads-per-rank", "ranks-per-node", "bind-to", "map-by", and "hostfile". The generated flags use Open MPI's {@code mpiexec} syntax.
+ * 
+ * @author Toberumono
+ */
+public class HybridParallel extends StandardParallel {
+	/**
+	 * The name of the hostfile that is generated when "hostfile" is {@code true}
+	 */
+	public static final String HOSTFILE_NAME = "hostfile";
+	
+	private Integer threadsPerRank, ranksPerNode;
+	private String bindTo, mapBy;
+	private Boolean hostfile;
+	
+	/**
+	 * Initializes a new instance of {@link HybridParallel} with a {@link Logger} derived from {@link Parallel#LOGGER_NAME}.
+	 * 
+	 * @param parameters
+	 *            the parameters that define the instance as a {@link ScopedMap}
+	 * @param parent
+	 *            the parent {@link Scope}
+	 */
+	public HybridParallel(ScopedMap parameters, Scope parent) {
+		super(parameters, parent);
+		threadsPerRank = null;
+		ranksPerNode = null;
+		bindTo = null;
+		mapBy = null;
+		hostfile = null;
+	}
+	
+	/**
+	 * @return the number of OpenMP threads to run in each MPI rank (defaults to 1)
+	 */
+	@NamedScopeValue("threads-per-rank")
+	public Integer getThreadsPerRank() {
+		if (threadsPerRank != null)
+			return threadsPerRank;
+		synchronized (this) {
+			if (threadsPerRank == null) {
+				threadsPerRank = getParameters().containsKey("threads-per-rank") ? evaluateToNumber(getParameters().get("threads-per-rank"), "threads-per-rank").intValue()
+						: (getParent() instanceof HybridParallel ? ((HybridParallel) getParent()).getThreadsPerRank() : 1);
+			}
+		}
+		return threadsPerRank;
+	}
+	
+	/**
+	 * @return the number of MPI ranks to place on each node or a value less than 1 if the number should be left to {@code mpiexec} (defaults to
+	 *         0)
+	 */
+	@NamedScopeValue("ranks-per-node")
+	public Integer getRanksPerNode() {
+		if (ranksPerNode != null)
+			return ranksPerNode;
+		synchronized (this) {
+			if (ranksPerNode == null) {
+				ranksPerNode = getParameters().containsKey("ranks-per-node") ? evaluateToNumber(getParameters().get("ranks-per-node"), "ranks-per-node").intValue()
+						: (getParent() instanceof HybridParallel ? ((HybridParallel) getParent()).getRanksPerNode() : 0);
+			}
+		}
+		return ranksPerNode;
+	}
+	
+	/**
+	 * @return the unit to which each MPI rank is bound (e.g. "core", "socket", "numa", or "none"; defaults to "core")
+	 */
+	@NamedScopeValue("bind-to")
+	public String getBindTo() {
+		if (bindTo != null)
+			return bindTo;
+		synchronized (this) {
+			if (bindTo == null) {
+				bindTo = getParameters().containsKey("bind-to") ? evaluateToType(getParameters().get("bind-to"), "bind-to", String.class)
+						: (getParent() instanceof HybridParallel ? ((HybridParallel) getParent()).getBindTo() : "core");
+			}
+		}
+		return bindTo;
+	}
+	
+	/**
+	 * @return the explicit mapping policy passed to {@code --map-by} or an empty {@link String} if the mapping should be derived from
+	 *         {@link #getRanksPerNode()} and {@link #getThreadsPerRank()} (defaults to an empty {@link String})
+	 */
+	@NamedScopeValue("map-by")
+	public String getMapBy() {
+		if (mapBy != null)
+			return mapBy;
+		synchronized (this) {
+			if (mapBy == null) {
+				mapBy = getParameters().containsKey("map-by") ? evaluateToType(getParameters().get("map-by"), "map-by", String.class)
+						: (getParent() instanceof HybridParallel ? ((HybridParallel) getParent()).getMapBy() : "");
+			}
+		}
+		return mapBy;
+	}
+	
+	/**
+	 * @return {@code true} iff a hostfile for the local machine should be generated in the directory in which the command is run (defaults to
+	 *         {@code false})
+	 */
+	@NamedScopeValue("hostfile")
+	public Boolean isHostfile() {
+		if (hostfile != null)
+			return hostfile;
+		synchronized (this) {
+			if (hostfile == null) {
+				hostfile = getParameters().containsKey("hostfile") ? evaluateToType(getParameters().get("hostfile"), "hostfile", Boolean.class)
+						: (getParent() instanceof HybridParallel ? ((HybridParallel) getParent()).isHostfile() : false);
+			}
+		}
+		return hostfile;
+	}
+	
+	@Override
+	public int getCores() {
+		return isParallel() ? getNumProcessors() * getThreadsPerRank() : getThreadsPerRank();
+	}
+	
+	@Override
+	public String[] makeCommand(String executablePath, int processes) {
+		if (!isParallel())
+			return Parallel.makeSerialCommand(executablePath);
+		List<String> command = new ArrayList<>();
+		command.add("mpiexec");
+		if (isBootLAM())
+			command.add("-boot");
+		command.add("-np");
+		command.add(Integer.toString(processes));
+		String mapping = getMapBy();
+		if (mapping.isEmpty()) {
+			if (getRanksPerNode() > 0)
+				mapping = "ppr:" + getRanksPerNode() + ":node";
+			else if (getThreadsPerRank() > 1)
+				mapping = "slot";
+			if (getThreadsPerRank() > 1)
+				mapping += ":PE=" + getThreadsPerRank(); //Reserves a core for each thread in the rank
+		}
+		if (!mapping.isEmpty()) {
+			command.add("--map-by");
+			command.add(mapping);
+		}
+		command.add("--bind-to");
+		command.add(getBindTo());
+		if (isHostfile()) {
+			command.add("--hostfile");
+			command.add(HOSTFILE_NAME);
+		}
+		for (String variable : getEnvironment().keySet()) { //Forward the OpenMP settings to every rank
+			command.add("-x");
+			command.add(variable);
+		}
+		command.add(executablePath);
+		return command.toArray(new String[command.size()]);
+	}
+	
+	@Override
+	public Map<String, String> getEnvironment() {
+		Map<String, String> environment = new LinkedHashMap<>();
+		environment.put("OMP_NUM_THREADS", getThreadsPerRank().toString());
+		if (!getBindTo().equals("none")) { //Keep each rank's threads on the cores that it is bound to
+			environment.put("OMP_PROC_BIND", "close");
+			environment.put("OMP_PLACES", "cores");
+		}
+		return Collections.unmodifiableMap(environment);
+	}
+	
+	@Override
+	public void prepare(Path directory, int processes) throws IOException {
+		if (isParallel() && isHostfile())
+			Files.write(directory.resolve(HOSTFILE_NAME), ("localhost slots=" + processes + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+	}
+}
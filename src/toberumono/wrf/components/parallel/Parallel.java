@@ -1,7 +1,13 @@
 package toberumono.wrf.components.parallel;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 import java.util.logging.Logger;
 
+import toberumono.wrf.CapturedProcess;
 import toberumono.wrf.scope.NamedScopeValue;
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.timing.clear.Clear;
@@ -31,6 +37,57 @@ public interface Parallel extends Scope {
 	@NamedScopeValue("num-processors")
 	public Integer getNumProcessors();
 	
+	/**
+	 * @return the number of cores occupied by a command generated by the {@link Parallel} instance (by default, {@link #getNumProcessors()} if
+	 *         {@link #isParallel()} is {@code true} and 1 otherwise)
+	 */
+	public default int getCores() {
+		return isParallel() ? getNumProcessors() : 1;
+	}
+	
+	/**
+	 * Generates a command based on the information in the {@link Parallel} instance that can be run directly (i.e. without a shell).
+	 * 
+	 * @param executablePath
+	 *            the path to the executable file (can be relative)
+	 * @return a command based on the information in the {@link Parallel} instance that can be passed to a {@link ProcessBuilder}
+	 */
+	public String[] makeCommand(String executablePath);
+	
+	/**
+	 * Generates a command that runs the given executable with the given number of processes and can be run directly (i.e. without a shell).<br>
+	 * By default, this ignores {@code processes} and returns {@link #makeCommand(String)}.
+	 * 
+	 * @param executablePath
+	 *            the path to the executable file (can be relative)
+	 * @param processes
+	 *            the number of processes to use in place of {@link #getNumProcessors()}
+	 * @return a command based on the information in the {@link Parallel} instance that can be passed to a {@link ProcessBuilder}
+	 */
+	public default String[] makeCommand(String executablePath, int processes) {
+		return makeCommand(executablePath);
+	}
+	
+	/**
+	 * @return the environment variables that must be set for the commands generated by the {@link Parallel} instance (empty by default)
+	 */
+	public default Map<String, String> getEnvironment() {
+		return Collections.emptyMap();
+	}
+	
+	/**
+	 * Performs any setup that the commands generated by the {@link Parallel} instance require in the directory in which they will be run (e.g.
+	 * writing a hostfile). By default, this does nothing.
+	 * 
+	 * @param directory
+	 *            the directory in which the command will be run
+	 * @param processes
+	 *            the number of processes that the command will use
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public default void prepare(Path directory, int processes) throws IOException {/* Nothing to do by default */}
+	
 	/**
 	 * Generates a shell command based on the information in the {@link Parallel} instance that can be passed to a {@link ProcessBuilder}.
 	 * 
@@ -39,8 +96,24 @@ public interface Parallel extends Scope {
 	 * @param logPath
 	 *            the path to the log file (can be relative, doesn't need to exist)
 	 * @return a shell command based on the information in the {@link Parallel} instance that can be passed to a {@link ProcessBuilder}
+	 * @deprecated this relies on piping the output through {@code tee} in a shell. Use {@link #makeCommand(String)} with
+	 *             {@link CapturedProcess} instead
+	 */
+	@Deprecated
+	public default String[] makeCommand(String executablePath, String logPath) {
+		return appendTee(makeCommand(executablePath), logPath);
+	}
+	
+	/**
+	 * Generates a command for serial processes that can be run directly (i.e. without a shell).
+	 * 
+	 * @param executablePath
+	 *            the path to the executable file (can be relative)
+	 * @return a command for serial processes that can be passed to a {@link ProcessBuilder}
 	 */
-	public String[] makeCommand(String executablePath, String logPath);
+	public static String[] makeSerialCommand(String executablePath) {
+		return new String[]{executablePath};
+	}
 	
 	/**
 	 * Generates a shell command for serial processes that can be passed to a {@link ProcessBuilder}.
@@ -50,8 +123,29 @@ public interface Parallel extends Scope {
 	 * @param logPath
 	 *            the path to the log file (can be relative, doesn't need to exist)
 	 * @return a shell command for serial processes that can be passed to a {@link ProcessBuilder}
+	 * @deprecated this relies on piping the output through {@code tee} in a shell. Use {@link #makeSerialCommand(String)} with
+	 *             {@link CapturedProcess} instead
 	 */
+	@Deprecated
 	public static String[] makeSerialCommand(String executablePath, String logPath) {
-		return new String[]{executablePath, "2>&1", "|", "tee", logPath};
+		return appendTee(makeSerialCommand(executablePath), logPath);
+	}
+	
+	/**
+	 * Appends the shell syntax needed to pipe the output of the given command through {@code tee} into the given log file.
+	 * 
+	 * @param command
+	 *            the command
+	 * @param logPath
+	 *            the path to the log file (can be relative, doesn't need to exist)
+	 * @return the command with the {@code tee} pipe appended
+	 */
+	static String[] appendTee(String[] command, String logPath) {
+		String[] out = Arrays.copyOf(command, command.length + 4);
+		out[command.length] = "2>&1";
+		out[command.length + 1] = "|";
+		out[command.length + 2] = "tee";
+		out[command.length + 3] = logPath;
+		return out;
 	}
 }
@@ -75,14 +75,19 @@ public class StandardParallel extends AbstractParallel {
 	}
 	
 	@Override
-	public String[] makeCommand(String executablePath, String logPath) {
+	public String[] makeCommand(String executablePath) {
+		return makeCommand(executablePath, getNumProcessors());
+	}
+	
+	@Override
+	public String[] makeCommand(String executablePath, int processes) {
 		if (isParallel()) {
 			if (isBootLAM())
-				return new String[]{"mpiexec", "-boot", "-np", getNumProcessors().toString(), executablePath, "2>&1", "|", "tee", logPath};
+				return new String[]{"mpiexec", "-boot", "-np", Integer.toString(processes), executablePath};
 			else
-				return new String[]{"mpiexec", "-np", getNumProcessors().toString(), executablePath, "2>&1", "|", "tee", logPath};
+				return new String[]{"mpiexec", "-np", Integer.toString(processes), executablePath};
 		}
-		return new String[]{executablePath, "2>&1", "|", "tee", logPath};
+		return Parallel.makeSerialCommand(executablePath);
 	}
 	
 }
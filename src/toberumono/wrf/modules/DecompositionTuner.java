@@ -0,0 +1,200 @@
+package toberumono.wrf.modules;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import toberumono.json.JSONData;
+import toberumono.json.JSONNumber;
+import toberumono.json.JSONObject;
+import toberumono.json.JSONSystem;
+
+/**
+ * Chooses the number of MPI processes and their layout ({@code nproc_x} by {@code nproc_y}) for wrf.exe from the dimensions of its domains.<br>
+ * WRF decomposes every domain across every process, so each process's patch of the smallest domain must still be at least
+ * {@code minPatchSize} grid points in each direction. Among the process counts that satisfy that constraint and fit in the available
+ * processors, the largest is chosen unless measured throughputs from previous runs (see {@link #record(int, double)}) show that a smaller count
+ * is faster. The layout is chosen to keep the patches as close to square as possible.
+ * 
+ * @author Toberumono
+ */
+public class DecompositionTuner {
+	/**
+	 * The default minimum number of grid points per patch in each direction
+	 */
+	public static final int DEFAULT_MIN_PATCH_SIZE = 10;
+	private static final Object historyLock = new Object();
+	
+	private final int[] eWE, eSN;
+	private final int minPatchSize;
+	private final Path history;
+	private final String signature;
+	
+	/**
+	 * A process layout for wrf.exe.
+	 * 
+	 * @author Toberumono
+	 */
+	public static class Decomposition {
+		private final int nprocX, nprocY;
+		
+		/**
+		 * Constructs a new {@link Decomposition}.
+		 * 
+		 * @param nprocX
+		 *            the number of processes in the west-east direction
+		 * @param nprocY
+		 *            the number of processes in the south-north direction
+		 */
+		public Decomposition(int nprocX, int nprocY) {
+			this.nprocX = nprocX;
+			this.nprocY = nprocY;
+		}
+		
+		/**
+		 * @return the number of processes in the west-east direction
+		 */
+		public int getNprocX() {
+			return nprocX;
+		}
+		
+		/**
+		 * @return the number of processes in the south-north direction
+		 */
+		public int getNprocY() {
+			return nprocY;
+		}
+		
+		/**
+		 * @return the total number of processes
+		 */
+		public int getProcesses() {
+			return nprocX * nprocY;
+		}
+		
+		@Override
+		public String toString() {
+			return nprocX + "x" + nprocY;
+		}
+	}
+	
+	/**
+	 * Constructs a new {@link DecompositionTuner} for the given domains.
+	 * 
+	 * @param eWE
+	 *            the {@code e_we} value of each domain
+	 * @param eSN
+	 *            the {@code e_sn} value of each domain
+	 * @param minPatchSize
+	 *            the minimum number of grid points per patch in each direction
+	 * @param history
+	 *            the file in which measured throughputs are stored. If this is {@code null}, measurements are not used
+	 */
+	public DecompositionTuner(int[] eWE, int[] eSN, int minPatchSize, Path history) {
+		this.eWE = eWE;
+		this.eSN = eSN;
+		this.minPatchSize = minPatchSize;
+		this.history = history;
+		signature = Arrays.stream(eWE).mapToObj(Integer::toString).collect(Collectors.joining(",")) + "/"
+				+ Arrays.stream(eSN).mapToObj(Integer::toString).collect(Collectors.joining(","));
+	}
+	
+	/**
+	 * Finds the layout with the most square patches for the given number of processes.
+	 * 
+	 * @param processes
+	 *            the number of processes
+	 * @return the layout or {@code null} if no layout of {@code processes} processes satisfies the minimum patch size
+	 */
+	public Decomposition layout(int processes) {
+		int minWE = Arrays.stream(eWE).min().getAsInt() - 1, minSN = Arrays.stream(eSN).min().getAsInt() - 1; //e_we and e_sn are staggered dimensions
+		Decomposition best = null;
+		double bestSkew = Double.MAX_VALUE;
+		for (int x = 1; x <= processes; x++) {
+			if (processes % x != 0)
+				continue;
+			int y = processes / x;
+			if (minWE / x < minPatchSize || minSN / y < minPatchSize)
+				continue;
+			double skew = Math.abs(Math.log((minWE / (double) x) / (minSN / (double) y)));
+			if (skew < bestSkew) {
+				bestSkew = skew;
+				best = new Decomposition(x, y);
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Chooses a {@link Decomposition} that uses at most {@code maxProcesses} processes.
+	 * 
+	 * @param maxProcesses
+	 *            the maximum number of processes
+	 * @return the chosen {@link Decomposition}. This is {@code 1x1} if no larger layout satisfies the minimum patch size
+	 * @throws IOException
+	 *             if the history file could not be read
+	 */
+	public Decomposition choose(int maxProcesses) throws IOException {
+		Map<Integer, Double> measured = readHistory();
+		Decomposition largest = null, fastest = null;
+		double fastestRate = 0;
+		for (int processes = Math.max(maxProcesses, 1); processes > 0; processes--) {
+			Decomposition layout = layout(processes);
+			if (layout == null)
+				continue;
+			if (largest == null) {
+				largest = layout;
+				if (!measured.containsKey(processes)) //The largest feasible count is always tried before the measurements are trusted
+					return largest;
+			}
+			if (measured.containsKey(processes) && measured.get(processes) > fastestRate) {
+				fastestRate = measured.get(processes);
+				fastest = layout;
+			}
+		}
+		return fastest != null ? fastest : largest != null ? largest : new Decomposition(1, 1);
+	}
+	
+	/**
+	 * Records the throughput measured for the given number of processes. Repeated measurements are smoothed with an exponential moving
+	 * average.
+	 * 
+	 * @param processes
+	 *            the number of processes
+	 * @param simulatedSecondsPerSecond
+	 *            the measured number of simulated seconds per wall-clock second
+	 * @throws IOException
+	 *             if the history file could not be read or written
+	 */
+	public void record(int processes, double simulatedSecondsPerSecond) throws IOException {
+		if (history == null || Double.isNaN(simulatedSecondsPerSecond) || simulatedSecondsPerSecond <= 0)
+			return;
+		synchronized (historyLock) {
+			JSONObject root = Files.exists(history) ? (JSONObject) JSONSystem.loadJSON(history) : new JSONObject();
+			JSONObject domains = root.get(signature) instanceof JSONObject ? (JSONObject) root.get(signature) : new JSONObject();
+			String key = Integer.toString(processes);
+			double rate = domains.containsKey(key) ? 0.5 * ((Number) domains.get(key).value()).doubleValue() + 0.5 * simulatedSecondsPerSecond : simulatedSecondsPerSecond;
+			domains.put(key, new JSONNumber<>(rate));
+			root.put(signature, domains);
+			JSONSystem.writeJSON(root, history);
+		}
+	}
+	
+	private Map<Integer, Double> readHistory() throws IOException {
+		Map<Integer, Double> out = new HashMap<>();
+		if (history == null || !Files.exists(history))
+			return out;
+		synchronized (historyLock) {
+			JSONObject root = (JSONObject) JSONSystem.loadJSON(history);
+			if (!(root.get(signature) instanceof JSONObject))
+				return out;
+			for (Map.Entry<String, JSONData<?>> e : ((JSONObject) root.get(signature)).entrySet())
+				out.put(Integer.parseInt(e.getKey()), ((Number) e.getValue().value()).doubleValue());
+		}
+		return out;
+	}
+}
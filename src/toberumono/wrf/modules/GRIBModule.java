@@ -6,11 +6,19 @@ import java.net.URL;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
@@ -18,7 +26,10 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
 
+import toberumono.wrf.ArtifactCache;
+import toberumono.wrf.MetricsRegistry;
 import toberumono.wrf.Module;
 import toberumono.wrf.Simulation;
 import toberumono.wrf.WRFRunnerComponentFactory;
@@ -26,6 +37,8 @@ import toberumono.wrf.scope.ModuleScopedMap;
 import toberumono.wrf.scope.NamedScopeValue;
 import toberumono.wrf.scope.ScopedMap;
 import toberumono.wrf.timing.Timing;
+import toberumono.wrf.timing.TimingBatch;
+import toberumono.wrf.timing.TimingUtils;
 
 import static java.util.Calendar.*;
 import static toberumono.wrf.SimulationConstants.*;
@@ -37,6 +50,7 @@ import static toberumono.wrf.SimulationConstants.*;
  */
 public class GRIBModule extends Module {
 	private static final long[] TIMING_FACTORS = {1, 1000, 60, 60, 24, 30, 365};
+	private static final Map<Integer, ExecutorService> pools = new ConcurrentHashMap<>();
 	static {
 		for (int i = 1; i < TIMING_FACTORS.length; i++) //This makes it so that each factor is how much the value in the corresponding timing field would have to be multiplied by to convert it to milliseconds
 			TIMING_FACTORS[i] *= TIMING_FACTORS[i - 1];
@@ -46,7 +60,6 @@ public class GRIBModule extends Module {
 	private volatile ScopedMap timestep, intermediate;
 	private Boolean wrap, useIncrementDuration;
 	private Integer maxConcurrentDownloads;
-	private volatile ExecutorService pool;
 	
 	/**
 	 * Initializes a new {@link GRIBModule} with the given {@code parameters} for the given {@link Simulation}
@@ -65,7 +78,6 @@ public class GRIBModule extends Module {
 		wrap = null;
 		useIncrementDuration = null;
 		maxConcurrentDownloads = null;
-		pool = null;
 	}
 	
 	/**
@@ -141,14 +153,8 @@ public class GRIBModule extends Module {
 		return maxConcurrentDownloads;
 	}
 	
-	private ExecutorService getPool() {
-		if (pool != null)
-			return pool;
-		synchronized (this) {
-			if (pool == null)
-				pool = Executors.newWorkStealingPool(getMaxConcurrentDownloads());
-		}
-		return pool;
+	private ExecutorService getPool() { //GRIBModules with the same download limit share a pool so that its threads are reused across cycles
+		return pools.computeIfAbsent(getMaxConcurrentDownloads(), Executors::newWorkStealingPool);
 	}
 	
 	@Override
@@ -212,30 +218,19 @@ public class GRIBModule extends Module {
 		if (getMaxConcurrentDownloads() < 1)
 			throw new IllegalArgumentException("max-concurrent-downloads must be greater than 0.");
 		
-		int[] offsets = new int[TIMING_FIELD_IDS.size()], steps = new int[TIMING_FIELD_IDS.size()];
-		Calendar constant = getTiming().getStart(), increment = (Calendar) getIncrementedTiming().getStart().clone();
-		Calendar end = useIncrementDuration() ? getIncrementedTiming().getEnd() : getSim().getTiming().getEnd();
-		if (increment.after(end)) {
+		ZonedDateTime increment = getIncrementedTiming().getStartTime();
+		ZonedDateTime end = useIncrementDuration() ? getIncrementedTiming().getEndTime() : getSim().getTiming().getEndTime();
+		if (increment.isAfter(end)) {
 			getLogger().info("increment (" + increment.toString() + ") starts after the Simulation's end time (" + end.toString() + "). No GRIB files will be downloaded.");
 			return;
 		}
-		
-		long stepLength = 0l;
-		for (int i = 0; i < TIMING_FIELD_IDS.size(); i++) {
-			offsets[i] = increment.get(TIMING_FIELD_IDS.get(i));
-			steps[i] = getTimestep().containsKey(TIMING_FIELD_NAMES.get(i)) ? evaluateToNumber(getTimestep().get(TIMING_FIELD_NAMES.get(i)), "timestep." + TIMING_FIELD_NAMES.get(i)).intValue() : 0;
-			stepLength += steps[i] * TIMING_FACTORS[i];
-		}
-		if (stepLength <= 0)
-			throw new IllegalArgumentException("The net step length must be greater than 0.");
+		Iterator<String> urls = generateURLs(getURL(), getTiming().getStartTime(), increment, end, getSteps(), shouldWrap()).iterator();
 		
 		CompletionService<Boolean> cpool = new ExecutorCompletionService<>(getPool());
-		final String preprocessedURL = preprocessIncrementedURL(getURL(), constant);
 		Set<Future<Boolean>> active = new HashSet<>();
-		//Initializing wasBefore to true allows us to avoid a do-while loop and support simulation start times that are offset from the increment start time
-		for (boolean wasBefore = true; wasBefore || active.size() > 0;) {
-			for (; active.size() < getMaxConcurrentDownloads() && wasBefore; wasBefore = increment.before(end), incrementOffsets(offsets, steps, increment))
-				active.add(cpool.submit(downloadGribFile(generateIncrementedURL(preprocessedURL, increment, offsets))));
+		while (urls.hasNext() || active.size() > 0) {
+			while (active.size() < getMaxConcurrentDownloads() && urls.hasNext())
+				active.add(cpool.submit(downloadGribFile(urls.next())));
 			if (active.size() > 0) {
 				Future<Boolean> future = cpool.take();
 				try {
@@ -255,14 +250,83 @@ public class GRIBModule extends Module {
 		}
 	}
 	
-	private final void incrementOffsets(int[] offsets, int[] steps, Calendar increment) {
-		for (int i = 0; i < offsets.length; i++) {
+	/**
+	 * @return the amount by which each timing field (in the order defined by {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES
+	 *         TIMING_FIELD_NAMES}) is incremented between GRIB files
+	 */
+	public int[] getSteps() {
+		int[] steps = new int[TIMING_FIELD_NAMES.size()];
+		for (int i = 0; i < steps.length; i++)
+			steps[i] = getTimestep().containsKey(TIMING_FIELD_NAMES.get(i)) ? evaluateToNumber(getTimestep().get(TIMING_FIELD_NAMES.get(i)), "timestep." + TIMING_FIELD_NAMES.get(i)).intValue() : 0;
+		return steps;
+	}
+	
+	/**
+	 * Generates the URLs of the GRIB files that this {@link GRIBModule} would download for each of the given base times (as passed to the
+	 * {@link Simulation Simulation's} global {@link Timing}) without constructing a {@link Simulation} for each of them.<br>
+	 * The base times are evaluated in parallel via {@link TimingBatch TimingBatches}, so this requires that the {@link Timing Timings} involved
+	 * are {@link toberumono.wrf.timing.ComputedTiming ComputedTimings}.
+	 * 
+	 * @param bases
+	 *            the base times
+	 * @return the URLs for each base time in the same order as {@code bases}
+	 * @throws IllegalArgumentException
+	 *             if any of the {@link Timing Timings} involved is not a {@link toberumono.wrf.timing.ComputedTiming ComputedTiming}
+	 */
+	public List<List<String>> generateURLs(Collection<ZonedDateTime> bases) {
+		TimingBatch constant = TimingBatch.of(getTiming()), incremented = TimingBatch.of(getIncrementedTiming());
+		TimingBatch reference = useIncrementDuration() ? incremented : TimingBatch.of(getSim().getTiming());
+		String url = getURL();
+		int[] steps = getSteps();
+		boolean wrap = shouldWrap();
+		return bases.parallelStream().map(base -> {
+			ZonedDateTime increment = incremented.evaluate(base).getStart(), end = reference.evaluate(base).getEnd();
+			return increment.isAfter(end) ? Collections.<String> emptyList() : generateURLs(url, constant.evaluate(base).getStart(), increment, end, steps, wrap);
+		}).collect(Collectors.toList());
+	}
+	
+	/**
+	 * Generates the URLs of the GRIB files for the given times.<br>
+	 * A URL is generated for every incremented time from {@code increment} up to and including the first one that is not before {@code end}.
+	 * 
+	 * @param url
+	 *            the base form of the URL (see {@link #getURL()})
+	 * @param constant
+	 *            the time used for the standard Java date/time markers in {@code url}
+	 * @param increment
+	 *            the first incremented time
+	 * @param end
+	 *            the time after which no more GRIB files are needed
+	 * @param steps
+	 *            the amount by which each timing field is incremented between GRIB files (see {@link #getSteps()})
+	 * @param wrap
+	 *            whether the incremented fields should wrap (see {@link #shouldWrap()})
+	 * @return the URLs of the GRIB files in order
+	 * @throws IllegalArgumentException
+	 *             if the net step length is not positive
+	 */
+	public static List<String> generateURLs(String url, ZonedDateTime constant, ZonedDateTime increment, ZonedDateTime end, int[] steps, boolean wrap) {
+		long stepLength = 0l;
+		for (int i = 0; i < steps.length; i++)
+			stepLength += steps[i] * TIMING_FACTORS[i];
+		if (stepLength <= 0)
+			throw new IllegalArgumentException("The net step length must be greater than 0.");
+		String preprocessedURL = preprocessIncrementedURL(url, TimingUtils.toCalendar(constant));
+		int[] offsets = TimingUtils.getFields(increment);
+		List<String> out = new ArrayList<>();
+		//Initializing wasBefore to true allows us to support simulation start times that are offset from the increment start time
+		for (boolean wasBefore = true; wasBefore; wasBefore = increment.isBefore(end), increment = incrementOffsets(offsets, steps, increment))
+			out.add(generateIncrementedURL(preprocessedURL, increment, offsets, wrap));
+		return out;
+	}
+	
+	private static final ZonedDateTime incrementOffsets(int[] offsets, int[] steps, ZonedDateTime increment) {
+		for (int i = 0; i < offsets.length; i++)
 			offsets[i] += steps[i];
-			increment.add(TIMING_FIELD_IDS.get(i), steps[i]);
-		}
+		return TimingUtils.add(increment, steps);
 	}
 	
-	private String preprocessIncrementedURL(String url, Calendar constant) {
+	private static String preprocessIncrementedURL(String url, Calendar constant) {
 		//Stores all mid-String escaped % signs and forces the formatter to use the first argument for all of the default date/time markers
 		String out = String.format(url.trim().replaceAll("(%%)(.)", "$1~$2").replaceAll("%[iI].", "%$0").replaceAll("%([\\Q-#+ 0,(\\E]*?[tT])", "%1\\$$1"), constant);
 		out = out.replaceAll("%[iI]L", "%1\\$03d").replaceAll("%[iI]q", "%1\\$d"); //Millisecond
@@ -276,10 +340,10 @@ public class GRIBModule extends Module {
 		return out.charAt(out.length() - 1) == '%' ? out + "%" : out; //Restores any terminating % signs
 	}
 	
-	private String generateIncrementedURL(String url, Calendar increment, int[] offsets) {
-		if (shouldWrap())
-			return String.format(url, increment.get(MILLISECOND), increment.get(SECOND), increment.get(MINUTE), increment.get(HOUR_OF_DAY), increment.get(Calendar.DAY_OF_MONTH),
-					increment.get(MONTH) + 1, increment.get(YEAR));
+	private static String generateIncrementedURL(String url, ZonedDateTime increment, int[] offsets, boolean wrap) {
+		if (wrap)
+			return String.format(url, TimingUtils.get(increment, TimingUtils.MILLISECONDS), increment.getSecond(), increment.getMinute(), increment.getHour(), increment.getDayOfMonth(),
+					increment.getMonthValue(), increment.getYear());
 		return String.format(url, offsets[0], offsets[1], offsets[2], offsets[3], offsets[4], offsets[5] + 1, offsets[6]);
 	}
 	
@@ -325,7 +389,8 @@ public class GRIBModule extends Module {
 	/**
 	 * Transfers a file from the given {@link URL} and places it in the grib directory.<br>
 	 * The filename used in the grib directory is the component of the url after the final '/' (
-	 * {@code name = url.substring(url.lastIndexOf('/') + 1)}).
+	 * {@code name = url.substring(url.lastIndexOf('/') + 1)}). If {@link Simulation#isGRIBCache()} is {@code true}, the file is downloaded into
+	 * the GRIB {@link ArtifactCache} (unless another {@link Simulation} already downloaded it) and linked into the grib directory from there.
 	 * 
 	 * @param url
 	 *            a {@link String} representation of the {@link URL} to transfer
@@ -334,21 +399,65 @@ public class GRIBModule extends Module {
 	 */
 	private Callable<Boolean> downloadGribFile(String url) {
 		return () -> {
-			Path dest = getSim().getActivePath(getName()).resolve(url.substring(url.lastIndexOf('/') + 1));
-			getLogger().info("Transferring: " + url + " -> " + dest.toString());
-			try (ReadableByteChannel rbc = Channels.newChannel(new URL(url).openStream()); FileOutputStream fos = new FileOutputStream(dest.toString());) {
-				fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
-				getLogger().fine("Completed Transfer: " + url + " -> " + dest.toString());
-				return true; //This makes it Callable
+			String name = url.substring(url.lastIndexOf('/') + 1);
+			Path grib = getSim().getActivePath(getName());
+			MetricsRegistry metrics = getSim().getMetrics();
+			MetricsRegistry.Timer timer = metrics.timer("wrf_runner_grib_download_seconds", "Time spent making GRIB files available (including cache hits)", "module", getName());
+			long start = timer.start();
+			try {
+				if (getSim().isGRIBCache())
+					ArtifactCache.linkInto(getSim().getArtifactCache("grib").get(url, directory -> transferFile(url, directory.resolve(name))), grib);
+				else
+					transferFile(url, grib.resolve(name));
 			}
-			catch (IOException e) {
-				getLogger().severe("Failed Transfer: " + url + " -> " + dest.toString());
-				getLogger().log(Level.FINE, e.getMessage(), e);
+			catch (IOException | InterruptedException | RuntimeException e) {
+				metrics.counter("wrf_runner_grib_failures_total", "GRIB files that could not be downloaded", "module", getName()).increment();
 				throw e;
 			}
+			finally {
+				timer.stop(start);
+				getSim().getTrace().record("download " + name, "grib", start, "url", url);
+			}
+			metrics.counter("wrf_runner_grib_files_total", "GRIB files made available (including cache hits)", "module", getName()).increment();
+			return true; //This makes it Callable
 		};
 	}
 	
+	private void transferFile(String url, Path dest) throws IOException {
+		getLogger().info("Transferring: " + url + " -> " + dest.toString());
+		try (ReadableByteChannel rbc = Channels.newChannel(new URL(url).openStream()); FileOutputStream fos = new FileOutputStream(dest.toString());) {
+			long bytes = fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
+			getSim().getMetrics().counter("wrf_runner_grib_bytes_total", "Bytes of GRIB data downloaded", "module", getName()).add(bytes);
+			getLogger().fine("Completed Transfer: " + url + " -> " + dest.toString());
+		}
+		catch (IOException e) {
+			getLogger().severe("Failed Transfer: " + url + " -> " + dest.toString());
+			getLogger().log(Level.FINE, e.getMessage(), e);
+			throw e;
+		}
+	}
+	
+	/**
+	 * @return 0 because downloading GRIB files is limited by the network rather than by the processor
+	 */
+	@Override
+	protected int getDefaultRequiredCores() {
+		return 0;
+	}
+	
+	@Override
+	protected String getDefaultIOClass() {
+		return IO_NETWORK;
+	}
+	
+	/**
+	 * @return {@link #getMaxConcurrentDownloads()}
+	 */
+	@Override
+	protected int getDefaultIOSlots() {
+		return getMaxConcurrentDownloads();
+	}
+	
 	@Override
 	public void cleanUp() throws IOException {/* This module doesn't perform any cleanup */}
 }
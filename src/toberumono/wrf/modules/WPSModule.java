@@ -1,14 +1,18 @@
 package toberumono.wrf.modules;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
 
 import toberumono.namelist.parser.Namelist;
 import toberumono.namelist.parser.NamelistNumber;
 import toberumono.namelist.parser.NamelistString;
+import toberumono.namelist.parser.NamelistValue;
 import toberumono.namelist.parser.NamelistValueList;
-import toberumono.utils.files.RecursiveEraser;
+import toberumono.wrf.ArtifactCache;
+import toberumono.wrf.CapturedProcess;
 import toberumono.wrf.Module;
 import toberumono.wrf.Simulation;
 import toberumono.wrf.WRFRunnerComponentFactory;
@@ -17,8 +21,6 @@ import toberumono.wrf.scope.ModuleScopedMap;
 import toberumono.wrf.scope.NamedScopeValue;
 import toberumono.wrf.scope.ScopedMap;
 
-import static toberumono.utils.general.ProcessBuilders.*;
-
 /**
  * Contains the logic for running WPS.
  * 
@@ -101,23 +103,71 @@ public class WPSModule extends Module {
 	
 	@Override
 	public void execute() throws IOException, InterruptedException {
-		ProcessBuilder wpsPB = makePB(getSim().getActivePath(getName()).toFile());
+		Path wps = getSim().getActivePath(getName());
 		String path = getSim().getActivePath("grib").toString();
 		if (!path.endsWith(System.getProperty("file.separator"))) //link_grib.csh requires that the path end with a '/'
 			path += System.getProperty("file.separator");
-		runPB(wpsPB, "./link_grib.csh", path);
+		runProcess(wps, null, "./link_grib.csh", path);
 		//Run ungrib and geogrid in parallel
-		wpsPB.command(Parallel.makeSerialCommand("./ungrib.exe", "./ungrib.log"));
-		Process ungrib = wpsPB.start();
-		runPB(wpsPB, getParallel().makeCommand("./geogrid.exe", "./geogrid.log"));
-		ungrib.waitFor();
-		runPB(wpsPB, getParallel().makeCommand("./metgrid.exe", "./metgrid.log"));
+		CapturedProcess ungrib = startProcess(wps, "./ungrib.log", Parallel.makeSerialCommand("./ungrib.exe"));
+		if (getSim().isGeogridCache()) //geogrid's output only depends on the domains, so it can be shared by every Simulation with the same domains
+			ArtifactCache.linkInto(getSim().getArtifactCache("geogrid").get(getGeogridKey(), directory -> {
+				runProcess(wps, "./geogrid.log", getParallel(), "./geogrid.exe", getParallel().getNumProcessors());
+				int count = 0;
+				try (DirectoryStream<Path> outputs = Files.newDirectoryStream(wps, "geo_*")) {
+					for (Path output : outputs) {
+						Files.move(output, directory.resolve(output.getFileName().toString()));
+						count++;
+					}
+				}
+				if (count == 0)
+					throw new IOException("geogrid.exe did not produce any output in " + wps);
+			}), wps);
+		else
+			runProcess(wps, "./geogrid.log", getParallel(), "./geogrid.exe", getParallel().getNumProcessors());
+		waitForProcess(ungrib);
+		runProcess(wps, "./metgrid.log", getParallel(), "./metgrid.exe", getParallel().getNumProcessors());
+	}
+	
+	/**
+	 * @return a key that identifies the output of geogrid.exe. It is built from the WPS installation and every field in the {@link Namelist}
+	 *         that geogrid.exe reads except for the dates and output paths
+	 * @throws IOException
+	 *             if an I/O error occurs while loading the {@link Namelist}
+	 */
+	protected String getGeogridKey() throws IOException {
+		StringBuilder key = new StringBuilder(getSim().getSourcePath(getName()).toString());
+		for (String section : new String[]{"share", "geogrid"}) {
+			for (Map.Entry<String, NamelistValueList<?>> field : getNamelist().get(section).entrySet()) {
+				if (field.getKey().contains("date") || field.getKey().startsWith("interval") || field.getKey().startsWith("opt_output"))
+					continue;
+				key.append('\n').append(section).append('.').append(field.getKey()).append('=');
+				for (NamelistValue<?> value : field.getValue())
+					key.append(value.value()).append(',');
+			}
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * @return {@link Parallel#getCores()} for the {@link #getParallel() Parallel} instance used by geogrid.exe and metgrid.exe
+	 */
+	@Override
+	protected int getDefaultRequiredCores() {
+		return getParallel().getCores();
+	}
+	
+	/**
+	 * @return {@link #IO_DISK} because ungrib.exe and metgrid.exe spend most of their time reading and writing large files
+	 */
+	@Override
+	protected String getDefaultIOClass() {
+		return IO_DISK;
 	}
 	
 	@Override
 	public void cleanUp() throws IOException {
-		RecursiveEraser re = new RecursiveEraser();
-		Files.walkFileTree(getSim().getActivePath(getName()), re);
-		Files.walkFileTree(getSim().getActivePath("grib"), re);
+		getSim().erase(getSim().getActivePath(getName()));
+		getSim().erase(getSim().getActivePath("grib"));
 	}
 }
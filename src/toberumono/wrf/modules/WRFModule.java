@@ -1,36 +1,57 @@
 package toberumono.wrf.modules;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
 import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
+import toberumono.namelist.parser.Namelist;
+import toberumono.namelist.parser.NamelistBoolean;
 import toberumono.namelist.parser.NamelistNumber;
 import toberumono.namelist.parser.NamelistSection;
 import toberumono.namelist.parser.NamelistValueList;
-import toberumono.utils.files.RecursiveEraser;
 import toberumono.utils.files.TransferFileWalker;
 import toberumono.wrf.Module;
+import toberumono.wrf.OutputWatcher;
 import toberumono.wrf.Simulation;
 import toberumono.wrf.WRFRunnerComponentFactory;
+import toberumono.wrf.components.parallel.HybridParallel;
 import toberumono.wrf.components.parallel.Parallel;
+import toberumono.wrf.modules.DecompositionTuner.Decomposition;
 import toberumono.wrf.scope.ModuleScopedMap;
 import toberumono.wrf.scope.NamedScopeValue;
 import toberumono.wrf.scope.ScopedMap;
 
-import static toberumono.utils.general.ProcessBuilders.*;
-
 /**
  * Contains the logic for running WRF.
  * 
  * @author Toberumono
  */
 public class WRFModule extends Module {
+	private static final Pattern wrfoutStream = Pattern.compile("^(wrfout_d\\d+)_.*");
+	private static final Pattern wrfoutTime = Pattern.compile("^wrfout_d\\d+_(\\d{4}-\\d{2}-\\d{2}_\\d{2}[:_]\\d{2}[:_]\\d{2}).*");
+	private static final Pattern wrfrstFile = Pattern.compile("^wrfrst_d(\\d+)_(\\d{4})-(\\d{2})-(\\d{2})_(\\d{2})[:_](\\d{2})[:_](\\d{2})$");
 	private static final String[] timeCodes = {"days", "hours", "minutes", "seconds"};
 	private static final int[] calendarCodes = {Calendar.DAY_OF_MONTH, Calendar.HOUR_OF_DAY, Calendar.MINUTE, Calendar.SECOND};
 	private static final int[] timeCodeMultipliers = {0, 24, 60, 60};
 	private volatile Parallel parallel;
+	private volatile WRFProgressMonitor progress;
+	private volatile DecompositionTuner tuner;
+	private volatile Decomposition decomposition;
+	private Boolean autoDecomposition;
+	private Integer restartInterval, maxRestarts;
 	
 	/**
 	 * Initializes a new {@link WRFModule} with the given {@code parameters} for the given {@link Simulation}
@@ -43,6 +64,12 @@ public class WRFModule extends Module {
 	public WRFModule(ModuleScopedMap parameters, Simulation sim) {
 		super(parameters, sim);
 		parallel = null;
+		progress = null;
+		tuner = null;
+		decomposition = null;
+		autoDecomposition = null;
+		restartInterval = null;
+		maxRestarts = null;
 	}
 	
 	/**
@@ -61,6 +88,110 @@ public class WRFModule extends Module {
 		return parallel;
 	}
 	
+	/**
+	 * @return {@code true} iff the number of processes and their layout should be chosen by the {@link #getTuner() DecompositionTuner}. This is
+	 *         controlled by the "auto-decomposition" field in the module's "configuration" section and defaults to {@code false}
+	 */
+	@NamedScopeValue("auto-decomposition")
+	public Boolean isAutoDecomposition() {
+		if (autoDecomposition != null)
+			return autoDecomposition;
+		synchronized (this) {
+			if (autoDecomposition == null) {
+				ScopedMap configuration = (ScopedMap) getParameters().get("configuration");
+				autoDecomposition = configuration.containsKey("auto-decomposition") ? (Boolean) configuration.get("auto-decomposition") : false;
+			}
+		}
+		return autoDecomposition;
+	}
+	
+	/**
+	 * @return the {@link DecompositionTuner} for the domains in the {@link WRFModule WRFModule's} {@link Namelist}. Its minimum patch size is
+	 *         read from the "min-patch-size" field in the module's "configuration" section, and its measurements are stored in the root working
+	 *         directory
+	 * @throws IOException
+	 *             if the {@link Namelist} could not be read
+	 */
+	public DecompositionTuner getTuner() throws IOException {
+		if (tuner != null)
+			return tuner;
+		synchronized (this) {
+			if (tuner == null) {
+				NamelistSection domains = getNamelist().get("domains");
+				int[] eWE = new int[getSim().getDoms()], eSN = new int[getSim().getDoms()];
+				for (int i = 0; i < eWE.length; i++) {
+					eWE[i] = ((Number) domains.get("e_we").get(i).value()).intValue();
+					eSN[i] = ((Number) domains.get("e_sn").get(i).value()).intValue();
+				}
+				ScopedMap configuration = (ScopedMap) getParameters().get("configuration");
+				int minPatchSize = configuration.containsKey("min-patch-size") ? ((Number) configuration.get("min-patch-size")).intValue()
+						: DecompositionTuner.DEFAULT_MIN_PATCH_SIZE;
+				tuner = new DecompositionTuner(eWE, eSN, minPatchSize, getSim().getWorkingRoot().resolve(".decomposition.json"));
+			}
+		}
+		return tuner;
+	}
+	
+	/**
+	 * @return the {@link Decomposition} chosen for the current run or {@code null} if {@link #isAutoDecomposition()} is {@code false} or the
+	 *         {@link Namelist} has not been updated yet
+	 */
+	public Decomposition getDecomposition() {
+		return decomposition;
+	}
+	
+	/**
+	 * @return the interval, in minutes, at which WRF should write restart files or a value less than 1 if restart files should not be used.
+	 *         This is controlled by the "restart-interval" field in the module's "configuration" section and defaults to 0
+	 */
+	@NamedScopeValue("restart-interval")
+	public Integer getRestartInterval() {
+		if (restartInterval != null)
+			return restartInterval;
+		synchronized (this) {
+			if (restartInterval == null) {
+				ScopedMap configuration = (ScopedMap) getParameters().get("configuration");
+				restartInterval = configuration.containsKey("restart-interval") ? ((Number) configuration.get("restart-interval")).intValue() : 0;
+			}
+		}
+		return restartInterval;
+	}
+	
+	/**
+	 * @return the maximum number of times that a failed run of wrf.exe should be resumed from its restart files. This is controlled by the
+	 *         "max-restarts" field in the module's "configuration" section and defaults to 1
+	 */
+	@NamedScopeValue("max-restarts")
+	public Integer getMaxRestarts() {
+		if (maxRestarts != null)
+			return maxRestarts;
+		synchronized (this) {
+			if (maxRestarts == null) {
+				ScopedMap configuration = (ScopedMap) getParameters().get("configuration");
+				maxRestarts = configuration.containsKey("max-restarts") ? ((Number) configuration.get("max-restarts")).intValue() : 1;
+			}
+		}
+		return maxRestarts;
+	}
+	
+	/**
+	 * @return the {@link WRFProgressMonitor} for the current (or most recent) run of wrf.exe or {@code null} if wrf.exe has not been started
+	 */
+	public WRFProgressMonitor getProgress() {
+		return progress;
+	}
+	
+	/**
+	 * @return the number of cores used by wrf.exe. If the {@link #getTuner() DecompositionTuner} chose the number of processes, this is that
+	 *         number multiplied by the number of threads per process. Otherwise, it is {@link Parallel#getCores()}
+	 */
+	@Override
+	protected int getDefaultRequiredCores() {
+		if (decomposition == null)
+			return getParallel().getCores();
+		return decomposition.getProcesses() * (getParallel() instanceof HybridParallel ? ((HybridParallel) getParallel()).getThreadsPerRank() : 1);
+	}
+	
 	@Override
 	@SuppressWarnings("unchecked")
 	public void updateNamelist() throws IOException {
@@ -108,30 +239,182 @@ public class WRFModule extends Module {
 		for (int i = 0; i < timeCodes.length; i++)
 			if (tc.containsKey("run_" + timeCodes[i]))
 				((NamelistValueList<NamelistNumber>) tc.get("run_" + timeCodes[i])).set(0, new NamelistNumber(runDuration[i]));
+		if (getRestartInterval() > 0) {
+			NamelistValueList<NamelistNumber> interval = new NamelistValueList<>();
+			interval.add(new NamelistNumber(getRestartInterval()));
+			tc.put("restart_interval", interval);
+			NamelistValueList<NamelistBoolean> restart = new NamelistValueList<>();
+			restart.add(new NamelistBoolean(false));
+			tc.put("restart", restart);
+		}
+		if (isAutoDecomposition() && getParallel().isParallel()) {
+			ScopedMap parallel = (ScopedMap) ((ScopedMap) getParameters().get("configuration")).get("parallel");
+			//An explicit processor count is treated as an upper bound
+			int threads = getParallel() instanceof HybridParallel ? ((HybridParallel) getParallel()).getThreadsPerRank() : 1; //Each rank needs a core per thread
+			decomposition = getTuner().choose(parallel.containsKey("processors") ? getParallel().getNumProcessors() : Runtime.getRuntime().availableProcessors() / threads);
+			getLogger().info("Using a " + decomposition + " decomposition for wrf.exe");
+			NamelistValueList<NamelistNumber> nprocX = new NamelistValueList<>(), nprocY = new NamelistValueList<>();
+			nprocX.add(new NamelistNumber(decomposition.getNprocX()));
+			nprocY.add(new NamelistNumber(decomposition.getNprocY()));
+			getNamelist().get("domains").put("nproc_x", nprocX);
+			getNamelist().get("domains").put("nproc_y", nprocY);
+		}
+	}
+	
+	/**
+	 * Finds the latest time for which there is a restart file for every domain in the given directory.<br>
+	 * <b>Note:</b> This assumes that the restart files that are present are complete.
+	 * 
+	 * @param run
+	 *            the directory in which wrf.exe is run
+	 * @return the latest time for which there is a restart file for every domain or {@code null} if there is no such time
+	 * @throws IOException
+	 *             if the directory could not be listed
+	 */
+	protected Calendar findRestartPoint(Path run) throws IOException {
+		TreeMap<Calendar, Set<Integer>> domains = new TreeMap<>();
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(run, "wrfrst_d*")) {
+			for (Path child : children) {
+				Matcher m = wrfrstFile.matcher(child.getFileName().toString());
+				if (!m.matches())
+					continue;
+				Calendar time = (Calendar) getTiming().getStart().clone();
+				time.set(Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)) - 1, Integer.parseInt(m.group(4)), Integer.parseInt(m.group(5)),
+						Integer.parseInt(m.group(6)), Integer.parseInt(m.group(7)));
+				time.set(Calendar.MILLISECOND, 0);
+				domains.computeIfAbsent(time, t -> new HashSet<>()).add(Integer.parseInt(m.group(1)));
+			}
+		}
+		for (Map.Entry<Calendar, Set<Integer>> e : domains.descendingMap().entrySet())
+			if (e.getValue().size() >= getSim().getDoms() && e.getKey().after(getTiming().getStart()))
+				return e.getKey();
+		return null;
+	}
+	
+	/**
+	 * Rewrites the "time_control" section of the {@link WRFModule WRFModule's} {@link Namelist} so that wrf.exe resumes from the restart files
+	 * for the given time.
+	 * 
+	 * @param restartPoint
+	 *            the time of the restart files from which wrf.exe should resume
+	 * @throws IOException
+	 *             if the {@link Namelist} could not be written
+	 */
+	@SuppressWarnings("unchecked")
+	protected void prepareRestart(Calendar restartPoint) throws IOException {
+		NamelistSection tc = getNamelist().get("time_control");
+		for (int i = 0; i < timeCodes.length; i++) //run_* takes precedence over end_* and is relative to the start time, so we have to clear it
+			if (tc.containsKey("run_" + timeCodes[i]))
+				((NamelistValueList<NamelistNumber>) tc.get("run_" + timeCodes[i])).set(0, new NamelistNumber(0));
+		String[] fields = {"start_year", "start_month", "start_day", "start_hour", "start_minute", "start_second"};
+		int[] values = {restartPoint.get(Calendar.YEAR), restartPoint.get(Calendar.MONTH) + 1, restartPoint.get(Calendar.DAY_OF_MONTH),
+				restartPoint.get(Calendar.HOUR_OF_DAY), restartPoint.get(Calendar.MINUTE), restartPoint.get(Calendar.SECOND)};
+		for (int f = 0; f < fields.length; f++) {
+			NamelistValueList<NamelistNumber> list = new NamelistValueList<>();
+			for (int i = 0; i < getSim().getDoms(); i++)
+				list.add(new NamelistNumber(values[f]));
+			tc.put(fields[f], list);
+		}
+		NamelistValueList<NamelistBoolean> restart = new NamelistValueList<>();
+		restart.add(new NamelistBoolean(true));
+		tc.put("restart", restart);
+		writeNamelist();
+		getLogger().info("Resuming WRF from the restart files for " + Simulation.makeWPSDateString(restartPoint));
+	}
+	
+	/**
+	 * Deletes the wrfout files for times at or after the given restart point from the run directory and the {@link Simulation Simulation's}
+	 * working directory, and makes the given {@link OutputWatcher} forget them. wrf.exe rewrites those files when it resumes from the restart
+	 * point, so this ensures that the rewritten files are moved into the working directory and reported like any other output.
+	 * 
+	 * @param run
+	 *            the directory in which wrf.exe is run
+	 * @param restartPoint
+	 *            the time of the restart files from which wrf.exe will resume
+	 * @param outputs
+	 *            the {@link OutputWatcher} that moves the wrfout files out of {@code run}
+	 * @throws IOException
+	 *             if an I/O error occurs while deleting the files
+	 */
+	protected void discardOutputsFrom(Path run, Calendar restartPoint, OutputWatcher outputs) throws IOException {
+		String from = Simulation.makeWPSDateString(restartPoint).replace(':', '_');
+		Predicate<Path> rewritten = p -> {
+			Matcher m = wrfoutTime.matcher(p.getFileName().toString().toLowerCase());
+			return m.matches() && m.group(1).replace(':', '_').compareTo(from) >= 0; //The timestamps have a fixed width, so they sort lexicographically
+		};
+		for (Path directory : new Path[]{run, getSim().getWorkingPath()})
+			try (DirectoryStream<Path> children = Files.newDirectoryStream(directory, p -> rewritten.test(p))) {
+				for (Path child : children)
+					Files.deleteIfExists(child);
+			}
+		outputs.forget(rewritten);
+	}
+	
+	private boolean succeeded(Path run, int exit) throws IOException {
+		if (exit != 0)
+			return false;
+		Path rsl = run.resolve("rsl.out.0000");
+		if (Files.exists(rsl)) {
+			try (Stream<String> lines = Files.lines(rsl, StandardCharsets.ISO_8859_1)) {
+				return lines.anyMatch(l -> l.contains("SUCCESS COMPLETE WRF"));
+			}
+		}
+		return !getLastProcess().search(l -> l.contains("SUCCESS COMPLETE WRF")).isEmpty();
 	}
 	
 	@Override
 	public void execute() throws IOException, InterruptedException {
 		Path run = getSim().getActivePath(getName()).resolve("run");
-		ProcessBuilder wrfPB = makePB(run.toFile());
-		runPB(wrfPB, Parallel.makeSerialCommand("./real.exe", "./real.log")); //Same basic command, but we don't want it to run in parallel
+		Calendar resume = getRestartInterval() > 0 ? findRestartPoint(run) : null;
+		if (resume != null) //A previous attempt got far enough to write restart files, so there is no need to re-run real.exe
+			prepareRestart(resume);
+		else
+			runProcess(run, "./real.log", Parallel.makeSerialCommand("./real.exe")); //Same basic command, but we don't want it to run in parallel
+		//Each wrfout file is moved to the output directory as soon as WRF starts writing the next one for the same domain
+		OutputWatcher outputs = new OutputWatcher(run, getSim().getWorkingPath(), p -> {
+			Matcher m = wrfoutStream.matcher(p.getFileName().toString().toLowerCase());
+			return m.matches() ? m.group(1) : null;
+		}, WRFModule::replace, (original, moved) -> getSim().fireOutputCompleted(this, moved), getLogger());
+		//rsl.out.0000 is only written when WRF is run via MPI. Otherwise, the timing lines are in wrf.log
+		progress = new WRFProgressMonitor(getTiming().getStart(), getTiming().getEnd(), getLogger(), run.resolve("rsl.out.0000"), run.resolve("wrf.log"));
 		try {
-			runPB(wrfPB, getParallel().makeCommand("./wrf.exe", "./wrf.log"));
-		}
-		catch (IOException | InterruptedException e) {
-			throw e;
-		}
-		catch (Throwable t) {
-			getLogger().log(Level.SEVERE, "WRF error", t);
+			for (int restarts = 0;; restarts++) {
+				int exit = runProcess(run, "./wrf.log", getParallel(), "./wrf.exe", decomposition != null ? decomposition.getProcesses() : getParallel().getNumProcessors());
+				if (succeeded(run, exit))
+					break;
+				Calendar restartPoint = getRestartInterval() > 0 && restarts < getMaxRestarts() ? findRestartPoint(run) : null;
+				if (restartPoint == null)
+					throw new IOException("WRF exited with " + exit + " and could not be resumed");
+				getSim().getMetrics().counter("wrf_runner_wrf_restarts_total", "Times that wrf.exe was resumed from restart files after failing", "module", getName()).increment();
+				discardOutputsFrom(run, restartPoint, outputs);
+				prepareRestart(restartPoint);
+			}
 		}
 		finally {
-			//Move the wrfout files to the output directory
-			Files.walkFileTree(run, new TransferFileWalker(getSim().getWorkingPath(), Files::move, p -> p.getFileName().toString().toLowerCase().startsWith("wrfout"), p -> true, null, null, false));
+			progress.close();
+			if (progress.getSimulatedSecondsPerSecond() > 0)
+				getSim().getMetrics().histogram("wrf_runner_wrf_simulated_seconds_per_second", "Simulated seconds per wall-clock second achieved by wrf.exe",
+						new double[]{1, 5, 10, 30, 60, 120, 300, 600, 1200}, "module", getName()).observe(progress.getSimulatedSecondsPerSecond());
+			if (decomposition != null) {
+				try {
+					getTuner().record(decomposition.getProcesses(), progress.getSimulatedSecondsPerSecond());
+				}
+				catch (IOException e) {
+					getLogger().log(Level.WARNING, "Unable to record the throughput of the " + decomposition + " decomposition", e);
+				}
+			}
+			outputs.close();
+			//Move any remaining wrfout files to the output directory
+			Files.walkFileTree(run, new TransferFileWalker(getSim().getWorkingPath(), WRFModule::replace, p -> p.getFileName().toString().toLowerCase().startsWith("wrfout"), p -> true, null, null, false));
 		}
 	}
 	
+	private static Path replace(Path source, Path target) throws IOException { //Files rewritten after a restart replace the copies from the failed attempt
+		return Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+	}
+	
 	@Override
 	public void cleanUp() throws IOException {
-		Files.walkFileTree(getSim().getActivePath(getName()), new RecursiveEraser());
+		getSim().erase(getSim().getActivePath(getName()));
 	}
 }
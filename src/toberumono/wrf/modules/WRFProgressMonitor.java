@@ -0,0 +1,197 @@
+package toberumono.wrf.modules;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Follows the output of a running wrf.exe and reports its progress.<br>
+ * Each watched file (e.g. rsl.out.0000) is read incrementally from the position at which the previous read stopped, and the
+ * "Timing for main" lines for the outermost domain are parsed to track the current model time. From that, the {@link WRFProgressMonitor}
+ * computes the fraction of the simulation that has been completed, the number of simulated seconds per wall-clock second, and an estimate of
+ * the remaining wall-clock time, which are logged periodically and available through the accessor methods.
+ * 
+ * @author Toberumono
+ */
+public class WRFProgressMonitor implements AutoCloseable {
+	private static final Pattern TIMING_LINE = Pattern.compile("Timing for main: time (\\d{4}-\\d{2}-\\d{2}_\\d{2}:\\d{2}:\\d{2}) on domain\\s+(\\d+):\\s+([\\d.]+) elapsed seconds");
+	private static final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "WRFProgressMonitor");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final long POLL_INTERVAL = 5, LOG_INTERVAL = 60000;
+	
+	private final Map<Path, Long> positions;
+	private final Map<Path, StringBuilder> partialLines;
+	private final long start, end;
+	private final Logger logger;
+	private final SimpleDateFormat dateFormat;
+	private final ScheduledFuture<?> polling;
+	private long firstModelTime, firstWallTime, modelTime, wallTime, lastLogged;
+	private double lastStepSeconds;
+	private boolean started;
+	
+	/**
+	 * Constructs a new {@link WRFProgressMonitor} and starts following the given files.
+	 * 
+	 * @param start
+	 *            the start time of the simulation
+	 * @param end
+	 *            the end time of the simulation
+	 * @param logger
+	 *            the {@link Logger} to which progress should be reported
+	 * @param files
+	 *            the files to follow. These do not need to exist yet
+	 */
+	public WRFProgressMonitor(Calendar start, Calendar end, Logger logger, Path... files) {
+		this.start = start.getTimeInMillis();
+		this.end = end.getTimeInMillis();
+		this.logger = logger;
+		positions = new LinkedHashMap<>();
+		partialLines = new LinkedHashMap<>();
+		for (Path file : files) {
+			positions.put(file, 0L);
+			partialLines.put(file, new StringBuilder());
+		}
+		dateFormat = new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss");
+		dateFormat.setTimeZone(start.getTimeZone());
+		firstModelTime = modelTime = this.start;
+		firstWallTime = wallTime = lastLogged = System.currentTimeMillis();
+		lastStepSeconds = Double.NaN;
+		started = false;
+		polling = poller.scheduleWithFixedDelay(this::poll, POLL_INTERVAL, POLL_INTERVAL, TimeUnit.SECONDS);
+	}
+	
+	private synchronized void poll() {
+		for (Map.Entry<Path, Long> e : positions.entrySet()) {
+			if (!Files.exists(e.getKey()))
+				continue;
+			try (SeekableByteChannel channel = Files.newByteChannel(e.getKey())) {
+				if (channel.size() < e.getValue()) { //The file was replaced, so we start over
+					e.setValue(0L);
+					partialLines.get(e.getKey()).setLength(0);
+				}
+				channel.position(e.getValue());
+				ByteBuffer buffer = ByteBuffer.allocate(8192);
+				StringBuilder line = partialLines.get(e.getKey());
+				for (int read = channel.read(buffer); read > 0; read = channel.read(buffer)) {
+					buffer.flip();
+					for (CharBuffer chars = StandardCharsets.ISO_8859_1.decode(buffer); chars.hasRemaining();) {
+						char c = chars.get();
+						if (c == '\n') {
+							parse(line);
+							line.setLength(0);
+						}
+						else
+							line.append(c);
+					}
+					buffer.clear();
+				}
+				e.setValue(channel.position());
+			}
+			catch (IOException ex) {
+				logger.log(Level.FINE, "Unable to read " + e.getKey(), ex);
+			}
+		}
+		long now = System.currentTimeMillis();
+		if (now - lastLogged >= LOG_INTERVAL) {
+			lastLogged = now;
+			logger.info(toString());
+		}
+	}
+	
+	private void parse(CharSequence line) {
+		Matcher m = TIMING_LINE.matcher(line);
+		if (!m.find() || !m.group(2).equals("1")) //The outermost domain determines how far along the simulation is
+			return;
+		try {
+			Date time = dateFormat.parse(m.group(1));
+			if (started && time.getTime() <= modelTime) //The same lines can appear in multiple files
+				return;
+			modelTime = time.getTime();
+			wallTime = System.currentTimeMillis();
+			if (!started) { //Throughput is measured from the first step so that the startup time is excluded
+				started = true;
+				firstModelTime = modelTime;
+				firstWallTime = wallTime;
+			}
+			lastStepSeconds = Double.parseDouble(m.group(3));
+		}
+		catch (ParseException | NumberFormatException e) {
+			logger.log(Level.FINE, "Unable to parse timing line: " + line, e);
+		}
+	}
+	
+	/**
+	 * @return the most recent model time reported by WRF in milliseconds since the epoch
+	 */
+	public synchronized long getModelTime() {
+		return modelTime;
+	}
+	
+	/**
+	 * @return the fraction of the simulation that has been completed (between 0 and 1)
+	 */
+	public synchronized double getFractionComplete() {
+		return end > start ? Math.min(1.0, Math.max(0.0, (modelTime - start) / (double) (end - start))) : 1.0;
+	}
+	
+	/**
+	 * @return the number of simulated seconds per wall-clock second since the first step or {@link Double#NaN} if that cannot be computed yet
+	 */
+	public synchronized double getSimulatedSecondsPerSecond() {
+		return wallTime > firstWallTime ? (modelTime - firstModelTime) / (double) (wallTime - firstWallTime) : Double.NaN;
+	}
+	
+	/**
+	 * @return the estimated number of wall-clock seconds until the simulation completes or {@link Double#NaN} if that cannot be computed yet
+	 */
+	public synchronized double getEstimatedSecondsRemaining() {
+		double rate = getSimulatedSecondsPerSecond();
+		return rate > 0 ? (end - modelTime) / 1000.0 / rate : Double.NaN;
+	}
+	
+	/**
+	 * @return the elapsed seconds reported for the most recent step on the outermost domain or {@link Double#NaN} if no steps have been reported
+	 */
+	public synchronized double getLastStepSeconds() {
+		return lastStepSeconds;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		double eta = getEstimatedSecondsRemaining();
+		return String.format("WRF at %s (%.1f%%), %.2f simulated s/s, %.3f s/step, ETA %s", dateFormat.format(new Date(modelTime)), getFractionComplete() * 100,
+				getSimulatedSecondsPerSecond(), getLastStepSeconds(), Double.isNaN(eta) ? "unknown"
+						: String.format("%d:%02d:%02d", (long) eta / 3600, ((long) eta / 60) % 60, (long) eta % 60));
+	}
+	
+	/**
+	 * Stops following the files after reading any remaining output and logs the final progress.
+	 */
+	@Override
+	public void close() {
+		polling.cancel(false);
+		poll();
+		logger.info(toString());
+	}
+}
@@ -1,12 +1,12 @@
 package toberumono.wrf.scope;
 
+import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-import toberumono.utils.functions.ExceptedSupplier;
-
 /**
  * An implementation of {@link Scope} that works with the {@link NamedScopeValue} annotation to simplify the process of adding values to a
  * {@link Scope}.
@@ -16,8 +16,44 @@ import toberumono.utils.functions.ExceptedSupplier;
  *            the type of the parent {@link Scope}
  */
 public class AbstractScope<T extends Scope> implements Scope {
+	/**
+	 * The named values of each type. The reflective scan only depends on the type, so it is performed once per type rather than once per instance.
+	 */
+	private static final ClassValue<Map<String, NamedMember>> namedMembers = new ClassValue<Map<String, NamedMember>>() {
+		@Override
+		protected Map<String, NamedMember> computeValue(Class<?> type) {
+			Map<String, NamedMember> out = new HashMap<>();
+			for (Field f : type.getFields())
+				addIfNamed(out, f, null);
+			for (Field f : type.getDeclaredFields()) //Second pass is to allow names declared in the current type to override those declared in its supertypes
+				addIfNamed(out, f, null);
+			for (Method m : type.getMethods())
+				addIfNamed(out, null, m);
+			for (Method m : type.getDeclaredMethods()) //Second pass is to allow names declared in the current type to override those declared in its supertypes
+				addIfNamed(out, null, m);
+			return Collections.unmodifiableMap(out);
+		}
+	};
+	
 	private final T parent;
-	private final Map<String, ExceptedSupplier<Object>> namedItems;
+	private final Map<String, NamedMember> namedItems;
+	
+	private static class NamedMember {
+		private final Field field;
+		private final Method method;
+		private final boolean asString;
+		
+		private NamedMember(Field field, Method method, boolean asString) {
+			this.field = field;
+			this.method = method;
+			this.asString = asString;
+		}
+		
+		private Object get(Object instance) throws Throwable {
+			Object out = field != null ? field.get(instance) : method.invoke(instance);
+			return asString && out != null ? out.toString() : out;
+		}
+	}
 	
 	/**
 	 * Constructs the {@link AbstractScope} and builds the scopes variable table from fields and methods annotated with {@link NamedScopeValue}.
@@ -27,38 +63,19 @@ public class AbstractScope<T extends Scope> implements Scope {
 	 */
 	public AbstractScope(T parent) {
 		this.parent = parent;
-		namedItems = new HashMap<>();
-		for (Field f : getClass().getFields())
-			addFieldIfNamed(f);
-		for (Field f : getClass().getDeclaredFields()) //Second pass is to allow names declared in the current type to override those declared in its supertypes
-			addFieldIfNamed(f);
-		for (Method m : getClass().getMethods())
-			addMethodIfNamed(m);
-		for (Method m : getClass().getDeclaredMethods()) //Second pass is to allow names declared in the current type to override those declared in its supertypes
-			addMethodIfNamed(m);
+		namedItems = namedMembers.get(getClass());
 	}
 	
-	private void addFieldIfNamed(Field f) {
-		NamedScopeValue nsv = f.getAnnotation(NamedScopeValue.class);
+	private static void addIfNamed(Map<String, NamedMember> namedItems, Field f, Method m) {
+		AccessibleObject member = f != null ? f : m;
+		NamedScopeValue nsv = member.getAnnotation(NamedScopeValue.class);
 		if (nsv != null) {
-			f.setAccessible(true);
-			addNamedValue(nsv, nsv.asString() ? () -> (f.get(this) != null ? f.get(this).toString() : null) : () -> f.get(this));
+			member.setAccessible(true);
+			for (String name : nsv.value())
+				namedItems.put(name, new NamedMember(f, m, nsv.asString()));
 		}
 	}
 	
-	private void addMethodIfNamed(Method m) {
-		NamedScopeValue nsv = m.getAnnotation(NamedScopeValue.class);
-		if (nsv != null) {
-			m.setAccessible(true);
-			addNamedValue(nsv, nsv.asString() ? () -> (m.invoke(this) != null ? m.invoke(this).toString() : null) : () -> m.invoke(this));
-		}
-	}
-	
-	private void addNamedValue(NamedScopeValue nsv, ExceptedSupplier<Object> supplier) {
-		for (String name : nsv.value())
-			namedItems.put(name, supplier);
-	}
-	
 	@Override
 	public T getParent() {
 		return parent;
@@ -73,7 +90,7 @@ public class AbstractScope<T extends Scope> implements Scope {
 	public Object getValueByName(String name) throws InvalidVariableAccessException {
 		try {
 			if (namedItems.containsKey(name))
-				return namedItems.get(name).get();
+				return namedItems.get(name).get(this);
 			else
 				throw new InvalidVariableAccessException("'" + name + "' does not exist in the current scope.");
 		}
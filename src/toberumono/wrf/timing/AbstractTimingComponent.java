@@ -1,5 +1,6 @@
 package toberumono.wrf.timing;
 
+import java.time.ZonedDateTime;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
@@ -20,7 +21,8 @@ import static toberumono.wrf.SimulationConstants.TIMING_FIELD_NAMES;
  * @author Toberumono
  */
 public abstract class AbstractTimingComponent extends LoggedScopedComponent<Scope> implements TimingComponent {
-	private boolean computed;
+	private volatile boolean computed;
+	private volatile CompiledTimingComponent compiled;
 	
 	/**
 	 * Constructs a new {@link AbstractTimingComponent}.
@@ -38,16 +40,35 @@ public abstract class AbstractTimingComponent extends LoggedScopedComponent<Scop
 	
 	@Override
 	public Calendar apply(Calendar base, boolean inPlace) {
-		Calendar out = inPlace ? base : (Calendar) base.clone();
-		if (computed)
-			return doApply(out);
+		return TimingUtils.toCalendar(apply(TimingUtils.toZonedDateTime(base)), base, inPlace);
+	}
+	
+	@Override
+	public ZonedDateTime apply(ZonedDateTime base) {
+		if (!computed) //Once the component has been computed, applying it does not require synchronization
+			ensureComputed();
+		return doApply(base);
+	}
+	
+	@Override
+	public CompiledTimingComponent compile() {
+		if (compiled != null)
+			return compiled;
+		ensureComputed();
+		synchronized (getLogger()) {
+			if (compiled == null)
+				compiled = doCompile();
+		}
+		return compiled;
+	}
+	
+	private void ensureComputed() {
 		synchronized (getLogger()) {
 			if (!computed) {
 				compute();
 				computed = true;
 			}
 		}
-		return doApply(out);
 	}
 	
 	@Override
@@ -56,13 +77,25 @@ public abstract class AbstractTimingComponent extends LoggedScopedComponent<Scop
 	}
 	
 	/**
-	 * Implementations of this method <i>must</i> modify the {@link Calendar} passed to them.
+	 * Implementations of this method apply the {@link AbstractTimingComponent TimingComponent} to the given {@link ZonedDateTime}. This is only
+	 * called after {@link #compute()} has completed, and it must not modify the state of the {@link AbstractTimingComponent TimingComponent}.
 	 * 
 	 * @param base
-	 *            the {@link Calendar} that the {@link AbstractTimingComponent TimingComponent} is to modify
-	 * @return the provided {@link Calendar} as modified by the {@link AbstractTimingComponent TimingComponent}
+	 *            the {@link ZonedDateTime} to which the {@link AbstractTimingComponent TimingComponent} is to be applied
+	 * @return the {@link ZonedDateTime} produced by applying the {@link AbstractTimingComponent TimingComponent} to {@code base}
+	 * @see TimingUtils
 	 */
-	protected abstract Calendar doApply(Calendar base);
+	protected abstract ZonedDateTime doApply(ZonedDateTime base);
+	
+	/**
+	 * Implementations of this method produce a {@link CompiledTimingComponent} that is equivalent to {@link #doApply(ZonedDateTime)}. This is only
+	 * called after {@link #compute()} has completed. The default implementation wraps {@link #doApply(ZonedDateTime)}.
+	 * 
+	 * @return a {@link CompiledTimingComponent} that is equivalent to {@link #doApply(ZonedDateTime)}
+	 */
+	protected CompiledTimingComponent doCompile() {
+		return CompiledTimingComponent.of(this::doApply);
+	}
 	
 	/**
 	 * Implementations of this method should perform all possible preprocessing steps and store their results.
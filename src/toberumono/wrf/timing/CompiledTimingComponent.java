@@ -0,0 +1,350 @@
+package toberumono.wrf.timing;
+
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoField;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+import java.util.function.UnaryOperator;
+
+import static toberumono.wrf.timing.TimingUtils.*;
+
+/**
+ * An immutable, precomputed form of one or more {@link TimingComponent TimingComponents} produced by {@link TimingComponent#compile()}.<br>
+ * A {@link CompiledTimingComponent} is a sequence of segments. Adding amounts to fields and setting fields to functions of their current values
+ * are represented as arrays of field indices and primitive amounts or {@link IntUnaryOperator IntUnaryOperators}, and adjacent segments of the
+ * same kind are fused when {@link #andThen(CompiledTimingComponent) chained}, so a chain such as clear &rarr; round &rarr; offset &rarr; duration
+ * usually becomes a handful of array-driven loops. Components that cannot be represented this way are kept as opaque steps.<br>
+ * Applying a {@link CompiledTimingComponent} produces the same result as applying the components that it was compiled from via
+ * {@link TimingComponent#apply(ZonedDateTime)}, which remains the reference implementation.
+ * 
+ * @author Toberumono
+ */
+public final class CompiledTimingComponent implements UnaryOperator<ZonedDateTime> {
+	private static final CompiledTimingComponent IDENTITY = new CompiledTimingComponent(Collections.emptyList());
+	
+	private final Segment[] segments;
+	
+	private static abstract class Segment {
+		abstract ZonedDateTime apply(ZonedDateTime base);
+		
+		/**
+		 * @return a single {@link Segment} equivalent to this {@link Segment} followed by {@code next} or {@code null} if they cannot be fused
+		 */
+		abstract Segment fuse(Segment next);
+	}
+	
+	/**
+	 * Adds amounts to fields in order (as {@link TimingUtils#add(ZonedDateTime, int, int)} does).
+	 */
+	private static final class AddSegment extends Segment {
+		private final int[] fields, amounts;
+		
+		AddSegment(int[] fields, int[] amounts) {
+			this.fields = fields;
+			this.amounts = amounts;
+		}
+		
+		@Override
+		ZonedDateTime apply(ZonedDateTime base) {
+			for (int i = 0; i < fields.length; i++)
+				base = TimingUtils.add(base, fields[i], amounts[i]);
+			return base;
+		}
+		
+		@Override
+		Segment fuse(Segment next) {
+			if (!(next instanceof AddSegment))
+				return null;
+			AddSegment other = (AddSegment) next;
+			int[] mergedFields = new int[fields.length + other.fields.length], mergedAmounts = new int[mergedFields.length];
+			int length = 0;
+			for (int i = 0; i < mergedFields.length; i++) {
+				int field = i < fields.length ? fields[i] : other.fields[i - fields.length];
+				int amount = i < fields.length ? amounts[i] : other.amounts[i - fields.length];
+				if (length > 0 && mergedFields[length - 1] == field && field <= HOURS) //Adding to fields up to hours adds elapsed time, so it is additive
+					mergedAmounts[length - 1] += amount;
+				else {
+					mergedFields[length] = field;
+					mergedAmounts[length++] = amount;
+				}
+			}
+			return new AddSegment(Arrays.copyOf(mergedFields, length), Arrays.copyOf(mergedAmounts, length));
+		}
+	}
+	
+	/**
+	 * Sets fields to functions of their current values in order (as {@link TimingUtils#set(ZonedDateTime, int, int)} does).<br>
+	 * Eager operations must observe the normalized result of every preceding operation. In zones with fixed offsets, normalizing values that are
+	 * within their fields' ranges does not change anything, so normalization is deferred until a value leaves its field's range or the segment
+	 * ends. Non-eager operations (e.g. those from {@link toberumono.wrf.timing.clear.Clear Clears}) only ever produce values that are within
+	 * every month's range and are normalized together.
+	 */
+	private static final class SetSegment extends Segment {
+		private final int[] fields;
+		private final IntUnaryOperator[] operations;
+		private final boolean[] eager;
+		
+		SetSegment(int[] fields, IntUnaryOperator[] operations, boolean[] eager) {
+			this.fields = fields;
+			this.operations = operations;
+			this.eager = eager;
+		}
+		
+		@Override
+		ZonedDateTime apply(ZonedDateTime base) {
+			ZoneId zone = base.getZone();
+			boolean fixed = zone.getRules().isFixedOffset(), dirty = false;
+			int[] current = getFields(base);
+			for (int i = 0; i < fields.length; i++) {
+				if (dirty && eager[i] && !fixed) { //The operation must see the values after normalization
+					base = resolve(current, zone);
+					current = getFields(base);
+					dirty = false;
+				}
+				int field = fields[i], value = operations[i].applyAsInt(current[field]);
+				if (value == current[field])
+					continue;
+				current[field] = value;
+				dirty = true;
+				if (eager[i] && (!fixed || !isNormalized(current, field))) {
+					base = resolve(current, zone);
+					current = getFields(base);
+					dirty = false;
+				}
+			}
+			return dirty ? resolve(current, zone) : base;
+		}
+		
+		@Override
+		Segment fuse(Segment next) {
+			if (!(next instanceof SetSegment))
+				return null;
+			SetSegment other = (SetSegment) next;
+			int[] fields = Arrays.copyOf(this.fields, this.fields.length + other.fields.length);
+			System.arraycopy(other.fields, 0, fields, this.fields.length, other.fields.length);
+			IntUnaryOperator[] operations = Arrays.copyOf(this.operations, fields.length);
+			System.arraycopy(other.operations, 0, operations, this.operations.length, other.operations.length);
+			boolean[] eager = Arrays.copyOf(this.eager, fields.length);
+			System.arraycopy(other.eager, 0, eager, this.eager.length, other.eager.length);
+			return new SetSegment(fields, operations, eager);
+		}
+		
+		/**
+		 * @return {@code true} iff the values are still normalized after {@code field} was changed (this assumes that they were normalized
+		 *         before)
+		 */
+		private static boolean isNormalized(int[] current, int field) {
+			int value = current[field];
+			switch (field) {
+				case MILLISECONDS:
+					return 0 <= value && value <= 999;
+				case SECONDS:
+				case MINUTES:
+					return 0 <= value && value <= 59;
+				case HOURS:
+					return 0 <= value && value <= 23;
+				case MONTHS:
+					if (value < 0 || value > 11)
+						return false;
+					break;
+				case YEARS:
+					if (!ChronoField.YEAR.range().isValidValue(value))
+						return false;
+					break;
+			}
+			//Changing the day, month, or year can leave the day past the end of the month
+			return 1 <= current[DAYS] && (current[DAYS] <= 28 || current[DAYS] <= YearMonth.of(current[YEARS], current[MONTHS] + 1).lengthOfMonth());
+		}
+	}
+	
+	/**
+	 * Applies an arbitrary transformation.
+	 */
+	private static final class OpaqueSegment extends Segment {
+		private final UnaryOperator<ZonedDateTime> transform;
+		
+		OpaqueSegment(UnaryOperator<ZonedDateTime> transform) {
+			this.transform = transform;
+		}
+		
+		@Override
+		ZonedDateTime apply(ZonedDateTime base) {
+			return transform.apply(base);
+		}
+		
+		@Override
+		Segment fuse(Segment next) {
+			return null;
+		}
+	}
+	
+	private CompiledTimingComponent(List<Segment> segments) {
+		this.segments = segments.toArray(new Segment[segments.size()]);
+	}
+	
+	/**
+	 * @return a {@link CompiledTimingComponent} that does not change the times passed to it
+	 */
+	public static CompiledTimingComponent identity() {
+		return IDENTITY;
+	}
+	
+	/**
+	 * Creates a {@link CompiledTimingComponent} that adds the given amounts to each field from the smallest field to the largest (as
+	 * {@link TimingUtils#add(ZonedDateTime, int[])} does).
+	 * 
+	 * @param amounts
+	 *            the amounts to add in the order defined by {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES TIMING_FIELD_NAMES}. This
+	 *            is copied
+	 * @return the new {@link CompiledTimingComponent}
+	 */
+	public static CompiledTimingComponent add(int[] amounts) {
+		int[] fields = new int[amounts.length], values = new int[amounts.length];
+		int length = 0;
+		for (int i = 0; i < amounts.length; i++) {
+			if (amounts[i] != 0) {
+				fields[length] = i;
+				values[length++] = amounts[i];
+			}
+		}
+		if (length == 0)
+			return IDENTITY;
+		return new CompiledTimingComponent(Collections.singletonList(new AddSegment(Arrays.copyOf(fields, length), Arrays.copyOf(values, length))));
+	}
+	
+	/**
+	 * Creates a {@link CompiledTimingComponent} that sets each field, from the smallest field to the largest, to the result of applying the
+	 * corresponding operation to its current value, normalizing the time after each field is set (as {@link TimingUtils#set(ZonedDateTime, int, int)}
+	 * does).
+	 * 
+	 * @param operations
+	 *            the operations in the order defined by {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES TIMING_FIELD_NAMES}. Fields
+	 *            whose operation is {@code null} are left as they are
+	 * @return the new {@link CompiledTimingComponent}
+	 * @see #set(IntUnaryOperator[], boolean)
+	 */
+	public static CompiledTimingComponent set(IntUnaryOperator[] operations) {
+		return set(operations, false);
+	}
+	
+	/**
+	 * Creates a {@link CompiledTimingComponent} that sets each field to the result of applying the corresponding operation to its current value,
+	 * normalizing the time after each field is set (as {@link TimingUtils#set(ZonedDateTime, int, int)} does).<br>
+	 * Because each operation sees the values produced by normalizing the previous ones, the order matters (e.g. {@link toberumono.wrf.timing.round.BucketRound
+	 * BucketRound} sets the fields from the largest to the smallest).
+	 * 
+	 * @param operations
+	 *            the operations in the order defined by {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES TIMING_FIELD_NAMES}. Fields
+	 *            whose operation is {@code null} are left as they are
+	 * @param largestFirst
+	 *            whether the fields are set from the largest field to the smallest instead of from the smallest to the largest
+	 * @return the new {@link CompiledTimingComponent}
+	 */
+	public static CompiledTimingComponent set(IntUnaryOperator[] operations, boolean largestFirst) {
+		return sequence(operations, true, largestFirst);
+	}
+	
+	/**
+	 * Creates a {@link CompiledTimingComponent} that sets each of the first {@code values.length} fields to the corresponding value and then
+	 * normalizes the time once (as {@link toberumono.wrf.timing.clear.StandardClear StandardClear} does).
+	 * 
+	 * @param values
+	 *            the values in the order defined by {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES TIMING_FIELD_NAMES}
+	 * @return the new {@link CompiledTimingComponent} or {@code null} if any of the values could be out of range in some month (in which case
+	 *         setting them together and setting them in order can produce different results)
+	 */
+	public static CompiledTimingComponent clear(int[] values) {
+		IntUnaryOperator[] operations = new IntUnaryOperator[values.length];
+		int[] maxima = {999, 59, 59, 23, 28, 11};
+		for (int i = 0; i < values.length; i++) {
+			if (i >= maxima.length || values[i] < getActualMinimum(null, i) || values[i] > maxima[i])
+				return null;
+			int value = values[i];
+			operations[i] = v -> value;
+		}
+		return sequence(operations, false, false);
+	}
+	
+	private static CompiledTimingComponent sequence(IntUnaryOperator[] operations, boolean eager, boolean largestFirst) {
+		List<Integer> fields = new ArrayList<>();
+		for (int i = 0; i < operations.length; i++)
+			if (operations[i] != null)
+				fields.add(i);
+		if (largestFirst)
+			Collections.reverse(fields);
+		if (fields.size() == 0)
+			return IDENTITY;
+		int[] indices = new int[fields.size()];
+		IntUnaryOperator[] ops = new IntUnaryOperator[indices.length];
+		boolean[] eagerness = new boolean[indices.length];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = fields.get(i);
+			ops[i] = operations[indices[i]];
+			eagerness[i] = eager;
+		}
+		return new CompiledTimingComponent(Collections.singletonList(new SetSegment(indices, ops, eagerness)));
+	}
+	
+	/**
+	 * Wraps an arbitrary transformation.
+	 * 
+	 * @param transform
+	 *            the transformation. This must be safe to call from multiple threads
+	 * @return the new {@link CompiledTimingComponent}
+	 */
+	public static CompiledTimingComponent of(UnaryOperator<ZonedDateTime> transform) {
+		if (transform instanceof CompiledTimingComponent)
+			return (CompiledTimingComponent) transform;
+		return new CompiledTimingComponent(Collections.singletonList(new OpaqueSegment(transform)));
+	}
+	
+	/**
+	 * Fuses the given {@link CompiledTimingComponent CompiledTimingComponents} into one that applies them in order.
+	 * 
+	 * @param components
+	 *            the {@link CompiledTimingComponent CompiledTimingComponents} to fuse
+	 * @return the fused {@link CompiledTimingComponent}
+	 */
+	public static CompiledTimingComponent fuse(Collection<CompiledTimingComponent> components) {
+		List<Segment> segments = new ArrayList<>();
+		for (CompiledTimingComponent component : components) {
+			for (Segment segment : component.segments) {
+				Segment fused = segments.size() > 0 ? segments.get(segments.size() - 1).fuse(segment) : null;
+				if (fused != null)
+					segments.set(segments.size() - 1, fused);
+				else
+					segments.add(segment);
+			}
+		}
+		return segments.size() == 0 ? IDENTITY : new CompiledTimingComponent(segments);
+	}
+	
+	/**
+	 * @param next
+	 *            the {@link CompiledTimingComponent} to apply after this one
+	 * @return a {@link CompiledTimingComponent} that applies this {@link CompiledTimingComponent} and then {@code next}
+	 */
+	public CompiledTimingComponent andThen(CompiledTimingComponent next) {
+		return fuse(Arrays.asList(this, next));
+	}
+	
+	@Override
+	public ZonedDateTime apply(ZonedDateTime base) {
+		for (Segment segment : segments)
+			base = segment.apply(base);
+		return base;
+	}
+	
+	/**
+	 * @return the number of segments that remain after fusion (this is primarily for diagnostics)
+	 */
+	public int getSegmentCount() {
+		return segments.length;
+	}
+}
@@ -1,5 +1,6 @@
 package toberumono.wrf.timing;
 
+import java.time.ZonedDateTime;
 import java.util.Calendar;
 import java.util.Objects;
 
@@ -19,17 +20,19 @@ import toberumono.wrf.timing.round.ListRound;
 import toberumono.wrf.timing.round.Round;
 
 /**
- * An implementation of {@link Timing} wherein every value is computed.
+ * An implementation of {@link Timing} wherein every value is computed.<br>
+ * The values are computed as immutable {@link ZonedDateTime ZonedDateTimes}, and the {@link Calendar} forms are derived from them on demand.
  * 
  * @author Toberumono
  */
 public class ComputedTiming extends ScopedComponent<Scope> implements Timing {
-	private volatile Calendar base, start, end;
+	private final Calendar initialBase;
+	private volatile ZonedDateTime base, start, end;
+	private volatile Calendar baseCalendar, startCalendar, endCalendar;
 	private volatile Offset offset;
 	private volatile Round round;
 	private volatile Duration duration;
 	private volatile Clear clear;
-	private boolean appliedClear;
 	
 	/**
 	 * Constructs a {@link ComputedTiming} instance without an explicitly defined base {@link Calendar}. This is the general use constructor.
@@ -56,58 +59,89 @@ public class ComputedTiming extends ScopedComponent<Scope> implements Timing {
 	 */
 	public ComputedTiming(ScopedMap parameters, Calendar base, Scope parent) {
 		super(parameters, parent);
-		this.base = parent instanceof Timing ? base : Objects.requireNonNull(base, "The base Calendar cannot be null if the parent is not an instance of Timing");
-		start = end = null;
+		initialBase = parent instanceof Timing ? base : Objects.requireNonNull(base, "The base Calendar cannot be null if the parent is not an instance of Timing");
+		this.base = start = end = null;
+		baseCalendar = startCalendar = endCalendar = null;
 		offset = null;
 		round = null;
 		duration = null;
 		clear = null;
-		appliedClear = false;
+	}
+	
+	/**
+	 * @return {@code true} iff the {@link ComputedTiming} was constructed with a base {@link Calendar} (otherwise, it inherits its base from its
+	 *         parent)
+	 */
+	boolean hasExplicitBase() {
+		return initialBase != null;
 	}
 	
 	@Override
-	public Calendar getBase() {
-		if (base == null) {
-			synchronized (this) {
-				if (base == null) { //Have to re-check for synchronization
-					base = getClear().apply((getParent() instanceof Timing) ? ((Timing) getParent()).getBase() : null);
-					appliedClear = true;
-				}
-			}
-		}
-		if (!appliedClear) {
-			synchronized (this) {
-				if (!appliedClear) { //Have to re-check for synchronization
-					base = getClear().apply(base);
-					appliedClear = true;
-				}
-			}
+	public ZonedDateTime getBaseTime() {
+		if (base != null)
+			return base;
+		synchronized (this) {
+			if (base == null) //Have to re-check for synchronization
+				base = getClear().apply(initialBase != null ? TimingUtils.toZonedDateTime(initialBase) : ((Timing) getParent()).getBaseTime());
 		}
 		return base;
 	}
 	
 	@Override
-	public Calendar getStart() {
+	public ZonedDateTime getStartTime() {
 		if (start != null)
 			return start;
 		synchronized (this) {
 			if (start == null)
-				start = getOffset().apply(getRound().apply(getBase()));
+				start = getOffset().apply(getRound().apply(getBaseTime()));
 		}
 		return start;
 	}
 	
 	@Override
-	public Calendar getEnd() {
+	public ZonedDateTime getEndTime() {
 		if (end != null)
 			return end;
 		synchronized (this) {
 			if (end == null)
-				end = getDuration().apply(getStart());
+				end = getDuration().apply(getStartTime());
 		}
 		return end;
 	}
 	
+	@Override
+	public Calendar getBase() {
+		if (baseCalendar != null)
+			return baseCalendar;
+		synchronized (this) {
+			if (baseCalendar == null)
+				baseCalendar = TimingUtils.toCalendar(getBaseTime(), initialBase != null ? initialBase : ((Timing) getParent()).getBase(), false);
+		}
+		return baseCalendar;
+	}
+	
+	@Override
+	public Calendar getStart() {
+		if (startCalendar != null)
+			return startCalendar;
+		synchronized (this) {
+			if (startCalendar == null)
+				startCalendar = TimingUtils.toCalendar(getStartTime(), getBase(), false);
+		}
+		return startCalendar;
+	}
+	
+	@Override
+	public Calendar getEnd() {
+		if (endCalendar != null)
+			return endCalendar;
+		synchronized (this) {
+			if (endCalendar == null)
+				endCalendar = TimingUtils.toCalendar(getEndTime(), getBase(), false);
+		}
+		return endCalendar;
+	}
+	
 	@Override
 	public Offset getOffset() {
 		if (offset != null)
@@ -1,5 +1,6 @@
 package toberumono.wrf.timing;
 
+import java.time.ZonedDateTime;
 import java.util.Calendar;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -27,6 +28,7 @@ public class NamelistTiming extends AbstractScope<Scope> implements Timing {
 	
 	private final Calendar base;
 	private final Calendar start, end;
+	private final ZonedDateTime baseTime, startTime, endTime;
 	private final Offset offset;
 	private final Round round;
 	private final Duration duration;
@@ -48,8 +50,11 @@ public class NamelistTiming extends AbstractScope<Scope> implements Timing {
 		round = WRFRunnerComponentFactory.getDisabledComponentInstance(Round.class, null, this);
 		duration = new NamelistDuration(timeControl, this);
 		clear = WRFRunnerComponentFactory.getDisabledComponentInstance(Clear.class, null, this);
-		start = getOffset().apply(getRound().apply(getBase()));
-		end = getDuration().apply(getStart());
+		baseTime = TimingUtils.toZonedDateTime(getBase());
+		startTime = getOffset().apply(getRound().apply(baseTime));
+		endTime = getDuration().apply(startTime);
+		start = TimingUtils.toCalendar(startTime, getBase(), false);
+		end = TimingUtils.toCalendar(endTime, getBase(), false);
 	}
 	
 	private void timecontrolParser(Calendar cal, NamelistSection tc, String prefix) {
@@ -67,16 +72,31 @@ public class NamelistTiming extends AbstractScope<Scope> implements Timing {
 		return base;
 	}
 	
+	@Override
+	public ZonedDateTime getBaseTime() {
+		return baseTime;
+	}
+	
 	@Override
 	public Calendar getStart() {
 		return start;
 	}
 	
+	@Override
+	public ZonedDateTime getStartTime() {
+		return startTime;
+	}
+	
 	@Override
 	public Calendar getEnd() {
 		return end;
 	}
 	
+	@Override
+	public ZonedDateTime getEndTime() {
+		return endTime;
+	}
+	
 	@Override
 	public Offset getOffset() {
 		return offset;
@@ -1,10 +1,12 @@
 package toberumono.wrf.timing;
 
+import java.time.ZonedDateTime;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.stream.Collectors;
 
 import toberumono.wrf.scope.InvalidVariableAccessException;
 import toberumono.wrf.scope.Scope;
@@ -76,13 +78,23 @@ public class ScopedTimingComponentList<E extends TimingComponent> implements Tim
 	}
 	
 	@Override
-	public Calendar apply(Calendar base, boolean inPlace) {
-		Calendar out = inPlace ? base : (Calendar) base.clone();
-		for (TimingComponent component : this) //We don't want to make a bunch of clones of the Calendar if we don't have to
-			out = component.apply(out, true);
+	public Calendar apply(Calendar base, boolean inPlace) { //We only convert to and from Calendar once for the whole list
+		return TimingUtils.toCalendar(apply(TimingUtils.toZonedDateTime(base)), base, inPlace);
+	}
+	
+	@Override
+	public ZonedDateTime apply(ZonedDateTime base) {
+		ZonedDateTime out = base;
+		for (TimingComponent component : this)
+			out = component.apply(out);
 		return out;
 	}
 	
+	@Override
+	public CompiledTimingComponent compile() {
+		return CompiledTimingComponent.fuse(stream().map(TimingComponent::compile).collect(Collectors.toList()));
+	}
+	
 	/**
 	 * @return the {@link ScopedTimingComponentList ScopedComponentList's} backing {@link List}
 	 */
@@ -1,5 +1,6 @@
 package toberumono.wrf.timing;
 
+import java.time.ZonedDateTime;
 import java.util.Calendar;
 
 import toberumono.wrf.Simulation;
@@ -13,7 +14,9 @@ import toberumono.wrf.timing.offset.Offset;
 import toberumono.wrf.timing.round.Round;
 
 /**
- * This interface defines the accessor methods used to interact with {@link Timing} Objects.
+ * This interface defines the accessor methods used to interact with {@link Timing} Objects.<br>
+ * The {@link ZonedDateTime}-based accessors ({@link #getBaseTime()}, {@link #getStartTime()}, and {@link #getEndTime()}) return immutable values
+ * and should be preferred in new code. The {@link Calendar}-based accessors are retained for existing callers.
  * 
  * @author Toberumono
  */
@@ -24,6 +27,13 @@ public interface Timing extends Scope {
 	 */
 	public Calendar getBase();
 	
+	/**
+	 * @return the {@link ZonedDateTime} from which {@link #getStartTime() start} and {@link #getEndTime() end} are derived
+	 */
+	public default ZonedDateTime getBaseTime() {
+		return TimingUtils.toZonedDateTime(getBase());
+	}
+	
 	/**
 	 * @return a {@link ScopedMap} generated from the {@link Calendar} returned by {@link #getBase()} via
 	 *         {@link ScopeUtils#makeScopeFromCalendar(Calendar, Scope)}
@@ -38,6 +48,13 @@ public interface Timing extends Scope {
 	 */
 	public Calendar getStart();
 	
+	/**
+	 * @return the {@link ZonedDateTime} denoting the time that the {@link Simulation} will start
+	 */
+	public default ZonedDateTime getStartTime() {
+		return TimingUtils.toZonedDateTime(getStart());
+	}
+	
 	/**
 	 * @return a {@link ScopedMap} generated from the {@link Calendar} returned by {@link #getStart()} via
 	 *         {@link ScopeUtils#makeScopeFromCalendar(Calendar, Scope)}
@@ -52,6 +69,13 @@ public interface Timing extends Scope {
 	 */
 	public Calendar getEnd();
 	
+	/**
+	 * @return the {@link ZonedDateTime} denoting the time that the {@link Simulation} will end
+	 */
+	public default ZonedDateTime getEndTime() {
+		return TimingUtils.toZonedDateTime(getEnd());
+	}
+	
 	/**
 	 * @return a {@link ScopedMap} generated from the {@link Calendar} returned by {@link #getEnd()} via
 	 *         {@link ScopeUtils#makeScopeFromCalendar(Calendar, Scope)}
@@ -0,0 +1,204 @@
+package toberumono.wrf.timing;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import toberumono.wrf.Simulation;
+import toberumono.wrf.scope.Scope;
+import toberumono.wrf.scope.ScopedMap;
+
+/**
+ * Evaluates a {@link ComputedTiming} for many base times without constructing a {@link Simulation} for each of them (e.g. to plan hindcast or
+ * reforecast campaigns).<br>
+ * The {@link TimingComponent TimingComponents} of the {@link ComputedTiming} and of every {@link ComputedTiming} that it inherits its base from
+ * are {@link TimingComponent#compile() compiled} and fused into three {@link CompiledTimingComponent CompiledTimingComponents} (base, start,
+ * and end) when the {@link TimingBatch} is constructed, after which each base time is evaluated without any synchronization. Bulk evaluations are performed with parallel streams, and their results are in the same order as the base times.
+ * 
+ * @author Toberumono
+ */
+public class TimingBatch {
+	private final ComputedTiming timing;
+	private final CompiledTimingComponent toBase, toStart, toEnd;
+	
+	/**
+	 * The base, start, and end times computed for a single base time.
+	 * 
+	 * @author Toberumono
+	 */
+	public static class Result {
+		private final ZonedDateTime input, base, start, end;
+		
+		private Result(ZonedDateTime input, ZonedDateTime base, ZonedDateTime start, ZonedDateTime end) {
+			this.input = input;
+			this.base = base;
+			this.start = start;
+			this.end = end;
+		}
+		
+		/**
+		 * @return the base time that was evaluated
+		 */
+		public ZonedDateTime getInput() {
+			return input;
+		}
+		
+		/**
+		 * @return the base time after the {@link ComputedTiming ComputedTiming's} (and its ancestors') {@link ComputedTiming#getClear() clears}
+		 *         were applied (equivalent to {@link Timing#getBaseTime()})
+		 */
+		public ZonedDateTime getBase() {
+			return base;
+		}
+		
+		/**
+		 * @return the start time (equivalent to {@link Timing#getStartTime()})
+		 */
+		public ZonedDateTime getStart() {
+			return start;
+		}
+		
+		/**
+		 * @return the end time (equivalent to {@link Timing#getEndTime()})
+		 */
+		public ZonedDateTime getEnd() {
+			return end;
+		}
+		
+		@Override
+		public String toString() {
+			return input + ": " + start + " - " + end;
+		}
+	}
+	
+	/**
+	 * Constructs a {@link TimingBatch} that evaluates the given {@link ComputedTiming}.
+	 * 
+	 * @param timing
+	 *            the {@link ComputedTiming} to evaluate. If it inherits its base from its parent, the parent must also be a
+	 *            {@link ComputedTiming}, and so on up to the {@link ComputedTiming} that was constructed with a base {@link Calendar}. The base
+	 *            times passed to the {@link TimingBatch} replace that {@link Calendar}
+	 * @throws IllegalArgumentException
+	 *             if a {@link Timing} that {@code timing} inherits its base from is not a {@link ComputedTiming} or if any of the
+	 *             {@link TimingComponent TimingComponents} are invalid
+	 */
+	public TimingBatch(ComputedTiming timing) {
+		this.timing = timing;
+		List<ComputedTiming> levels = new ArrayList<>();
+		for (ComputedTiming level = timing;; level = (ComputedTiming) level.getParent()) {
+			levels.add(level);
+			if (level.hasExplicitBase())
+				break;
+			if (!(level.getParent() instanceof ComputedTiming))
+				throw new IllegalArgumentException("Only Timings that inherit their base from ComputedTimings can be evaluated in batches.");
+		}
+		Collections.reverse(levels); //The root is applied first
+		toBase = CompiledTimingComponent.fuse(levels.stream().map(level -> level.getClear().compile()).collect(Collectors.toList()));
+		toStart = timing.getRound().compile().andThen(timing.getOffset().compile());
+		toEnd = timing.getDuration().compile();
+	}
+	
+	/**
+	 * Constructs a {@link TimingBatch} directly from a timing configuration (e.g. the "global" subsection of a configuration file's "timing"
+	 * section).
+	 * 
+	 * @param parameters
+	 *            the parameters that define the {@link ComputedTiming} as a {@link ScopedMap}
+	 * @param parent
+	 *            the parent {@link Scope} of the {@link ComputedTiming} (used to resolve variables in formulas)
+	 * @return a {@link TimingBatch} that evaluates the {@link ComputedTiming} defined by {@code parameters}
+	 */
+	public static TimingBatch fromConfiguration(ScopedMap parameters, Scope parent) {
+		return new TimingBatch(new ComputedTiming(parameters, Calendar.getInstance(), parent));
+	}
+	
+	/**
+	 * Constructs a {@link TimingBatch} for the given {@link Timing}.
+	 * 
+	 * @param timing
+	 *            the {@link Timing} to evaluate
+	 * @return a {@link TimingBatch} that evaluates {@code timing}
+	 * @throws IllegalArgumentException
+	 *             if {@code timing} is not a {@link ComputedTiming} or inherits its base from a {@link Timing} that is not a {@link ComputedTiming}
+	 * @see #TimingBatch(ComputedTiming)
+	 */
+	public static TimingBatch of(Timing timing) {
+		if (!(timing instanceof ComputedTiming))
+			throw new IllegalArgumentException("Only ComputedTimings can be evaluated in batches.");
+		return new TimingBatch((ComputedTiming) timing);
+	}
+	
+	/**
+	 * @return the {@link ComputedTiming} that the {@link TimingBatch} evaluates
+	 */
+	public ComputedTiming getTiming() {
+		return timing;
+	}
+	
+	/**
+	 * Evaluates the {@link ComputedTiming} for a single base time.
+	 * 
+	 * @param input
+	 *            the base time
+	 * @return the {@link Result} for {@code input}
+	 */
+	public Result evaluate(ZonedDateTime input) {
+		ZonedDateTime base = toBase.apply(input), start = toStart.apply(base);
+		return new Result(input, base, start, toEnd.apply(start));
+	}
+	
+	/**
+	 * Evaluates the {@link ComputedTiming} for every given base time in parallel.
+	 * 
+	 * @param inputs
+	 *            the base times
+	 * @return the {@link Result Results} in the same order as {@code inputs}
+	 */
+	public List<Result> evaluate(Collection<ZonedDateTime> inputs) {
+		return evaluate(inputs, Function.identity());
+	}
+	
+	/**
+	 * Evaluates the {@link ComputedTiming} for every given base time and transforms each {@link Result} with the given {@link Function} in
+	 * parallel.
+	 * 
+	 * @param <T>
+	 *            the type produced by {@code transform}
+	 * @param inputs
+	 *            the base times
+	 * @param transform
+	 *            the {@link Function} to apply to each {@link Result}. This must be safe to call from multiple threads
+	 * @return the transformed {@link Result Results} in the same order as {@code inputs}
+	 */
+	public <T> List<T> evaluate(Collection<ZonedDateTime> inputs, Function<Result, T> transform) {
+		return inputs.parallelStream().map(this::evaluate).map(transform).collect(Collectors.toList());
+	}
+	
+	/**
+	 * Generates evenly spaced base times. Each base time is the previous one plus {@code step}.
+	 * 
+	 * @param first
+	 *            the first base time
+	 * @param last
+	 *            the last base time (inclusive)
+	 * @param step
+	 *            the amount of time between consecutive base times (e.g. {@code Duration.ofHours(6)} or {@code Period.ofDays(1)})
+	 * @return the base times from {@code first} to {@code last} (inclusive) separated by {@code step}
+	 * @throws IllegalArgumentException
+	 *             if {@code step} does not move forward in time
+	 */
+	public static List<ZonedDateTime> range(ZonedDateTime first, ZonedDateTime last, TemporalAmount step) {
+		if (!first.plus(step).isAfter(first))
+			throw new IllegalArgumentException("The step between base times must be positive.");
+		List<ZonedDateTime> out = new ArrayList<>();
+		for (ZonedDateTime next = first; !next.isAfter(last); next = next.plus(step))
+			out.add(next);
+		return out;
+	}
+}
@@ -1,5 +1,6 @@
 package toberumono.wrf.timing;
 
+import java.time.ZonedDateTime;
 import java.util.Calendar;
 import java.util.function.Function;
 
@@ -10,7 +11,9 @@ import toberumono.wrf.timing.offset.Offset;
 import toberumono.wrf.timing.round.Round;
 
 /**
- * Root interface for {@link TimingComponent TimingComponents}. This is for use with the root interfaces of each type of {@link TimingComponent}.
+ * Root interface for {@link TimingComponent TimingComponents}. This is for use with the root interfaces of each type of {@link TimingComponent}.<br>
+ * {@link TimingComponent TimingComponents} operate on immutable {@link ZonedDateTime ZonedDateTimes} via {@link #apply(ZonedDateTime)}. The
+ * {@link Calendar}-based methods are adapters for existing callers.
  * 
  * @author Toberumono
  * @see Offset
@@ -42,4 +45,28 @@ public interface TimingComponent extends Function<Calendar, Calendar>, Scope {
 	 */
 	@Override
 	public Calendar apply(Calendar base);
+	
+	/**
+	 * Applies the modifications specified by the {@link TimingComponent} to the given {@link ZonedDateTime}.<br>
+	 * Because {@link ZonedDateTime} is immutable, this is safe to call from multiple threads without copying or synchronization. The default
+	 * implementation adapts {@link #apply(Calendar, boolean)}.
+	 * 
+	 * @param base
+	 *            the {@link ZonedDateTime} to which the modifications should be applied
+	 * @return a {@link ZonedDateTime} with the {@link TimingComponent TimingComponent's} changes applied
+	 */
+	public default ZonedDateTime apply(ZonedDateTime base) {
+		return TimingUtils.toZonedDateTime(apply(TimingUtils.toCalendar(base), true));
+	}
+	
+	/**
+	 * Compiles the {@link TimingComponent} into an immutable {@link CompiledTimingComponent} that produces the same results as
+	 * {@link #apply(ZonedDateTime)} without any per-call synchronization or lookups. The default implementation wraps
+	 * {@link #apply(ZonedDateTime)}.
+	 * 
+	 * @return a {@link CompiledTimingComponent} equivalent to the {@link TimingComponent}
+	 */
+	public default CompiledTimingComponent compile() {
+		return CompiledTimingComponent.of(this::apply);
+	}
 }
@@ -0,0 +1,258 @@
+package toberumono.wrf.timing;
+
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+/**
+ * Utility methods for working with the timing fields (as ordered in {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES
+ * TIMING_FIELD_NAMES}) of {@link ZonedDateTime ZonedDateTimes}.<br>
+ * Field values use the same conventions as {@link Calendar} (in particular, months are 0-based), and setting a field to a value outside of its
+ * normal range rolls over into the larger fields in the same way that a lenient {@link Calendar} does. This allows {@link TimingComponent
+ * TimingComponents} to operate on immutable, thread-safe values without changing the meaning of existing configuration files.
+ * 
+ * @author Toberumono
+ */
+public final class TimingUtils {
+	/**
+	 * The index of the milliseconds field
+	 */
+	public static final int MILLISECONDS = 0;
+	/**
+	 * The index of the seconds field
+	 */
+	public static final int SECONDS = 1;
+	/**
+	 * The index of the minutes field
+	 */
+	public static final int MINUTES = 2;
+	/**
+	 * The index of the hours field
+	 */
+	public static final int HOURS = 3;
+	/**
+	 * The index of the days field
+	 */
+	public static final int DAYS = 4;
+	/**
+	 * The index of the months field
+	 */
+	public static final int MONTHS = 5;
+	/**
+	 * The index of the years field
+	 */
+	public static final int YEARS = 6;
+	
+	private TimingUtils() {/* This is a utility class */}
+	
+	/**
+	 * Converts the given {@link Calendar} to a {@link ZonedDateTime} in the {@link Calendar Calendar's} time zone.
+	 * 
+	 * @param calendar
+	 *            the {@link Calendar} to convert. This is not modified
+	 * @return the equivalent {@link ZonedDateTime} or {@code null} if {@code calendar} is {@code null}
+	 */
+	public static ZonedDateTime toZonedDateTime(Calendar calendar) {
+		if (calendar == null)
+			return null;
+		if (calendar instanceof GregorianCalendar)
+			return ((GregorianCalendar) calendar).toZonedDateTime();
+		return ZonedDateTime.ofInstant(calendar.toInstant(), calendar.getTimeZone().toZoneId());
+	}
+	
+	/**
+	 * Converts the given {@link ZonedDateTime} to a new {@link Calendar} in the same time zone.
+	 * 
+	 * @param time
+	 *            the {@link ZonedDateTime} to convert
+	 * @return a new {@link Calendar} that is equivalent to {@code time} or {@code null} if {@code time} is {@code null}
+	 */
+	public static Calendar toCalendar(ZonedDateTime time) {
+		if (time == null)
+			return null;
+		return GregorianCalendar.from(time);
+	}
+	
+	/**
+	 * Converts the given {@link ZonedDateTime} to a {@link Calendar} with the same settings (e.g. time zone and Gregorian cutover) as the given
+	 * template.
+	 * 
+	 * @param time
+	 *            the {@link ZonedDateTime} to convert
+	 * @param template
+	 *            the {@link Calendar} whose settings should be used
+	 * @param inPlace
+	 *            whether {@code template} should be set to {@code time} (if {@code false}, a clone of {@code template} is set to {@code time})
+	 * @return {@code template} (or a clone thereof if {@code inPlace} is {@code false}) set to the instant represented by {@code time}
+	 */
+	public static Calendar toCalendar(ZonedDateTime time, Calendar template, boolean inPlace) {
+		Calendar out = inPlace ? template : (Calendar) template.clone();
+		out.setTimeInMillis(time.toInstant().toEpochMilli());
+		return out;
+	}
+	
+	/**
+	 * @param time
+	 *            the {@link ZonedDateTime} from which to retrieve the field
+	 * @param field
+	 *            the index of the field in {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES TIMING_FIELD_NAMES}
+	 * @return the value of the field (months are 0-based)
+	 */
+	public static int get(ZonedDateTime time, int field) {
+		switch (field) {
+			case MILLISECONDS:
+				return time.getNano() / 1000000;
+			case SECONDS:
+				return time.getSecond();
+			case MINUTES:
+				return time.getMinute();
+			case HOURS:
+				return time.getHour();
+			case DAYS:
+				return time.getDayOfMonth();
+			case MONTHS:
+				return time.getMonthValue() - 1;
+			case YEARS:
+				return time.getYear();
+			default:
+				throw new IllegalArgumentException(field + " is not a valid timing field index.");
+		}
+	}
+	
+	/**
+	 * @param time
+	 *            the {@link ZonedDateTime} from which to retrieve the fields
+	 * @return the values of every timing field in the order defined by {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES
+	 *         TIMING_FIELD_NAMES} (months are 0-based)
+	 */
+	public static int[] getFields(ZonedDateTime time) {
+		return new int[]{time.getNano() / 1000000, time.getSecond(), time.getMinute(), time.getHour(), time.getDayOfMonth(), time.getMonthValue() - 1, time.getYear()};
+	}
+	
+	/**
+	 * Sets a single field, rolling values outside of the field's normal range over into the larger fields.
+	 * 
+	 * @param time
+	 *            the {@link ZonedDateTime} on which the new value should be based
+	 * @param field
+	 *            the index of the field in {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES TIMING_FIELD_NAMES}
+	 * @param value
+	 *            the new value of the field (months are 0-based)
+	 * @return a {@link ZonedDateTime} with the field set
+	 */
+	public static ZonedDateTime set(ZonedDateTime time, int field, int value) {
+		if (get(time, field) == value)
+			return time;
+		int[] fields = getFields(time);
+		fields[field] = value;
+		return resolve(fields, time.getZone());
+	}
+	
+	/**
+	 * Builds a {@link ZonedDateTime} from the given field values in the same way that a lenient {@link Calendar} does: months outside of
+	 * [0, 11] roll over into years, and then days, hours, minutes, seconds, and milliseconds are added to the start of the resulting month.
+	 * 
+	 * @param fields
+	 *            the values of every timing field in the order defined by {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES
+	 *            TIMING_FIELD_NAMES} (months are 0-based)
+	 * @param zone
+	 *            the time zone in which the fields are interpreted
+	 * @return the resulting {@link ZonedDateTime}
+	 */
+	public static ZonedDateTime resolve(int[] fields, ZoneId zone) {
+		LocalDateTime local = LocalDateTime.of(fields[YEARS], 1, 1, 0, 0).plusMonths(fields[MONTHS]).plusDays(fields[DAYS] - 1L);
+		long millis = fields[HOURS] * 3600000L + fields[MINUTES] * 60000L + fields[SECONDS] * 1000L + fields[MILLISECONDS];
+		return ZonedDateTime.of(local.plusNanos(millis * 1000000L), zone).withLaterOffsetAtOverlap(); //Calendar resolves ambiguous local times to standard time
+	}
+	
+	/**
+	 * Adds the given amount to a single field in the same way that {@link Calendar#add(int, int)} does. Months and years keep the day of the month
+	 * where possible, days keep the local time, and smaller fields are added as elapsed time.
+	 * 
+	 * @param time
+	 *            the {@link ZonedDateTime} to which the amount should be added
+	 * @param field
+	 *            the index of the field in {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES TIMING_FIELD_NAMES}
+	 * @param amount
+	 *            the amount to add
+	 * @return a {@link ZonedDateTime} with the amount added
+	 */
+	public static ZonedDateTime add(ZonedDateTime time, int field, int amount) {
+		if (amount == 0)
+			return time;
+		switch (field) {
+			case MILLISECONDS:
+				return time.plusNanos(amount * 1000000L);
+			case SECONDS:
+				return time.plusSeconds(amount);
+			case MINUTES:
+				return time.plusMinutes(amount);
+			case HOURS:
+				return time.plusHours(amount);
+			case DAYS:
+				return time.plusDays(amount);
+			case MONTHS:
+				return time.plusMonths(amount);
+			case YEARS:
+				return time.plusYears(amount);
+			default:
+				throw new IllegalArgumentException(field + " is not a valid timing field index.");
+		}
+	}
+	
+	/**
+	 * Adds the given amounts to every field, from the smallest field to the largest.
+	 * 
+	 * @param time
+	 *            the {@link ZonedDateTime} to which the amounts should be added
+	 * @param amounts
+	 *            the amounts to add in the order defined by {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES TIMING_FIELD_NAMES}
+	 * @return a {@link ZonedDateTime} with the amounts added
+	 */
+	public static ZonedDateTime add(ZonedDateTime time, int[] amounts) {
+		for (int i = 0; i < amounts.length; i++)
+			time = add(time, i, amounts[i]);
+		return time;
+	}
+	
+	/**
+	 * @param time
+	 *            the {@link ZonedDateTime} for which the minimum should be determined
+	 * @param field
+	 *            the index of the field in {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES TIMING_FIELD_NAMES}
+	 * @return the smallest value that the field can have (equivalent to {@link Calendar#getActualMinimum(int)})
+	 */
+	public static int getActualMinimum(ZonedDateTime time, int field) {
+		return field == DAYS || field == YEARS ? 1 : 0;
+	}
+	
+	/**
+	 * @param time
+	 *            the {@link ZonedDateTime} for which the maximum should be determined
+	 * @param field
+	 *            the index of the field in {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES TIMING_FIELD_NAMES}
+	 * @return the largest value that the field can have given the values of the larger fields (equivalent to {@link Calendar#getActualMaximum(int)})
+	 */
+	public static int getActualMaximum(ZonedDateTime time, int field) {
+		switch (field) {
+			case MILLISECONDS:
+				return 999;
+			case SECONDS:
+			case MINUTES:
+				return 59;
+			case HOURS:
+				return 23;
+			case DAYS:
+				return time.toLocalDate().lengthOfMonth();
+			case MONTHS:
+				return 11;
+			case YEARS:
+				return Year.MAX_VALUE;
+			default:
+				throw new IllegalArgumentException(field + " is not a valid timing field index.");
+		}
+	}
+}
@@ -1,9 +1,10 @@
 package toberumono.wrf.timing.clear;
 
-import java.util.Calendar;
+import java.time.ZonedDateTime;
 
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.CompiledTimingComponent;
 
 /**
  * An implementation of {@link Clear} that does not perform any actions.
@@ -25,10 +26,15 @@ public class DisabledClear extends AbstractClear {
 	}
 	
 	@Override
-	protected Calendar doApply(Calendar base) {
+	protected ZonedDateTime doApply(ZonedDateTime base) {
 		return base;
 	}
 	
+	@Override
+	protected CompiledTimingComponent doCompile() {
+		return CompiledTimingComponent.identity();
+	}
+	
 	@Override
 	protected void compute() {/* Nothing to do here */}
 }
@@ -1,11 +1,13 @@
 package toberumono.wrf.timing.clear;
 
 import java.util.Arrays;
-import java.util.Calendar;
+import java.time.ZonedDateTime;
 import java.util.logging.Logger;
 
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.CompiledTimingComponent;
+import toberumono.wrf.timing.TimingUtils;
 
 import static toberumono.wrf.SimulationConstants.*;
 
@@ -33,10 +35,22 @@ public class StandardClear extends AbstractClear {
 	}
 	
 	@Override
-	protected Calendar doApply(Calendar base) {
+	protected ZonedDateTime doApply(ZonedDateTime base) {
+		if (keep == 0)
+			return base;
+		int[] fields = TimingUtils.getFields(base);
 		for (int i = 0; i < keep; i++)
-			base.set(TIMING_FIELD_IDS.get(i), values[i] == -1 ? base.getActualMinimum(TIMING_FIELD_IDS.get(i)) : values[i]);
-		return base;
+			fields[i] = values[i] == -1 ? TimingUtils.getActualMinimum(base, i) : values[i];
+		return TimingUtils.resolve(fields, base.getZone());
+	}
+	
+	@Override
+	protected CompiledTimingComponent doCompile() {
+		int[] cleared = new int[keep];
+		for (int i = 0; i < keep; i++)
+			cleared[i] = values[i] == -1 ? TimingUtils.getActualMinimum(null, i) : values[i];
+		CompiledTimingComponent out = CompiledTimingComponent.clear(cleared);
+		return out != null ? out : super.doCompile(); //Values that can overflow a month have to be set together, which only doApply does
 	}
 	
 	@Override
@@ -1,10 +1,12 @@
 package toberumono.wrf.timing.duration;
 
-import java.util.Calendar;
+import java.time.ZonedDateTime;
 
 import toberumono.namelist.parser.Namelist;
 import toberumono.namelist.parser.NamelistSection;
 import toberumono.wrf.scope.Scope;
+import toberumono.wrf.timing.CompiledTimingComponent;
+import toberumono.wrf.timing.TimingUtils;
 
 import static toberumono.wrf.SimulationConstants.*;
 
@@ -31,10 +33,13 @@ public class NamelistDuration extends AbstractDuration {
 	}
 	
 	@Override
-	protected Calendar doApply(Calendar base) {
-		for (int i = 0; i < duration.length; i++)
-			base.add(TIMING_FIELD_IDS.get(i), duration[i]);
-		return base;
+	protected ZonedDateTime doApply(ZonedDateTime base) {
+		return TimingUtils.add(base, duration);
+	}
+	
+	@Override
+	protected CompiledTimingComponent doCompile() {
+		return CompiledTimingComponent.add(duration);
 	}
 	
 	@Override
@@ -1,11 +1,13 @@
 package toberumono.wrf.timing.duration;
 
-import java.util.Calendar;
+import java.time.ZonedDateTime;
 import java.util.logging.Logger;
 
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedFormulaProcessor;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.CompiledTimingComponent;
+import toberumono.wrf.timing.TimingUtils;
 
 import static toberumono.wrf.SimulationConstants.*;
 
@@ -30,10 +32,13 @@ public class StandardDuration extends AbstractDuration {
 	}
 	
 	@Override
-	protected Calendar doApply(Calendar base) {
-		for (int i = 0; i < duration.length; i++)
-			base.add(TIMING_FIELD_IDS.get(i), duration[i]);
-		return base;
+	protected ZonedDateTime doApply(ZonedDateTime base) {
+		return TimingUtils.add(base, duration);
+	}
+	
+	@Override
+	protected CompiledTimingComponent doCompile() {
+		return CompiledTimingComponent.add(duration);
 	}
 	
 	@Override
@@ -1,9 +1,10 @@
 package toberumono.wrf.timing.offset;
 
-import java.util.Calendar;
+import java.time.ZonedDateTime;
 
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.CompiledTimingComponent;
 
 /**
  * An implementation of {@link Offset} that does not perform any actions.
@@ -28,9 +29,14 @@ public class DisabledOffset extends AbstractOffset {
 	protected void compute() {/* Nothing to do here */};
 
 	@Override
-	protected Calendar doApply(Calendar base) {
+	protected ZonedDateTime doApply(ZonedDateTime base) {
 		return base;
 	}
+	
+	@Override
+	protected CompiledTimingComponent doCompile() {
+		return CompiledTimingComponent.identity();
+	}
 
 	@Override
 	public boolean doesWrap() {
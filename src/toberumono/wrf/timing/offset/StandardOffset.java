@@ -1,11 +1,14 @@
 package toberumono.wrf.timing.offset;
 
-import java.util.Calendar;
+import java.time.ZonedDateTime;
 import java.util.Collection;
+import java.util.function.IntUnaryOperator;
 import java.util.logging.Logger;
 
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.CompiledTimingComponent;
+import toberumono.wrf.timing.TimingUtils;
 
 import static toberumono.wrf.SimulationConstants.*;
 
@@ -41,16 +44,28 @@ public class StandardOffset extends AbstractOffset {
 	}
 	
 	@Override
-	protected Calendar doApply(Calendar base) {
+	protected ZonedDateTime doApply(ZonedDateTime base) {
 		if (doesWrap())
-			for (int i = 0; i < offsets.length; i++)
-				base.add(TIMING_FIELD_IDS.get(i), offsets[i]);
-		else
-			for (int i = 0; i < offsets.length; i++)
-				base.set(TIMING_FIELD_IDS.get(i), base.get(TIMING_FIELD_IDS.get(i)) + offsets[i]);
+			return TimingUtils.add(base, offsets);
+		for (int i = 0; i < offsets.length; i++)
+			if (offsets[i] != 0)
+				base = TimingUtils.set(base, i, TimingUtils.get(base, i) + offsets[i]);
 		return base;
 	}
 	
+	@Override
+	protected CompiledTimingComponent doCompile() {
+		if (doesWrap())
+			return CompiledTimingComponent.add(offsets);
+		IntUnaryOperator[] operations = new IntUnaryOperator[offsets.length];
+		for (int i = 0; i < offsets.length; i++) {
+			int offset = offsets[i];
+			if (offset != 0)
+				operations[i] = v -> v + offset;
+		}
+		return CompiledTimingComponent.set(operations);
+	}
+	
 	@Override
 	public boolean doesWrap() {
 		if (wrap == null)
@@ -1,18 +1,18 @@
 package toberumono.wrf.timing.round;
 
 import java.math.RoundingMode;
-import java.util.Calendar;
+import java.time.ZonedDateTime;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
 import java.util.logging.Logger;
 
 import toberumono.utils.general.Numbers;
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.CompiledTimingComponent;
+import toberumono.wrf.timing.TimingUtils;
 
 import static toberumono.wrf.SimulationConstants.*;
 
@@ -22,7 +22,7 @@ import static toberumono.wrf.SimulationConstants.*;
  * @author Toberumono
  */
 public class BucketRound extends AbstractRound {
-	private Map<Integer, Function<Integer, Integer>> roundingActions;
+	private IntUnaryOperator[] roundingActions; //Indexed by timing field. Fields that are not rounded are null
 	
 	/**
 	 * Initializes a new instance of {@link BucketRound} described by the given {@code parameters} with a {@link Logger} derived from
@@ -37,9 +37,9 @@ public class BucketRound extends AbstractRound {
 		super(parameters, parent);
 	}
 	
-	private final Map<Integer, Function<Integer, Integer>> parseRoundingParameters(Map<?, ?> parameters) {
+	private final IntUnaryOperator[] parseRoundingParameters(Map<?, ?> parameters) {
 		Collection<String> keep = parseEnabled();
-		Map<Integer, Function<Integer, Integer>> roundingFunctions = new HashMap<>(); //We use a map because the key is the TIMING_FIELD_ID
+		IntUnaryOperator[] roundingFunctions = new IntUnaryOperator[TIMING_FIELD_NAMES.size()];
 		Map<?, ?> arguments = parameters.containsKey("arguments") ? (Map<?, ?>) parameters.get("arguments") : parameters; //Having the arguments sub-object was pointless
 		String name;
 		Object value;
@@ -56,24 +56,23 @@ public class BucketRound extends AbstractRound {
 				
 				field = name + "-offset";
 				final int offset = evaluateToNumber(arguments.containsKey(field) ? arguments.get(field) : 0, field).intValue();
-				roundingFunctions.put(TIMING_FIELD_IDS.get(i), stepOffsetProcessor(rm, step, offset));
+				roundingFunctions[i] = stepOffsetProcessor(rm, step, offset);
 			}
 			else if (value instanceof List) { //Explicit buckets
-				roundingFunctions.put(TIMING_FIELD_IDS.get(i), explicitBucketsProcessor(rm, name, (List<?>) value));
+				roundingFunctions[i] = explicitBucketsProcessor(rm, name, (List<?>) value);
 			}
 			else if (value instanceof Map) {
 				Map<?, ?> temp = (Map<?, ?>) value;
 				final RoundingMode orm = roundingModeFromField(temp.get("rounding-mode"), rm);
 				if (temp.containsKey("buckets"))
-					roundingFunctions.put(TIMING_FIELD_IDS.get(i), explicitBucketsProcessor(orm, name + ".buckets", evaluateToType(temp.get("buckets"), name + ".buckets", List.class)));
+					roundingFunctions[i] = explicitBucketsProcessor(orm, name + ".buckets", evaluateToType(temp.get("buckets"), name + ".buckets", List.class));
 				else
-					roundingFunctions.put(TIMING_FIELD_IDS.get(i), stepOffsetProcessor(orm, evaluateToNumber(temp.get("step"), name + ".step").intValue(),
-							evaluateToNumber(temp.containsKey("offset") ? arguments.get("offset") : 0, name + ".offset").intValue()));
+					roundingFunctions[i] = stepOffsetProcessor(orm, evaluateToNumber(temp.get("step"), name + ".step").intValue(),
+							evaluateToNumber(temp.containsKey("offset") ? arguments.get("offset") : 0, name + ".offset").intValue());
 			}
 			else if (value instanceof Number) { //Step-offset without the -step tag
 				String field = name + "-offset";
-				roundingFunctions.put(TIMING_FIELD_IDS.get(i),
-						stepOffsetProcessor(rm, ((Number) value).intValue(), evaluateToNumber(arguments.containsKey(field) ? arguments.get(field) : 0, field).intValue()));
+				roundingFunctions[i] = stepOffsetProcessor(rm, ((Number) value).intValue(), evaluateToNumber(arguments.containsKey(field) ? arguments.get(field) : 0, field).intValue());
 			}
 			else if (value != null) {
 				throw new IllegalArgumentException("The value of " + name + " in BucketRound must be either undefined, null, or an instance of List, Map, or Number.");
@@ -82,11 +81,11 @@ public class BucketRound extends AbstractRound {
 		return roundingFunctions;
 	}
 	
-	private Function<Integer, Integer> stepOffsetProcessor(RoundingMode rm, int step, int offset) {
+	private IntUnaryOperator stepOffsetProcessor(RoundingMode rm, int step, int offset) {
 		return inp -> Numbers.bucketRounding(inp, rm, step, offset);
 	}
 	
-	private Function<Integer, Integer> explicitBucketsProcessor(RoundingMode rm, String name, List<?> buckets) {
+	private IntUnaryOperator explicitBucketsProcessor(RoundingMode rm, String name, List<?> buckets) {
 		final int[] bucketsArr = new int[buckets.size()];
 		for (int b = 0; b < bucketsArr.length; b++)
 			bucketsArr[b] = evaluateToNumber(buckets.get(b), name + "[" + b + "]").intValue();
@@ -106,16 +105,22 @@ public class BucketRound extends AbstractRound {
 	}
 	
 	@Override
-	protected Calendar doApply(Calendar base) {
-		for (Entry<Integer, Function<Integer, Integer>> e : roundingActions.entrySet())
-			base.set(e.getKey(), e.getValue().apply(base.get(e.getKey())));
+	protected ZonedDateTime doApply(ZonedDateTime base) {
+		for (int i = roundingActions.length - 1; i >= 0; i--) //Round from the largest field to the smallest
+			if (roundingActions[i] != null)
+				base = TimingUtils.set(base, i, roundingActions[i].applyAsInt(TimingUtils.get(base, i)));
 		return base;
 	}
 	
+	@Override
+	protected CompiledTimingComponent doCompile() {
+		return CompiledTimingComponent.set(roundingActions, true);
+	}
+	
 	@Override
 	protected void compute() {
 		if (getParameters() == null)
-			roundingActions = getParent() instanceof BucketRound ? parseRoundingParameters(((BucketRound) getParent()).getParameters()) : new HashMap<>();
+			roundingActions = getParent() instanceof BucketRound ? parseRoundingParameters(((BucketRound) getParent()).getParameters()) : new IntUnaryOperator[TIMING_FIELD_NAMES.size()];
 		else
 			roundingActions = parseRoundingParameters(getParameters());
 	}
@@ -1,9 +1,10 @@
 package toberumono.wrf.timing.round;
 
-import java.util.Calendar;
+import java.time.ZonedDateTime;
 
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.CompiledTimingComponent;
 
 /**
  * An implementation of {@link Round} that does not perform any actions.
@@ -25,9 +26,14 @@ public class DisabledRound extends AbstractRound {
 	}
 	
 	@Override
-	protected Calendar doApply(Calendar base) {
+	protected ZonedDateTime doApply(ZonedDateTime base) {
 		return base;
 	}
+	
+	@Override
+	protected CompiledTimingComponent doCompile() {
+		return CompiledTimingComponent.identity();
+	}
 
 	@Override
 	protected void compute() {/* Nothing to do here */}
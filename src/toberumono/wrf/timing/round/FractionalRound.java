@@ -1,6 +1,6 @@
 package toberumono.wrf.timing.round;
 
-import java.util.Calendar;
+import java.time.ZonedDateTime;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -8,6 +8,7 @@ import toberumono.utils.general.Numbers;
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedFormulaProcessor;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.TimingUtils;
 
 import static toberumono.wrf.SimulationConstants.*;
 
@@ -36,20 +37,20 @@ public class FractionalRound extends AbstractRound {
 	}
 	
 	@Override
-	protected Calendar doApply(Calendar base) {
+	protected ZonedDateTime doApply(ZonedDateTime base) {
 		//First, we handle the diff on the field that the user is rounding on
 		int rp = roundingPoint;
 		if (diff.equals("next"))
-			base.add(TIMING_FIELD_IDS.get(rp), 1);
+			base = TimingUtils.add(base, rp, 1);
 		else if (diff.equals("previous"))
-			base.add(TIMING_FIELD_IDS.get(rp), -1);
+			base = TimingUtils.add(base, rp, -1);
 		if (fraction < 1.0) { //If the fraction is less than 1.0, then some portion of the field after the one specified in magnitude should be kept.
 			--rp;
-			int offset = 1 - base.getActualMinimum(TIMING_FIELD_IDS.get(rp));
-			base.set(TIMING_FIELD_IDS.get(rp), (int) Numbers.semifloor(base.getActualMaximum(TIMING_FIELD_IDS.get(rp)) + offset, fraction, base.get(TIMING_FIELD_IDS.get(rp))));
+			int offset = 1 - TimingUtils.getActualMinimum(base, rp);
+			base = TimingUtils.set(base, rp, (int) Numbers.semifloor(TimingUtils.getActualMaximum(base, rp) + offset, fraction, TimingUtils.get(base, rp)));
 		}
 		for (int i = 0; i < rp; i++) //The logic here is that if we are rounding to something, then we want to set everything before it to 0.
-			base.set(TIMING_FIELD_IDS.get(i), base.getActualMinimum(TIMING_FIELD_IDS.get(i)));
+			base = TimingUtils.set(base, i, TimingUtils.getActualMinimum(base, i));
 		return base;
 	}
 	
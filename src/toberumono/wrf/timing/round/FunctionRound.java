@@ -1,12 +1,13 @@
 package toberumono.wrf.timing.round;
 
-import java.util.Calendar;
+import java.time.ZonedDateTime;
 import java.util.Collection;
 import java.util.logging.Logger;
 
 import toberumono.structures.sexpressions.ConsCell;
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.TimingUtils;
 
 import static toberumono.wrf.SimulationConstants.*;
 import static toberumono.wrf.scope.ScopedFormulaProcessor.*;
@@ -35,13 +36,14 @@ public class FunctionRound extends AbstractRound {
 	}
 	
 	@Override
-	protected Calendar doApply(Calendar base) {
+	protected ZonedDateTime doApply(ZonedDateTime base) {
 		ScopedMap manufacturedScope = new ScopedMap(this);
+		int[] fields = TimingUtils.getFields(base);
 		for (int i = 0; i < functions.length; i++)
-			manufacturedScope.put(TIMING_FIELD_NAMES.get(i), base.get(TIMING_FIELD_IDS.get(i)));
+			manufacturedScope.put(TIMING_FIELD_NAMES.get(i), fields[i]);
 		for (int i = 0; i < functions.length; i++)
-			base.set(TIMING_FIELD_IDS.get(i), evaluateToNumber(process(functions[i], manufacturedScope, TIMING_FIELD_NAMES.get(i)).getCar(), TIMING_FIELD_NAMES.get(i)).intValue());
-		return base;
+			fields[i] = evaluateToNumber(process(functions[i], manufacturedScope, TIMING_FIELD_NAMES.get(i)).getCar(), TIMING_FIELD_NAMES.get(i)).intValue();
+		return TimingUtils.resolve(fields, base.getZone()); //All of the fields are set before any of them are normalized
 	}
 	
 	@Override
@@ -105,15 +105,33 @@ public abstract class JSONUpgrader {
 	public Pair<JSONObject, Collection<UpgradeWarning>> performUpgrade(JSONObject root, Supplier<String> interactiveInput, Consumer<String> interactiveOutput) {
 		JSONObject out = root.deepCopy();
 		Collection<UpgradeWarning> warnings = findPotentialProblems(out, interactiveInput, interactiveOutput);
-		for (Pair<VersionNumber, Consumer<JSONObject>> step : steps) {
-			if (getVersion(out).compareTo(step.getX()) <= 0) {
-				step.getY().accept(out);
-				setVersion(out, step.getX());
-			}
+		//Because the steps are sorted, every step after the first one that applies to the data's version also applies
+		for (int i = firstPendingStep(getVersion(out)); i < steps.size(); i++) {
+			steps.get(i).getY().accept(out);
+			setVersion(out, steps.get(i).getX());
 		}
 		return new Pair<>(out, warnings);
 	}
 	
+	/**
+	 * @return the highest {@link VersionNumber} to which the {@link JSONUpgrader} can upgrade data or {@code null} if it has no upgrade actions
+	 */
+	public VersionNumber getLatestVersion() {
+		return steps.size() > 0 ? steps.get(steps.size() - 1).getX() : null;
+	}
+	
+	private int firstPendingStep(VersionNumber version) {
+		int low = 0, high = steps.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (version.compareTo(steps.get(mid).getX()) <= 0)
+				high = mid;
+			else
+				low = mid + 1;
+		}
+		return low;
+	}
+	
 	/**
 	 * Entry method for {@link #findPotentialProblems(JSONData, String, Supplier, Consumer, List, Collection, Consumer)}. This should only be called
 	 * from within {@link #performUpgrade(JSONObject, Supplier, Consumer)}. Any found problems are resolved interactively iff both
@@ -132,9 +150,12 @@ public abstract class JSONUpgrader {
 	protected Collection<UpgradeWarning> findPotentialProblems(JSONObject root, Supplier<String> interactiveInput, Consumer<String> interactiveOutput) {
 		VersionNumber currentVersion = getVersion(root);
 		Collection<UpgradeWarning> warnings = new ArrayList<>();
+		//upgradeProblemHandlers is filtered once before being passed to findPotentialProblems
+		List<JSONUpgradeProblemHandler> applicableHandlers = upgradeProblemHandlers.stream().filter(handler -> handler.isApplicableToVersion(currentVersion)).collect(Collectors.toList());
+		if (applicableHandlers.size() == 0) //Data that is already up to date doesn't need to be searched at all
+			return warnings;
 		for (Entry<String, JSONData<?>> entry : root.entrySet())
-			findPotentialProblems(entry.getValue(), entry.getKey(), interactiveInput, interactiveOutput, //upgradeProblemHandlers is filtered before being passed to findPotentialProblems
-					upgradeProblemHandlers.stream().filter(handler -> handler.isApplicableToVersion(currentVersion)).collect(Collectors.toList()), warnings, entry::setValue);
+			findPotentialProblems(entry.getValue(), entry.getKey(), interactiveInput, interactiveOutput, applicableHandlers, warnings, entry::setValue);
 		return warnings;
 	}
 	
@@ -0,0 +1,91 @@
+package toberumono.wrf;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the parsing and evaluation of {@link CycleSchedule CycleSchedules}.
+ * 
+ * @author Toberumono
+ */
+public class CycleScheduleTest {
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+	
+	@Test
+	public void firesStrictlyAfterTheGivenTime() {
+		CycleSchedule schedule = new CycleSchedule("0 0,6,12,18 * * *", UTC);
+		assertEquals(utc(2017, 3, 4, 6, 0), schedule.next(utc(2017, 3, 4, 5, 59)));
+		assertEquals(utc(2017, 3, 4, 12, 0), schedule.next(utc(2017, 3, 4, 6, 0)));
+		assertEquals(utc(2017, 3, 5, 0, 0), schedule.next(utc(2017, 3, 4, 18, 30)));
+	}
+	
+	@Test
+	public void stepsStartAtTheBeginningOfTheRange() {
+		assertEquals(utc(2017, 3, 4, 6, 30), new CycleSchedule("30 */3 * * *", UTC).next(utc(2017, 3, 4, 4, 0)));
+		CycleSchedule schedule = new CycleSchedule("5/15 * * * *", UTC);
+		assertEquals(utc(2017, 3, 4, 4, 20), schedule.next(utc(2017, 3, 4, 4, 5)));
+		assertEquals(utc(2017, 3, 4, 5, 5), schedule.next(utc(2017, 3, 4, 4, 50)));
+		assertEquals(utc(2017, 3, 4, 4, 20), new CycleSchedule("10-30/10 * * * *", UTC).next(utc(2017, 3, 4, 4, 10)));
+	}
+	
+	@Test
+	public void restrictedDaysAndWeekdaysMatchEither() {
+		CycleSchedule schedule = new CycleSchedule("0 0 1 * 1", UTC); //The 1st of the month or a Monday
+		assertEquals(utc(2017, 3, 6, 0, 0), schedule.next(utc(2017, 3, 1, 12, 0)));
+		assertEquals(utc(2017, 4, 1, 0, 0), schedule.next(utc(2017, 3, 27, 12, 0)));
+	}
+	
+	@Test
+	public void sevenIsSunday() {
+		assertEquals(utc(2017, 3, 5, 12, 0), new CycleSchedule("0 12 * * 7", UTC).next(utc(2017, 3, 1, 0, 0)));
+		assertEquals(utc(2017, 3, 5, 12, 0), new CycleSchedule("0 12 * * 0", UTC).next(utc(2017, 3, 1, 0, 0)));
+	}
+	
+	@Test
+	public void findsRareDates() {
+		assertEquals(utc(2020, 2, 29, 0, 0), new CycleSchedule("0 0 29 2 *", UTC).next(utc(2017, 3, 1, 0, 0)));
+	}
+	
+	@Test
+	public void evaluatesInItsTimeZone() {
+		CycleSchedule schedule = new CycleSchedule("0 0 * * *", TimeZone.getTimeZone("America/New_York"));
+		Calendar next = schedule.next(utc(2017, 3, 1, 12, 0));
+		assertEquals(utc(2017, 3, 2, 5, 0).getTimeInMillis(), next.getTimeInMillis());
+		assertEquals(schedule.getTimeZone(), next.getTimeZone());
+	}
+	
+	@Test
+	public void doesNotModifyItsArgument() {
+		Calendar after = utc(2017, 3, 4, 5, 59);
+		new CycleSchedule("0 * * * *", UTC).next(after);
+		assertEquals(utc(2017, 3, 4, 5, 59), after);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsSchedulesThatNeverFire() {
+		new CycleSchedule("0 0 30 2 *", UTC).next(utc(2017, 3, 1, 0, 0));
+	}
+	
+	@Test
+	public void rejectsInvalidExpressions() {
+		for (String expression : new String[]{"0 0 * *", "60 * * * *", "5-1 * * * *", "a * * * *", "0 0 0 * *", "0 0 * 13 *", "*/0 * * * *"}) {
+			try {
+				new CycleSchedule(expression, UTC);
+				fail(expression + " should not be a valid cycle schedule");
+			}
+			catch (IllegalArgumentException e) {/* This is expected */}
+		}
+	}
+	
+	private static Calendar utc(int year, int month, int day, int hour, int minute) {
+		Calendar out = Calendar.getInstance(UTC);
+		out.clear();
+		out.set(year, month - 1, day, hour, minute);
+		out.getTimeInMillis(); //Computes the remaining fields so that equals compares like with like
+		return out;
+	}
+}
@@ -0,0 +1,90 @@
+package toberumono.wrf;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+
+import toberumono.wrf.MetricsRegistry.Counter;
+import toberumono.wrf.MetricsRegistry.Histogram;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link MetricsRegistry} and its Prometheus output.
+ * 
+ * @author Toberumono
+ */
+public class MetricsRegistryTest {
+	@Test
+	public void metricsAreIdentifiedByNameAndLabels() {
+		MetricsRegistry registry = new MetricsRegistry();
+		Counter counter = registry.counter("failures_total", "Failures", "module", "wrf");
+		assertSame(counter, registry.counter("failures_total", "Failures", "module", "wrf"));
+		assertNotSame(counter, registry.counter("failures_total", "Failures", "module", "real"));
+		counter.increment();
+		counter.add(2.5);
+		assertEquals(3.5, registry.counter("failures_total", "Failures", "module", "wrf").get(), 0.0);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void countersCannotBeDecremented() {
+		new MetricsRegistry().counter("failures_total", "Failures").add(-1);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void familiesHaveASingleType() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("duration", "Duration");
+		registry.timer("duration", "Duration");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void labelsMustBePaired() {
+		new MetricsRegistry().counter("failures_total", "Failures", "module");
+	}
+	
+	@Test
+	public void histogramsCountObservationsCumulatively() {
+		Histogram histogram = new MetricsRegistry().histogram("size", "Size", new double[]{5, 1, 2});
+		for (double value : new double[]{0.5, 1, 1.5, 10})
+			histogram.observe(value);
+		assertArrayEquals(new Object[]{1.0, 2.0, 5.0}, box(histogram.getBuckets()));
+		assertArrayEquals(new long[]{2, 3, 3}, histogram.getCumulativeCounts());
+		assertEquals(4, histogram.getCount());
+		assertEquals(13.0, histogram.getSum(), 0.0);
+	}
+	
+	@Test
+	public void writesPrometheusTextFormat() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("failures_total", "Failures", "module", "w\"rf").add(3);
+		registry.histogram("size", "Size", new double[]{1, 2.5}).observe(2);
+		Path directory = Files.createTempDirectory("metrics"), path = directory.resolve("metrics.prom");
+		try {
+			registry.writePrometheus(path);
+			List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+			assertTrue(lines.contains("# TYPE failures_total counter"));
+			assertTrue(lines.contains("failures_total{module=\"w\\\"rf\"} 3"));
+			assertTrue(lines.contains("# TYPE size histogram"));
+			assertTrue(lines.contains("size_bucket{le=\"1\"} 0"));
+			assertTrue(lines.contains("size_bucket{le=\"2.5\"} 1"));
+			assertTrue(lines.contains("size_bucket{le=\"+Inf\"} 1"));
+			assertTrue(lines.contains("size_sum 2"));
+			assertTrue(lines.contains("size_count 1"));
+		}
+		finally {
+			Files.deleteIfExists(path);
+			Files.delete(directory);
+		}
+	}
+	
+	private static Object[] box(double[] values) {
+		Object[] out = new Object[values.length];
+		for (int i = 0; i < values.length; i++)
+			out[i] = values[i];
+		return out;
+	}
+}
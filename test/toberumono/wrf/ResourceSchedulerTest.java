@@ -0,0 +1,129 @@
+package toberumono.wrf;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import toberumono.wrf.ResourceScheduler.Reservation;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the admission rules of {@link ResourceScheduler}.
+ * 
+ * @author Toberumono
+ */
+public class ResourceSchedulerTest {
+	private static final long BLOCKED_MILLIS = 200, TIMEOUT_SECONDS = 10;
+	private ExecutorService executor;
+	
+	@Before
+	public void setUp() {
+		executor = Executors.newCachedThreadPool();
+	}
+	
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+	
+	@Test
+	public void reservationsAreReturnedOnce() throws Exception {
+		ResourceScheduler scheduler = new ResourceScheduler(4, 1024, 2, 1);
+		Reservation reservation = scheduler.reserve("a", 3, 512, 1, 1);
+		assertEquals(1, scheduler.getFreeCores());
+		reservation.close();
+		reservation.close();
+		assertEquals(4, scheduler.getFreeCores());
+	}
+	
+	@Test
+	public void oversizedRequestsAreReducedToTheBudget() throws Exception {
+		ResourceScheduler scheduler = new ResourceScheduler(4, 1024, 2, 1);
+		try (Reservation reservation = scheduler.reserve("a", 16, 4096, 8, 8)) {
+			assertEquals(4, reservation.getCores());
+			assertEquals(1024, reservation.getMemory());
+			assertEquals(2, reservation.getBandwidth());
+			assertEquals(1, reservation.getDisk());
+		}
+	}
+	
+	@Test
+	public void waitsUntilResourcesAreFree() throws Exception {
+		ResourceScheduler scheduler = new ResourceScheduler(4, 1024, 2, 1);
+		Reservation first = scheduler.reserve("first", 0, 0, 0, 1);
+		Future<Reservation> second = executor.submit(() -> scheduler.reserve("second", 0, 0, 0, 1));
+		assertBlocked(second);
+		first.close();
+		second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).close();
+	}
+	
+	@Test
+	public void overlappingRequestsRespectTheReservation() throws Exception {
+		ResourceScheduler scheduler = new ResourceScheduler(4, 1024, 2, 1);
+		scheduler.setOverlapReservedCores(2);
+		Reservation first = scheduler.reserve("first", 2, 0, 0, 0, () -> true);
+		Future<Reservation> second = executor.submit(() -> scheduler.reserve("second", 1, 0, 0, 0, () -> true));
+		assertBlocked(second);
+		scheduler.reserve("normal", 1, 0, 0, 0).close(); //The reserved cores remain available to non-overlapping requests
+		first.close();
+		second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).close();
+	}
+	
+	@Test
+	public void overlappingRequestsYieldToWaitingRequests() throws Exception {
+		ResourceScheduler scheduler = new ResourceScheduler(4, 1024, 2, 1);
+		Reservation held = scheduler.reserve("held", 3, 0, 0, 0);
+		Future<Reservation> normal = executor.submit(() -> scheduler.reserve("normal", 2, 0, 0, 0));
+		assertBlocked(normal);
+		Future<Reservation> overlapping = executor.submit(() -> scheduler.reserve("overlapping", 1, 0, 0, 0, () -> true));
+		assertBlocked(overlapping); //1 core is free, but a non-overlapping request is waiting for cores
+		held.close();
+		normal.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).close();
+		overlapping.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).close();
+	}
+	
+	@Test
+	public void waitingRequestsAreOnlyBypassedALimitedNumberOfTimes() throws Exception {
+		ResourceScheduler scheduler = new ResourceScheduler(2, 1024, 2, 1);
+		Reservation held = scheduler.reserve("held", 1, 0, 0, 0);
+		Future<Reservation> large = executor.submit(() -> scheduler.reserve("large", 2, 0, 0, 0));
+		assertBlocked(large);
+		for (int i = 0; i < ResourceScheduler.MAX_BYPASSES; i++)
+			scheduler.reserve("small " + i, 1, 0, 0, 0).close();
+		Future<Reservation> small = executor.submit(() -> scheduler.reserve("last", 1, 0, 0, 0));
+		assertBlocked(small);
+		held.close();
+		Reservation admitted = large.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		assertFalse(small.isDone());
+		admitted.close();
+		small.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).close();
+		assertEquals(2, scheduler.getFreeCores());
+	}
+	
+	@Test
+	public void interruptedRequestsStopWaiting() throws Exception {
+		ResourceScheduler scheduler = new ResourceScheduler(1, 1024, 2, 1);
+		Reservation held = scheduler.reserve("held", 1, 0, 0, 0);
+		Future<Reservation> waiting = executor.submit(() -> scheduler.reserve("waiting", 1, 0, 0, 0));
+		assertBlocked(waiting);
+		waiting.cancel(true);
+		held.close();
+		scheduler.reserve("next", 1, 0, 0, 0).close(); //The cancelled request must not keep later requests waiting
+		assertEquals(1, scheduler.getFreeCores());
+	}
+	
+	private static void assertBlocked(Future<?> future) throws Exception {
+		try {
+			future.get(BLOCKED_MILLIS, TimeUnit.MILLISECONDS);
+			fail("The request should have been waiting");
+		}
+		catch (TimeoutException e) {/* This is expected */}
+	}
+}
@@ -0,0 +1,120 @@
+package toberumono.wrf.timing;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.clear.StandardClear;
+import toberumono.wrf.timing.duration.StandardDuration;
+import toberumono.wrf.timing.offset.StandardOffset;
+import toberumono.wrf.timing.round.BucketRound;
+import toberumono.wrf.timing.round.FractionalRound;
+
+import static org.junit.Assert.*;
+import static toberumono.wrf.SimulationConstants.TIMING_FIELD_NAMES;
+
+/**
+ * Checks that {@link TimingComponent#compile()} produces the same results as {@link TimingComponent#apply(ZonedDateTime)}, which is the
+ * reference implementation, for random chains of {@link TimingComponent TimingComponents} in zones with and without fixed offsets.
+ * 
+ * @author Toberumono
+ */
+public class CompiledTimingComponentTest {
+	private static final List<ZoneId> ZONES = Arrays.asList(ZoneId.of("UTC"), ZoneId.of("+05:45"), ZoneId.of("-09:30"), ZoneId.of("America/New_York"),
+			ZoneId.of("Europe/London"), ZoneId.of("Australia/Lord_Howe"), ZoneId.of("Pacific/Apia"), ZoneId.of("America/Sao_Paulo"));
+	private static final String[] ROUNDING_MODES = {"floor", "ceiling", "half_up", "half_even", "down", "up"};
+	private static final int CHAINS = 2000, TIMES_PER_CHAIN = 20;
+	
+	@Test
+	public void compiledChainsMatchApply() {
+		Random random = new Random(42); //A fixed seed keeps failures reproducible
+		for (int c = 0; c < CHAINS; c++) {
+			List<TimingComponent> components = new ArrayList<>();
+			StringBuilder description = new StringBuilder();
+			for (int i = random.nextInt(5) + 1; i > 0; i--) {
+				ScopedMap parameters = new ScopedMap(null);
+				components.add(randomComponent(random, parameters));
+				description.append(components.get(components.size() - 1).getClass().getSimpleName()).append(parameters.entrySet()).append(' ');
+			}
+			ScopedTimingComponentList<TimingComponent> chain = new ScopedTimingComponentList<>(components, null);
+			CompiledTimingComponent compiled = chain.compile();
+			for (int t = 0; t < TIMES_PER_CHAIN; t++) {
+				ZonedDateTime base = randomTime(random);
+				assertEquals(description + "applied to " + base, chain.apply(base), compiled.apply(base));
+			}
+		}
+	}
+	
+	@Test
+	public void bucketRoundRoundsLargestFieldFirst() {
+		ScopedMap parameters = new ScopedMap(null);
+		parameters.put("hours-step", 6);
+		parameters.put("hours-rounding-mode", "floor");
+		parameters.put("minutes-step", 30);
+		parameters.put("minutes-rounding-mode", "ceiling");
+		BucketRound round = new BucketRound(parameters, null);
+		ZonedDateTime base = ZonedDateTime.of(2017, 3, 4, 5, 45, 0, 0, ZoneId.of("UTC"));
+		ZonedDateTime expected = ZonedDateTime.of(2017, 3, 4, 1, 0, 0, 0, ZoneId.of("UTC"));
+		assertEquals(expected, round.apply(base));
+		assertEquals(expected, round.compile().apply(base));
+	}
+	
+	@Test
+	public void adjacentSegmentsAreFused() {
+		ScopedMap offset = new ScopedMap(null), duration = new ScopedMap(null);
+		offset.put("hours", 6);
+		duration.put("days", 1);
+		List<TimingComponent> components = Arrays.asList(new StandardOffset(offset, null), new StandardDuration(duration, null));
+		assertEquals(1, new ScopedTimingComponentList<>(components, null).compile().getSegmentCount());
+	}
+	
+	private static TimingComponent randomComponent(Random random, ScopedMap parameters) {
+		switch (random.nextInt(5)) {
+			case 0:
+				for (int i = 0; i < TIMING_FIELD_NAMES.size(); i++)
+					if (random.nextInt(3) == 0)
+						parameters.put(TIMING_FIELD_NAMES.get(i), random.nextInt(61) - 30);
+				parameters.put("wrap", random.nextBoolean());
+				return new StandardOffset(parameters, null);
+			case 1:
+				for (int i = 0; i < TIMING_FIELD_NAMES.size(); i++)
+					if (random.nextInt(3) == 0)
+						parameters.put(TIMING_FIELD_NAMES.get(i), random.nextInt(49) - 24);
+				return new StandardDuration(parameters, null);
+			case 2:
+				int keep = random.nextInt(TIMING_FIELD_NAMES.size() - 1);
+				parameters.put("keep", TIMING_FIELD_NAMES.get(keep));
+				for (int i = 0; i < keep; i++)
+					if (random.nextInt(3) == 0)
+						parameters.put(TIMING_FIELD_NAMES.get(i), random.nextInt(i == 4 ? 31 : 12) + (i == 4 ? 1 : 0));
+				return new StandardClear(parameters, null);
+			case 3:
+				int[] steps = {100, 15, 15, 6, 5, 3, 2};
+				for (int i = 0; i < TIMING_FIELD_NAMES.size(); i++) {
+					if (random.nextInt(3) == 0) {
+						parameters.put(TIMING_FIELD_NAMES.get(i) + "-step", random.nextInt(steps[i]) + 1);
+						parameters.put(TIMING_FIELD_NAMES.get(i) + "-rounding-mode", ROUNDING_MODES[random.nextInt(ROUNDING_MODES.length)]);
+					}
+				}
+				return new BucketRound(parameters, null);
+			default:
+				parameters.put("magnitude", TIMING_FIELD_NAMES.get(random.nextInt(TIMING_FIELD_NAMES.size() - 2) + 1));
+				parameters.put("diff", new String[]{"next", "previous", "none"}[random.nextInt(3)]);
+				parameters.put("fraction", random.nextBoolean() ? 1.0 : 0.5);
+				return new FractionalRound(parameters, null);
+		}
+	}
+	
+	private static ZonedDateTime randomTime(Random random) {
+		long start = Instant.parse("1995-01-01T00:00:00Z").toEpochMilli(), end = Instant.parse("2035-01-01T00:00:00Z").toEpochMilli();
+		Instant instant = Instant.ofEpochMilli(start + (long) (random.nextDouble() * (end - start)));
+		return instant.atZone(ZONES.get(random.nextInt(ZONES.size())));
+	}
+}
@@ -0,0 +1,113 @@
+package toberumono.wrf.timing;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static toberumono.wrf.SimulationConstants.TIMING_FIELD_IDS;
+import static toberumono.wrf.timing.TimingUtils.*;
+
+/**
+ * Checks that {@link TimingUtils} reproduces the behavior of a lenient {@link GregorianCalendar}, which the {@link TimingComponent
+ * TimingComponents} were originally written against.
+ * 
+ * @author Toberumono
+ */
+public class TimingUtilsTest {
+	private static final List<String> ZONES = Arrays.asList("UTC", "GMT+05:45", "America/New_York", "Europe/London", "Australia/Lord_Howe");
+	private static final int SAMPLES = 20000;
+	
+	@Test
+	public void setMatchesLenientCalendar() {
+		Random random = new Random(42);
+		for (int i = 0; i < SAMPLES; i++) {
+			Calendar expected = randomCalendar(random);
+			ZonedDateTime base = toZonedDateTime(expected);
+			int field = random.nextInt(TIMING_FIELD_IDS.size()), value = get(base, field) + randomAmount(random, field, 40);
+			expected.set(TIMING_FIELD_IDS.get(field), value);
+			assertEquals("setting " + field + " to " + value + " on " + base, expected.getTimeInMillis(), set(base, field, value).toInstant().toEpochMilli());
+		}
+	}
+	
+	@Test
+	public void addMatchesLenientCalendar() {
+		Random random = new Random(42);
+		for (int i = 0; i < SAMPLES; i++) {
+			Calendar expected = randomCalendar(random);
+			ZonedDateTime base = toZonedDateTime(expected);
+			int field = random.nextInt(TIMING_FIELD_IDS.size()), amount = randomAmount(random, field, 100);
+			expected.add(TIMING_FIELD_IDS.get(field), amount);
+			assertEquals("adding " + amount + " to " + field + " on " + base, expected.getTimeInMillis(), add(base, field, amount).toInstant().toEpochMilli());
+		}
+	}
+	
+	@Test
+	public void getFieldsMatchesCalendar() {
+		Random random = new Random(42);
+		for (int i = 0; i < SAMPLES; i++) {
+			Calendar calendar = randomCalendar(random);
+			int[] expected = new int[TIMING_FIELD_IDS.size()];
+			for (int f = 0; f < expected.length; f++)
+				expected[f] = calendar.get(TIMING_FIELD_IDS.get(f));
+			ZonedDateTime time = toZonedDateTime(calendar);
+			assertArrayEquals(expected, getFields(time));
+			for (int f = 0; f < expected.length; f++)
+				assertEquals(expected[f], get(time, f));
+		}
+	}
+	
+	@Test
+	public void conversionsRoundTrip() {
+		Random random = new Random(42);
+		for (int i = 0; i < SAMPLES; i++) {
+			Calendar calendar = randomCalendar(random);
+			ZonedDateTime time = toZonedDateTime(calendar);
+			assertEquals(calendar.getTimeZone().toZoneId(), time.getZone());
+			assertEquals(calendar.getTimeInMillis(), toCalendar(time).getTimeInMillis());
+			Calendar template = (Calendar) calendar.clone();
+			template.add(Calendar.YEAR, 1);
+			Calendar copy = toCalendar(time, template, false);
+			assertNotSame(template, copy);
+			assertEquals(calendar.getTimeInMillis(), copy.getTimeInMillis());
+			assertSame(template, toCalendar(time, template, true));
+			assertEquals(calendar.getTimeInMillis(), template.getTimeInMillis());
+		}
+		assertNull(toZonedDateTime(null));
+		assertNull(toCalendar(null));
+	}
+	
+	@Test
+	public void actualMaximumOfDaysDependsOnTheMonth() {
+		ZoneId utc = ZoneId.of("UTC");
+		assertEquals(29, getActualMaximum(ZonedDateTime.of(2016, 2, 10, 0, 0, 0, 0, utc), DAYS));
+		assertEquals(28, getActualMaximum(ZonedDateTime.of(2017, 2, 10, 0, 0, 0, 0, utc), DAYS));
+		assertEquals(30, getActualMaximum(ZonedDateTime.of(2017, 4, 10, 0, 0, 0, 0, utc), DAYS));
+		assertEquals(1, getActualMinimum(null, DAYS));
+		assertEquals(0, getActualMinimum(null, MONTHS));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void getRejectsInvalidFields() {
+		get(ZonedDateTime.now(), YEARS + 1);
+	}
+	
+	private static int randomAmount(Random random, int field, int bound) {
+		if (field == YEARS) //The time zone data used by Calendar and ZonedDateTime can disagree before 1970
+			bound = 20;
+		return random.nextInt(2 * bound + 1) - bound;
+	}
+	
+	private static Calendar randomCalendar(Random random) {
+		Calendar out = new GregorianCalendar(TimeZone.getTimeZone(ZONES.get(random.nextInt(ZONES.size()))));
+		out.setTimeInMillis(788918400000L + (long) (random.nextDouble() * 1262304000000L)); //Between 1995 and 2035
+		return out;
+	}
+}